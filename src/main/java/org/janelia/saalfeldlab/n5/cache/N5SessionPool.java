@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.cache;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.N5Factory.StorageFormat;
+
+import ij.Prefs;
+import net.imglib2.util.Pair;
+
+/**
+ * A process-wide pool of open {@link N5Reader}s and {@link N5Writer}s, keyed
+ * by the normalized container URI and storage format, so that repeated
+ * operations on one container reuse its cached attributes, listings and
+ * storage clients.
+ * <p>
+ * Every call to {@link #acquireReader(String)} or
+ * {@link #acquireWriter(String)} must be matched by a call to
+ * {@link #release(N5Reader)} once the caller is done with the container;
+ * pooled instances must not be closed by callers. Instances that have not
+ * been acquired for longer than the idle timeout are closed and removed.
+ * <p>
+ * There is at most one pooled instance per container. A writer also serves
+ * readers of the same container, so that they see its writes. Acquiring a
+ * writer for a container that has a pooled reader replaces the reader, which
+ * is closed once it is released. Writers do not cache attributes, so that
+ * they see changes made outside the pool; code that writes to a container
+ * without the pool calls {@link #invalidate(String)} afterwards.
+ */
+public class N5SessionPool {
+
+	public static final String IDLE_SECONDS_KEY = "n5.sessions.idleSeconds";
+
+	public static final long DEFAULT_IDLE_SECONDS = 300;
+
+	private static N5SessionPool instance;
+
+	private final Function<String, N5Reader> readerOpener;
+
+	private final Function<String, N5Writer> writerOpener;
+
+	private final Map<String, Session> sessions = new HashMap<>();
+
+	private final Map<N5Reader, Session> byInstance = new IdentityHashMap<>();
+
+	private long idleMillis;
+
+	private ScheduledExecutorService sweeper;
+
+	public N5SessionPool(
+			final Function<String, N5Reader> readerOpener,
+			final Function<String, N5Writer> writerOpener,
+			final long idleMillis) {
+
+		this.readerOpener = readerOpener;
+		this.writerOpener = writerOpener;
+		this.idleMillis = idleMillis;
+	}
+
+	/**
+	 * Returns the process-wide pool, creating it if necessary. Readers and
+	 * writers use "/" as the zarr dimension separator, readers cache
+	 * attributes and writers use credentials for S3.
+	 *
+	 * @return the shared pool
+	 */
+	public static synchronized N5SessionPool getInstance() {
+
+		if (instance == null) {
+			instance = new N5SessionPool(
+					uri -> new N5Factory().cacheAttributes(true).zarrDimensionSeparator("/").openReader(uri),
+					uri -> new N5Factory().cacheAttributes(false).zarrDimensionSeparator("/").s3UseCredentials().openWriter(uri),
+					(long)Prefs.get(IDLE_SECONDS_KEY, DEFAULT_IDLE_SECONDS) * 1000);
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns a reader for the given container, opening it if no reader or
+	 * writer for it is pooled.
+	 *
+	 * @param uri
+	 *            the container uri, optionally with a storage format prefix
+	 * @return the reader
+	 * @throws org.janelia.saalfeldlab.n5.N5Exception
+	 *             if the container can not be opened
+	 */
+	public synchronized N5Reader acquireReader(final String uri) {
+
+		final String key = key(uri);
+		Session session = sessions.get(key);
+		if (session == null) {
+			session = new Session(key, readerOpener.apply(uri), false);
+			sessions.put(key, session);
+			byInstance.put(session.n5, session);
+		}
+		return session.acquire();
+	}
+
+	/**
+	 * Returns a writer for the given container, opening it if no writer for
+	 * it is pooled.
+	 *
+	 * @param uri
+	 *            the container uri, optionally with a storage format prefix
+	 * @return the writer
+	 * @throws org.janelia.saalfeldlab.n5.N5Exception
+	 *             if the container can not be opened or created
+	 */
+	public synchronized N5Writer acquireWriter(final String uri) {
+
+		final String key = key(uri);
+		final Session existing = sessions.get(key);
+		if (existing != null && existing.writer)
+			return (N5Writer)existing.acquire();
+
+		final Session session = new Session(key, writerOpener.apply(uri), true);
+		if (existing != null)
+			detach(existing);
+
+		sessions.put(key, session);
+		byInstance.put(session.n5, session);
+		return (N5Writer)session.acquire();
+	}
+
+	/**
+	 * Releases a reader or writer acquired from this pool. Instances that were
+	 * not acquired from this pool are closed.
+	 *
+	 * @param n5
+	 *            the reader or writer, may be null
+	 */
+	public synchronized void release(final N5Reader n5) {
+
+		if (n5 == null)
+			return;
+
+		final Session session = byInstance.get(n5);
+		if (session == null) {
+			n5.close();
+			return;
+		}
+
+		session.leases = Math.max(0, session.leases - 1);
+		session.lastReleased = System.currentTimeMillis();
+		if (session.leases == 0) {
+			if (sessions.get(session.key) != session)
+				close(session);
+			else
+				startSweeper();
+		}
+	}
+
+	/**
+	 * Removes the pooled instance of a container, for example after it was
+	 * written without the pool, so that the next caller opens it again. The
+	 * instance is closed at once if it is not acquired, and otherwise once it
+	 * is released.
+	 *
+	 * @param uri
+	 *            the container uri, optionally with a storage format prefix
+	 */
+	public synchronized void invalidate(final String uri) {
+
+		final Session session = sessions.get(key(uri));
+		if (session != null)
+			detach(session);
+	}
+
+	/**
+	 * Closes and removes all pooled instances that are not acquired.
+	 */
+	public synchronized void clear() {
+
+		evictIdle(Long.MAX_VALUE);
+	}
+
+	public synchronized void setIdleMillis(final long idleMillis) {
+
+		this.idleMillis = idleMillis;
+	}
+
+	public synchronized long getIdleMillis() {
+
+		return idleMillis;
+	}
+
+	/**
+	 * @return the number of pooled containers
+	 */
+	public synchronized int size() {
+
+		return sessions.size();
+	}
+
+	/**
+	 * Closes and removes the pooled instances that were released before the
+	 * given time minus the idle timeout.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 */
+	synchronized void evictIdle(final long now) {
+
+		final Iterator<Session> it = sessions.values().iterator();
+		while (it.hasNext()) {
+			final Session session = it.next();
+			if (session.leases == 0 && now - session.lastReleased >= idleMillis) {
+				it.remove();
+				close(session);
+			}
+		}
+	}
+
+	private void detach(final Session session) {
+
+		sessions.remove(session.key);
+		if (session.leases == 0)
+			close(session);
+	}
+
+	private void close(final Session session) {
+
+		byInstance.remove(session.n5);
+		session.n5.close();
+	}
+
+	private void startSweeper() {
+
+		if (sweeper != null)
+			return;
+
+		sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+			final Thread thread = new Thread(r, "n5-session-pool");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		final long period = Math.max(1000, idleMillis / 2);
+		sweeper.scheduleAtFixedRate(() -> evictIdle(System.currentTimeMillis()), period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * The key of a container: its storage format, if given, and its uri
+	 * without a trailing separator.
+	 */
+	static String key(final String uri) {
+
+		String format = "";
+		String location = uri;
+		try {
+			final Pair<StorageFormat, URI> fmtUri = StorageFormat.parseUri(uri);
+			if (fmtUri.getA() != null)
+				format = fmtUri.getA().toString();
+
+			location = fmtUri.getB().normalize().toString();
+		} catch (final Exception e) {}
+
+		while (location.length() > 1 && location.endsWith("/"))
+			location = location.substring(0, location.length() - 1);
+
+		return format + "|" + location;
+	}
+
+	private static class Session {
+
+		private final String key;
+
+		private final N5Reader n5;
+
+		private final boolean writer;
+
+		private int leases;
+
+		private long lastReleased;
+
+		public Session(final String key, final N5Reader n5, final boolean writer) {
+
+			this.key = key;
+			this.n5 = n5;
+			this.writer = writer;
+		}
+
+		public N5Reader acquire() {
+
+			leases++;
+			return n5;
+		}
+	}
+
+}
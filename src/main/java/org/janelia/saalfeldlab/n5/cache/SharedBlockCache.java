@@ -0,0 +1,517 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.cache;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+
+import ij.Prefs;
+
+/**
+ * A process-wide cache of decoded {@link DataBlock}s with an explicit byte
+ * budget.
+ * <p>
+ * Blocks are evicted in least-recently-used order once the total size of
+ * cached blocks exceeds the budget. Blocks on the heap are held softly, so
+ * the garbage collector may also drop them before that when memory runs
+ * low. If an off-heap budget is set, evicted blocks are serialized into
+ * direct {@link ByteBuffer}s and kept there until that budget is exhausted
+ * as well.
+ * <p>
+ * Code that writes blocks has to call {@link #invalidate(String, String)}
+ * for the datasets it wrote, so that they are read again. Blocks whose load
+ * started before an invalidation are returned to their caller but not
+ * cached, as they may hold the old data.
+ * <p>
+ * The budgets are read from the ImageJ preferences the first time
+ * {@link #getInstance()} is called and can be changed at runtime with
+ * {@link #setMaxBytes(long)} and {@link #setMaxOffHeapBytes(long)}.
+ */
+public class SharedBlockCache {
+
+	public static final String ENABLED_KEY = "n5.cache.enabled";
+
+	public static final String MAX_MB_KEY = "n5.cache.maxMegabytes";
+
+	public static final String MAX_OFFHEAP_MB_KEY = "n5.cache.maxOffHeapMegabytes";
+
+	public static final long MB = 1024 * 1024;
+
+	private static SharedBlockCache instance;
+
+	private final LinkedHashMap<BlockKey, Entry> onHeap;
+
+	private final LinkedHashMap<BlockKey, OffHeapEntry> offHeap;
+
+	private final ReferenceQueue<DataBlock<?>> cleared = new ReferenceQueue<>();
+
+	private long maxBytes;
+
+	private long maxOffHeapBytes;
+
+	private long bytes;
+
+	private long offHeapBytes;
+
+	private boolean enabled;
+
+	// incremented by every invalidation
+	private long generation;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong offHeapHits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	public SharedBlockCache(final long maxBytes, final long maxOffHeapBytes) {
+
+		this.maxBytes = maxBytes;
+		this.maxOffHeapBytes = maxOffHeapBytes;
+		onHeap = new LinkedHashMap<>(64, 0.75f, true);
+		offHeap = new LinkedHashMap<>(64, 0.75f, true);
+		enabled = true;
+	}
+
+	/**
+	 * Returns the process-wide cache, creating it from the ImageJ preferences
+	 * if necessary.
+	 * <p>
+	 * The default on-heap budget is a quarter of the maximum heap size.
+	 *
+	 * @return the shared cache
+	 */
+	public static synchronized SharedBlockCache getInstance() {
+
+		if (instance == null) {
+			final long defaultMb = Runtime.getRuntime().maxMemory() / 4 / MB;
+			instance = new SharedBlockCache(
+					(long)Prefs.get(MAX_MB_KEY, defaultMb) * MB,
+					(long)Prefs.get(MAX_OFFHEAP_MB_KEY, 0) * MB);
+			instance.setEnabled(Prefs.get(ENABLED_KEY, true));
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the block for the given key, loading it with the given loader if
+	 * it is not cached.
+	 * <p>
+	 * The loader is called without holding the cache lock, so concurrent
+	 * requests for the same missing block may load it more than once.
+	 *
+	 * @param key
+	 *            the block key
+	 * @param loader
+	 *            loads the block, may return null for missing blocks
+	 * @return the block, or null
+	 * @throws Exception
+	 *             the exception thrown by the loader
+	 */
+	public DataBlock<?> get(final BlockKey key, final Callable<DataBlock<?>> loader) throws Exception {
+
+		if (!enabled)
+			return loader.call();
+
+		final long loadGeneration;
+		synchronized (this) {
+			loadGeneration = generation;
+			expunge();
+			final Entry entry = onHeap.get(key);
+			final DataBlock<?> cachedBlock = entry == null ? null : entry.get();
+			if (cachedBlock != null) {
+				hits.incrementAndGet();
+				return cachedBlock;
+			} else if (entry != null)
+				removeOnHeap(key, entry);
+
+			final OffHeapEntry offHeapEntry = offHeap.remove(key);
+			if (offHeapEntry != null) {
+				offHeapBytes -= offHeapEntry.buffer.capacity();
+				offHeapHits.incrementAndGet();
+				final DataBlock<?> block = offHeapEntry.restore();
+				putOnHeap(key, block);
+				return block;
+			}
+		}
+
+		misses.incrementAndGet();
+		final DataBlock<?> block = loader.call();
+		if (block != null) {
+			synchronized (this) {
+				if (generation == loadGeneration)
+					putOnHeap(key, block);
+			}
+		}
+		return block;
+	}
+
+	private void putOnHeap(final BlockKey key, final DataBlock<?> block) {
+
+		final Entry entry = new Entry(key, block, cleared);
+		final Entry previous = onHeap.put(key, entry);
+		if (previous != null)
+			bytes -= previous.bytes;
+
+		bytes += entry.bytes;
+		evictOnHeap();
+	}
+
+	private void removeOnHeap(final BlockKey key, final Entry entry) {
+
+		if (onHeap.get(key) == entry) {
+			onHeap.remove(key);
+			bytes -= entry.bytes;
+		}
+	}
+
+	/**
+	 * Removes the entries of blocks that the garbage collector dropped.
+	 */
+	private void expunge() {
+
+		Reference<? extends DataBlock<?>> ref;
+		while ((ref = cleared.poll()) != null) {
+			final Entry entry = (Entry)ref;
+			removeOnHeap(entry.key, entry);
+		}
+	}
+
+	private void evictOnHeap() {
+
+		final Iterator<Map.Entry<BlockKey, Entry>> it = onHeap.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			final Map.Entry<BlockKey, Entry> eldest = it.next();
+			it.remove();
+			bytes -= eldest.getValue().bytes;
+			evictions.incrementAndGet();
+			putOffHeap(eldest.getKey(), eldest.getValue());
+		}
+	}
+
+	private void putOffHeap(final BlockKey key, final Entry entry) {
+
+		final DataBlock<?> block = entry.get();
+		if (block == null || maxOffHeapBytes <= 0 || entry.bytes > maxOffHeapBytes)
+			return;
+
+		final OffHeapEntry offHeapEntry = new OffHeapEntry(key.dataType, block);
+		offHeap.put(key, offHeapEntry);
+		offHeapBytes += offHeapEntry.buffer.capacity();
+		evictOffHeap();
+	}
+
+	private void evictOffHeap() {
+
+		final Iterator<OffHeapEntry> it = offHeap.values().iterator();
+		while (offHeapBytes > maxOffHeapBytes && it.hasNext()) {
+			offHeapBytes -= it.next().buffer.capacity();
+			it.remove();
+		}
+	}
+
+	/**
+	 * Drops the cached blocks of a dataset, or of all datasets below a group,
+	 * of a container.
+	 *
+	 * @param container
+	 *            the container key, the uri of the container
+	 * @param path
+	 *            the path of the dataset or group, empty for the whole
+	 *            container
+	 */
+	public synchronized void invalidate(final String container, final String path) {
+
+		generation++;
+		final String normPath = normalize(path);
+		final Iterator<Map.Entry<BlockKey, Entry>> it = onHeap.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<BlockKey, Entry> entry = it.next();
+			if (entry.getKey().isBelow(container, normPath)) {
+				it.remove();
+				bytes -= entry.getValue().bytes;
+			}
+		}
+
+		final Iterator<Map.Entry<BlockKey, OffHeapEntry>> offHeapIt = offHeap.entrySet().iterator();
+		while (offHeapIt.hasNext()) {
+			final Map.Entry<BlockKey, OffHeapEntry> entry = offHeapIt.next();
+			if (entry.getKey().isBelow(container, normPath)) {
+				offHeapIt.remove();
+				offHeapBytes -= entry.getValue().buffer.capacity();
+			}
+		}
+	}
+
+	private static String normalize(final String path) {
+
+		return path == null ? "" : path.replaceAll("^/+|/+$", "");
+	}
+
+	public synchronized void invalidateAll() {
+
+		generation++;
+		onHeap.clear();
+		offHeap.clear();
+		bytes = 0;
+		offHeapBytes = 0;
+	}
+
+	public synchronized void setMaxBytes(final long maxBytes) {
+
+		this.maxBytes = maxBytes;
+		evictOnHeap();
+	}
+
+	public synchronized void setMaxOffHeapBytes(final long maxOffHeapBytes) {
+
+		this.maxOffHeapBytes = maxOffHeapBytes;
+		evictOffHeap();
+	}
+
+	public synchronized void setEnabled(final boolean enabled) {
+
+		this.enabled = enabled;
+		if (!enabled)
+			invalidateAll();
+	}
+
+	public boolean isEnabled() {
+
+		return enabled;
+	}
+
+	public long getMaxBytes() {
+
+		return maxBytes;
+	}
+
+	public long getMaxOffHeapBytes() {
+
+		return maxOffHeapBytes;
+	}
+
+	public synchronized long getBytes() {
+
+		expunge();
+		return bytes;
+	}
+
+	public synchronized long getOffHeapBytes() {
+
+		return offHeapBytes;
+	}
+
+	public long getHitCount() {
+
+		return hits.get();
+	}
+
+	public long getOffHeapHitCount() {
+
+		return offHeapHits.get();
+	}
+
+	public long getMissCount() {
+
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+
+		return evictions.get();
+	}
+
+	public void resetStatistics() {
+
+		hits.set(0);
+		offHeapHits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	@Override
+	public String toString() {
+
+		return String.format("N5 block cache: %d / %d MB on heap, %d / %d MB off heap, "
+				+ "%d hits, %d off-heap hits, %d misses, %d evictions",
+				getBytes() / MB, maxBytes / MB,
+				getOffHeapBytes() / MB, maxOffHeapBytes / MB,
+				getHitCount(), getOffHeapHitCount(), getMissCount(), getEvictionCount());
+	}
+
+	/**
+	 * The size in bytes of one element of the given type.
+	 *
+	 * @param dataType
+	 *            the data type
+	 * @return number of bytes, or -1 for non-numeric types
+	 */
+	public static int bytesPerElement(final DataType dataType) {
+
+		switch (dataType) {
+		case INT8:
+		case UINT8:
+			return 1;
+		case INT16:
+		case UINT16:
+			return 2;
+		case INT32:
+		case UINT32:
+		case FLOAT32:
+			return 4;
+		case INT64:
+		case UINT64:
+		case FLOAT64:
+			return 8;
+		default:
+			return -1;
+		}
+	}
+
+	/**
+	 * Identifies a block by the container, the dataset and its grid position.
+	 */
+	public static class BlockKey {
+
+		private final String container;
+
+		private final String dataset;
+
+		private final DataType dataType;
+
+		private final long[] gridPosition;
+
+		private final int hash;
+
+		public BlockKey(final String container, final String dataset, final DataType dataType, final long[] gridPosition) {
+
+			this.container = container;
+			this.dataset = dataset;
+			this.dataType = dataType;
+			this.gridPosition = gridPosition;
+
+			int h = container.hashCode();
+			h = 31 * h + dataset.hashCode();
+			h = 31 * h + Arrays.hashCode(gridPosition);
+			hash = h;
+		}
+
+		boolean isBelow(final String container, final String path) {
+
+			if (!this.container.equals(container))
+				return false;
+
+			final String normDataset = normalize(dataset);
+			return path.isEmpty() || normDataset.equals(path) || normDataset.startsWith(path + "/");
+		}
+
+		@Override
+		public int hashCode() {
+
+			return hash;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+
+			if (this == obj)
+				return true;
+
+			if (!(obj instanceof BlockKey))
+				return false;
+
+			final BlockKey other = (BlockKey)obj;
+			return hash == other.hash &&
+					container.equals(other.container) &&
+					dataset.equals(other.dataset) &&
+					Arrays.equals(gridPosition, other.gridPosition);
+		}
+	}
+
+	private static class Entry extends SoftReference<DataBlock<?>> {
+
+		private final BlockKey key;
+
+		private final long bytes;
+
+		public Entry(final BlockKey key, final DataBlock<?> block, final ReferenceQueue<DataBlock<?>> queue) {
+
+			super(block, queue);
+			this.key = key;
+			bytes = (long)block.getNumElements() * Math.max(1, bytesPerElement(key.dataType));
+		}
+	}
+
+	private static class OffHeapEntry {
+
+		private final DataType dataType;
+
+		private final int[] size;
+
+		private final long[] gridPosition;
+
+		private final int numElements;
+
+		private final ByteBuffer buffer;
+
+		public OffHeapEntry(final DataType dataType, final DataBlock<?> block) {
+
+			this.dataType = dataType;
+			size = block.getSize();
+			gridPosition = block.getGridPosition();
+			numElements = block.getNumElements();
+
+			final ByteBuffer data = block.toByteBuffer();
+			data.rewind();
+			buffer = ByteBuffer.allocateDirect(data.remaining());
+			buffer.put(data);
+		}
+
+		public DataBlock<?> restore() {
+
+			final DataBlock<?> block = dataType.createDataBlock(size, gridPosition, numElements);
+			final ByteBuffer data = buffer.duplicate();
+			data.rewind();
+			block.readData(data);
+			return block;
+		}
+	}
+
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.cache;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache.BlockKey;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.Cache;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.CellLoader;
+import net.imglib2.cache.img.SingleCellArrayImg;
+import net.imglib2.cache.ref.BoundedSoftRefLoaderCache;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.Type;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * A {@link CellLoader} that reads blocks through a {@link SharedBlockCache}.
+ * <p>
+ * The cells of images opened with {@link #open(N5Reader, String)} share the
+ * arrays of the cached blocks where a block covers its cell exactly, so that
+ * they take no memory beyond the budget of the shared cache. Only cells of
+ * differently sized edge blocks, and of missing blocks, are copies. These
+ * images are read-only: writing to them would change the cached blocks.
+ *
+ * @param <T> the image data type
+ */
+public class SharedBlockCellLoader<T extends NativeType<T>> implements CellLoader<T> {
+
+	public static final int DEFAULT_MAX_NUM_CELLS = 256;
+
+	private final N5Reader n5;
+
+	private final String containerKey;
+
+	private final String dataset;
+
+	private final DatasetAttributes attributes;
+
+	private final int[] blockSize;
+
+	private final SharedBlockCache cache;
+
+	public SharedBlockCellLoader(final N5Reader n5, final String dataset, final DatasetAttributes attributes,
+			final SharedBlockCache cache) {
+
+		this.n5 = n5;
+		this.dataset = dataset;
+		this.attributes = attributes;
+		this.cache = cache;
+		blockSize = attributes.getBlockSize();
+		containerKey = n5.getURI().toString();
+	}
+
+	/**
+	 * Returns true if blocks of the given type can be stored in a
+	 * {@link SharedBlockCache}.
+	 *
+	 * @param dataType
+	 *            the data type
+	 * @return true if supported
+	 */
+	public static boolean isSupported(final DataType dataType) {
+
+		return SharedBlockCache.bytesPerElement(dataType) > 0;
+	}
+
+	public static <T extends NativeType<T>> CachedCellImg<T, ?> open(final N5Reader n5, final String dataset) {
+
+		return open(n5, dataset, SharedBlockCache.getInstance(), DEFAULT_MAX_NUM_CELLS);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static <T extends NativeType<T>> CachedCellImg<T, ?> open(
+			final N5Reader n5,
+			final String dataset,
+			final SharedBlockCache cache,
+			final int maxNumCells) {
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final T type = N5Utils.type(attributes.getDataType());
+		final CellGrid grid = new CellGrid(attributes.getDimensions(), attributes.getBlockSize());
+		final Set<AccessFlags> accessFlags = AccessFlags.setOf();
+
+		final SharedBlockCellLoader<T> loader = new SharedBlockCellLoader<>(n5, dataset, attributes, cache);
+		final ArrayDataAccess<?> accessFactory = (ArrayDataAccess<?>)ArrayDataAccessFactory.get(type, accessFlags);
+		final CacheLoader<Long, Cell<?>> cacheLoader = index -> loader.loadCell(grid, index, accessFactory);
+		final Cache<Long, Cell<?>> cellCache = new BoundedSoftRefLoaderCache<Long, Cell<?>>(maxNumCells).withLoader(cacheLoader);
+
+		return new CachedCellImg(grid, type, cellCache, ArrayDataAccessFactory.get(type, accessFlags));
+	}
+
+	@Override
+	public void load(final SingleCellArrayImg<T, ?> cell) throws Exception {
+
+		final DataBlock<?> block = readBlock(Intervals.minAsLongArray(cell));
+
+		// missing blocks are left filled with zeros
+		if (block != null)
+			copy(block, attributes.getDataType(), cell);
+	}
+
+	private DataBlock<?> readBlock(final long[] cellMin) throws Exception {
+
+		final long[] gridPosition = new long[blockSize.length];
+		for (int d = 0; d < gridPosition.length; d++)
+			gridPosition[d] = cellMin[d] / blockSize[d];
+
+		final BlockKey key = new BlockKey(containerKey, dataset, attributes.getDataType(), gridPosition);
+		return cache.get(key, () -> n5.readBlock(dataset, attributes, gridPosition));
+	}
+
+	/**
+	 * Loads a cell that shares the array of its cached block if the block
+	 * has the size of the cell, or holds a copy of the block otherwise.
+	 */
+	private Cell<?> loadCell(final CellGrid grid, final long index, final ArrayDataAccess<?> accessFactory) throws Exception {
+
+		final int n = grid.numDimensions();
+		final long[] cellMin = new long[n];
+		final int[] cellDims = new int[n];
+		grid.getCellDimensions(index, cellMin, cellDims);
+
+		final DataBlock<?> block = readBlock(cellMin);
+		final long numElements = Intervals.numElements(cellDims);
+		if (block != null && block.getNumElements() == numElements && Arrays.equals(block.getSize(), cellDims)) {
+			final ArrayDataAccess<?> shared = wrapAccess(block.getData());
+			if (shared != null)
+				return new Cell<>(cellDims, cellMin, shared);
+		}
+
+		// missing blocks are left filled with zeros
+		final ArrayDataAccess<?> data = (ArrayDataAccess<?>)accessFactory.createArray((int)numElements);
+		if (block != null)
+			copy(block, attributes.getDataType(), wrap(attributes.getDataType(), data.getCurrentStorageArray(),
+					Arrays.stream(cellDims).asLongStream().toArray()));
+
+		return new Cell<>(cellDims, cellMin, data);
+	}
+
+	private static ArrayDataAccess<?> wrapAccess(final Object data) {
+
+		if (data instanceof byte[])
+			return new ByteArray((byte[])data);
+		else if (data instanceof short[])
+			return new ShortArray((short[])data);
+		else if (data instanceof int[])
+			return new IntArray((int[])data);
+		else if (data instanceof long[])
+			return new LongArray((long[])data);
+		else if (data instanceof float[])
+			return new FloatArray((float[])data);
+		else if (data instanceof double[])
+			return new DoubleArray((double[])data);
+		else
+			return null;
+	}
+
+	/**
+	 * Copies the contents of a block into a cell. Only the region where the
+	 * block and the cell overlap is copied.
+	 *
+	 * @param block
+	 *            the source block
+	 * @param dataType
+	 *            the data type of the block
+	 * @param cell
+	 *            the target
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static void copy(final DataBlock<?> block, final DataType dataType, final RandomAccessibleInterval<?> cell) {
+
+		final int[] size = block.getSize();
+		final long[] blockDims = new long[size.length];
+		final long[] overlap = new long[size.length];
+		for (int d = 0; d < size.length; d++) {
+			blockDims[d] = size[d];
+			overlap[d] = Math.min(size[d], cell.dimension(d));
+		}
+
+		final FinalInterval overlapInterval = new FinalInterval(overlap);
+		final RandomAccessibleInterval src = Views.interval(wrap(dataType, block.getData(), blockDims), overlapInterval);
+		final RandomAccessibleInterval dst = Views.interval(Views.zeroMin(cell), overlapInterval);
+		LoopBuilder.setImages(src, dst).forEachPixel((a, b) -> ((Type)b).set((Type)a));
+	}
+
+	private static RandomAccessibleInterval<?> wrap(final DataType dataType, final Object data, final long[] dims) {
+
+		switch (dataType) {
+		case INT8:
+			return ArrayImgs.bytes((byte[])data, dims);
+		case UINT8:
+			return ArrayImgs.unsignedBytes((byte[])data, dims);
+		case INT16:
+			return ArrayImgs.shorts((short[])data, dims);
+		case UINT16:
+			return ArrayImgs.unsignedShorts((short[])data, dims);
+		case INT32:
+			return ArrayImgs.ints((int[])data, dims);
+		case UINT32:
+			return ArrayImgs.unsignedInts((int[])data, dims);
+		case INT64:
+			return ArrayImgs.longs((long[])data, dims);
+		case UINT64:
+			return ArrayImgs.unsignedLongs((long[])data, dims);
+		case FLOAT32:
+			return ArrayImgs.floats((float[])data, dims);
+		case FLOAT64:
+			return ArrayImgs.doubles((double[])data, dims);
+		default:
+			throw new UnsupportedOperationException("Can not cache blocks of type " + dataType);
+		}
+	}
+
+}
@@ -0,0 +1,95 @@
+package org.janelia.saalfeldlab.n5.converters;
+
+import java.util.Arrays;
+
+/**
+ * Bulk conversions between the primitive arrays that back decoded blocks and
+ * {@link net.imglib2.img.imageplus.ImagePlusImg} planes.
+ * <p>
+ * Each kernel converts a strided run of source elements into a run of target
+ * elements. The loops are kept trivial (no per-element branches or virtual
+ * calls) so that the JIT can unroll and vectorize them when both strides are
+ * one.
+ */
+public class ArrayConverters
+{
+	private ArrayConverters()
+	{}
+
+	/**
+	 * Narrows float64 to float32.
+	 */
+	public static void doubleToFloat(
+			final double[] src, final int srcOffset, final int srcStride,
+			final float[] dst, final int dstOffset, final int dstStep,
+			final int length )
+	{
+		if ( srcStride == 1 && dstStep == 1 )
+		{
+			for ( int i = 0; i < length; i++ )
+				dst[ dstOffset + i ] = ( float ) src[ srcOffset + i ];
+		}
+		else
+		{
+			for ( int i = 0, si = srcOffset, di = dstOffset; i < length; i++, si += srcStride, di += dstStep )
+				dst[ di ] = ( float ) src[ si ];
+		}
+	}
+
+	/**
+	 * Maps int32 (or uint32) values to uint16 through a sorted look-up table,
+	 * as {@link UnsignedShortLUTConverter} does: each value becomes its index
+	 * in the table.
+	 *
+	 * @param lut
+	 *            the values in ascending order, see
+	 *            {@link UnsignedShortLUTConverter#values()}
+	 * @param unsigned
+	 *            whether the source is uint32
+	 */
+	public static void int32ToUShortLUT(
+			final int[] src, final int srcOffset, final int srcStride,
+			final short[] dst, final int dstOffset, final int dstStep,
+			final int length, final long[] lut, final boolean unsigned )
+	{
+		final long mask = unsigned ? 0xffffffffL : -1L;
+		for ( int i = 0, si = srcOffset, di = dstOffset; i < length; i++, si += srcStride, di += dstStep )
+			dst[ di ] = ( short ) Arrays.binarySearch( lut, src[ si ] & mask );
+	}
+
+	/**
+	 * Maps int64 values to uint16 through a sorted look-up table, as
+	 * {@link UnsignedShortLUTConverter} does: each value becomes its index in
+	 * the table.
+	 *
+	 * @param lut
+	 *            the values in ascending order, see
+	 *            {@link UnsignedShortLUTConverter#values()}
+	 */
+	public static void int64ToUShortLUT(
+			final long[] src, final int srcOffset, final int srcStride,
+			final short[] dst, final int dstOffset, final int dstStep,
+			final int length, final long[] lut )
+	{
+		for ( int i = 0, si = srcOffset, di = dstOffset; i < length; i++, si += srcStride, di += dstStep )
+			dst[ di ] = ( short ) Arrays.binarySearch( lut, src[ si ] );
+	}
+
+	/**
+	 * Packed uint32 to ARGB. Both are stored as int, so this is a copy.
+	 */
+	public static void uint32ToARGB(
+			final int[] src, final int srcOffset, final int srcStride,
+			final int[] dst, final int dstOffset, final int dstStep,
+			final int length )
+	{
+		if ( srcStride == 1 && dstStep == 1 )
+			System.arraycopy( src, srcOffset, dst, dstOffset, length );
+		else
+		{
+			for ( int i = 0, si = srcOffset, di = dstOffset; i < length; i++, si += srcStride, di += dstStep )
+				dst[ di ] = src[ si ];
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package org.janelia.saalfeldlab.n5.converters;
+
+import java.util.function.BiConsumer;
+
+import net.imglib2.converter.Converter;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Linear {@link Converter} that maps the window [min, max] of its input to
+ * [0, outputMax] of a narrower output type, clamping values outside the
+ * window.
+ *
+ * @param <S> input type
+ * @param <T> output type
+ */
+public class RealWindowConverter< S extends RealType< S >, T extends RealType< T > > implements Converter< S, T >, BiConsumer< S, T >
+{
+	private final double min;
+
+	private final double scale;
+
+	private final double outputMax;
+
+	public RealWindowConverter( final double min, final double max, final double outputMax )
+	{
+		this.min = min;
+		this.outputMax = outputMax;
+		scale = max > min ? outputMax / ( max - min ) : 1;
+	}
+
+	@Override
+	public void accept( S s, T t )
+	{
+		convert( s, t );
+	}
+
+	@Override
+	public void convert( S input, T output )
+	{
+		final double v = ( input.getRealDouble() - min ) * scale;
+		output.setReal( v < 0 ? 0 : v > outputMax ? outputMax : v );
+	}
+
+}
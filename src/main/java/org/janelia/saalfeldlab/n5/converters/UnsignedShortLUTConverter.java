@@ -61,6 +61,20 @@ public class UnsignedShortLUTConverter< T extends AbstractIntegerType< T > > imp
 		return uniqueValues;
 	}
 
+	/**
+	 * Returns the values of a look-up-table built from an image as longs,
+	 * ordered by the index they map to. For signed types and uint32, this is
+	 * ascending order.
+	 *
+	 * @return the values
+	 */
+	public long[] values()
+	{
+		final long[] values = new long[ lut.size() ];
+		lut.forEach( ( t, i ) -> values[ i ] = t.getIntegerLong() );
+		return values;
+	}
+
 	@Override
 	public void accept( T t, UnsignedShortType out )
 	{
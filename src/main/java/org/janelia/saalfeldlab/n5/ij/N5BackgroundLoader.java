@@ -0,0 +1,231 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.awt.EventQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+
+/**
+ * Loads a virtual image into memory in the background.
+ * <p>
+ * The image is opened virtually so it can be shown at once. Planes are then
+ * read in parallel on the {@link N5IoQueue} at background priority, nearest
+ * to the slice the user is looking at first. Each plane is read by a task of
+ * its own, so that reads for what the user is looking at run in between. When
+ * all planes are loaded, the virtual stack of the image is replaced with an
+ * in-memory stack on the event dispatch thread, keeping its dimensions and
+ * display range.
+ * <p>
+ * Loading stops if the image is closed.
+ */
+public class N5BackgroundLoader implements Runnable {
+
+	/**
+	 * The fraction of free memory a loaded image may use.
+	 */
+	public static final double MAX_FREE_MEMORY_FRACTION = 0.5;
+
+	private final ImagePlus imp;
+
+	private final ImageStack virtualStack;
+
+	private final int numThreads;
+
+	private final Object[] planes;
+
+	private final boolean[] started;
+
+	private volatile boolean cancelled = false;
+
+	private boolean wasShown = false;
+
+	private final AtomicInteger chains = new AtomicInteger();
+
+	private final CountDownLatch finished = new CountDownLatch(1);
+
+	private volatile Throwable failure;
+
+	/**
+	 * @param imp
+	 *            a virtual image
+	 * @param numThreads
+	 *            the number of planes to read at once
+	 */
+	public N5BackgroundLoader(final ImagePlus imp, final int numThreads) {
+
+		this.imp = imp;
+		this.numThreads = Math.max(1, numThreads);
+		virtualStack = imp.getStack();
+		planes = new Object[virtualStack.getSize()];
+		started = new boolean[planes.length];
+	}
+
+	/**
+	 * Returns true if the given image would fit into memory.
+	 *
+	 * @param imp
+	 *            the image
+	 * @return whether it fits
+	 */
+	public static boolean fitsInMemory(final ImagePlus imp) {
+
+		final long bytes = (long)imp.getWidth() * imp.getHeight() * imp.getStackSize() * imp.getBytesPerPixel();
+		return bytes <= (IJ.maxMemory() - IJ.currentMemory()) * MAX_FREE_MEMORY_FRACTION;
+	}
+
+	/**
+	 * Starts loading the given image into memory in the background if it is
+	 * virtual and fits into free memory.
+	 *
+	 * @param imp
+	 *            the image
+	 * @return the loader, or null if the image stays virtual
+	 */
+	public static N5BackgroundLoader start(final ImagePlus imp) {
+
+		if (!imp.getStack().isVirtual() || !fitsInMemory(imp))
+			return null;
+
+		final N5BackgroundLoader loader = new N5BackgroundLoader(imp, Prefs.getThreads());
+		final Thread thread = new Thread(loader, "n5-background-loader-" + imp.getTitle());
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+		return loader;
+	}
+
+	public void cancel() {
+
+		cancelled = true;
+	}
+
+	private boolean isCancelled() {
+
+		if (imp.getWindow() != null)
+			wasShown = true;
+
+		return cancelled || (wasShown && imp.getWindow() == null) || imp.getStack() != virtualStack;
+	}
+
+	/**
+	 * Returns the index of the plane that is not yet being read and is
+	 * nearest to the current slice, or -1 if all planes have been started.
+	 */
+	private synchronized int next() {
+
+		final int current = imp.getCurrentSlice() - 1;
+		for (int offset = 0; offset < planes.length; offset++) {
+			if (current + offset < planes.length && !started[current + offset]) {
+				started[current + offset] = true;
+				return current + offset;
+			}
+			if (current - offset >= 0 && !started[current - offset]) {
+				started[current - offset] = true;
+				return current - offset;
+			}
+		}
+		return -1;
+	}
+
+	private Object read(final int n) {
+
+		if (virtualStack instanceof N5VirtualStack)
+			return ((N5VirtualStack<?>)virtualStack).getProcessorNow(n + 1).getPixels();
+		else
+			return virtualStack.getProcessor(n + 1).getPixels();
+	}
+
+	/**
+	 * Reads the next plane, then queues a task for the one after, until all
+	 * planes are read.
+	 */
+	private void step() {
+
+		try {
+			final int n;
+			if (!isCancelled() && (n = next()) >= 0) {
+				planes[n] = read(n);
+				N5IoQueue.getInstance().submit(this::step, N5IoQueue.BACKGROUND);
+				return;
+			}
+		} catch (final Throwable t) {
+			failure = t;
+		}
+
+		if (chains.decrementAndGet() == 0)
+			finished.countDown();
+	}
+
+	@Override
+	public void run() {
+
+		// planes are read on the shared queue behind the planes the user is
+		// looking at, up to numThreads at a time
+		final int numChains = Math.min(numThreads, planes.length);
+		if (numChains > 0) {
+			chains.set(numChains);
+			for (int i = 0; i < numChains; i++)
+				N5IoQueue.getInstance().submit(this::step, N5IoQueue.BACKGROUND);
+
+			try {
+				finished.await();
+			} catch (final InterruptedException e) {
+				cancel();
+				return;
+			}
+		}
+
+		if (failure != null) {
+			IJ.log("Loading " + imp.getTitle() + " into memory failed: " + failure.getMessage());
+			return;
+		}
+
+		if (isCancelled())
+			return;
+
+		final ImageStack stack = new ImageStack(virtualStack.getWidth(), virtualStack.getHeight(), virtualStack.getColorModel());
+		for (int i = 0; i < planes.length; i++)
+			stack.addSlice(virtualStack.getSliceLabel(i + 1), planes[i]);
+
+		EventQueue.invokeLater(() -> {
+			if (isCancelled())
+				return;
+
+			final double min = imp.getDisplayRangeMin();
+			final double max = imp.getDisplayRangeMax();
+			imp.setStack(stack, imp.getNChannels(), imp.getNSlices(), imp.getNFrames());
+			imp.setDisplayRange(min, max);
+			imp.updateAndDraw();
+		});
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache;
+import org.scijava.command.Command;
+import org.scijava.command.ContextCommand;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+import ij.Prefs;
+
+/**
+ * Configures the {@link SharedBlockCache} used by the {@link N5Importer}.
+ * <p>
+ * Settings are stored in the ImageJ preferences. From a macro, for example:
+ *
+ * <pre>
+ * run("N5 Block Cache...", "enable cachemegabytes=4096 offheapmegabytes=0 statistics");
+ * </pre>
+ */
+@Plugin(type = Command.class, menuPath = "Edit>Options>N5 Block Cache...", description = "Configure the block cache shared by images opened from N5, Zarr, and HDF5 containers.")
+public class N5CacheSettings extends ContextCommand {
+
+	@Parameter
+	private LogService log;
+
+	@Parameter(label = "Enable", persist = false, initializer = "initializeFromCache")
+	private boolean enable = true;
+
+	@Parameter(label = "Cache size (MB)", persist = false, min = "0", initializer = "initializeFromCache")
+	private long cacheMegabytes;
+
+	@Parameter(label = "Off-heap size (MB)", persist = false, min = "0", initializer = "initializeFromCache",
+			description = "Blocks evicted from the heap are kept in direct memory up to this size. Zero disables the off-heap tier.")
+	private long offHeapMegabytes;
+
+	@Parameter(label = "Clear cache", persist = false)
+	private boolean clear = false;
+
+	@Parameter(label = "Log statistics", persist = false)
+	private boolean statistics = false;
+
+	@SuppressWarnings("unused")
+	private void initializeFromCache() {
+
+		final SharedBlockCache cache = SharedBlockCache.getInstance();
+		enable = cache.isEnabled();
+		cacheMegabytes = cache.getMaxBytes() / SharedBlockCache.MB;
+		offHeapMegabytes = cache.getMaxOffHeapBytes() / SharedBlockCache.MB;
+	}
+
+	@Override
+	public void run() {
+
+		final SharedBlockCache cache = SharedBlockCache.getInstance();
+		cache.setEnabled(enable);
+		cache.setMaxBytes(cacheMegabytes * SharedBlockCache.MB);
+		cache.setMaxOffHeapBytes(offHeapMegabytes * SharedBlockCache.MB);
+
+		Prefs.set(SharedBlockCache.ENABLED_KEY, enable);
+		Prefs.set(SharedBlockCache.MAX_MB_KEY, cacheMegabytes);
+		Prefs.set(SharedBlockCache.MAX_OFFHEAP_MB_KEY, offHeapMegabytes);
+
+		if (clear)
+			cache.invalidateAll();
+
+		if (statistics)
+			log.info(cache.toString());
+	}
+
+}
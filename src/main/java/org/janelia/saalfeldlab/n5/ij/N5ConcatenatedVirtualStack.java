@@ -0,0 +1,273 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import ij.CompositeImage;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.VirtualStack;
+import ij.process.ImageProcessor;
+
+/**
+ * A virtual stack that combines several images with identical dimensions into
+ * one hyperstack along the channel or the time axis, without copying.
+ * <p>
+ * When a plane is requested, it is read on the calling thread while the
+ * corresponding planes of the other sources are prefetched on the
+ * {@link N5IoQueue}, so that the remaining channels of a composite image (or
+ * the neighboring time points) are already available when ImageJ asks for
+ * them.
+ * <p>
+ * Planes that are edited are kept in memory and returned instead of the
+ * source planes, the sources themselves are not changed.
+ */
+public class N5ConcatenatedVirtualStack extends VirtualStack {
+
+	public static enum Axis {
+		CHANNEL, TIME
+	};
+
+	private final ImagePlus[] sources;
+
+	private final Axis axis;
+
+	private final int nChannels;
+
+	private final int nSlices;
+
+	private final int nFrames;
+
+	private final Map<Integer, Future<ImageProcessor>> pending;
+
+	private final Map<Integer, Object> edited;
+
+	/**
+	 * @param sources
+	 *            the images to combine, all with the same dimensions and type
+	 * @param axis
+	 *            the axis along which to combine
+	 */
+	public N5ConcatenatedVirtualStack(final ImagePlus[] sources, final Axis axis) {
+
+		super(sources[0].getWidth(), sources[0].getHeight(), sources[0].getProcessor().getColorModel(), null);
+		this.sources = sources;
+		this.axis = axis;
+
+		final int[] dims = sources[0].getDimensions();
+		nChannels = axis == Axis.CHANNEL ? dims[2] * sources.length : dims[2];
+		nSlices = dims[3];
+		nFrames = axis == Axis.TIME ? dims[4] * sources.length : dims[4];
+		setBitDepth(sources[0].getBitDepth());
+		pending = new HashMap<>();
+		edited = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Returns true if the images have the same size, type, and dimensions.
+	 *
+	 * @param imps
+	 *            the images
+	 * @return true if they can be combined
+	 */
+	public static boolean areCompatible(final List<ImagePlus> imps) {
+
+		if (imps.isEmpty())
+			return false;
+
+		final ImagePlus first = imps.get(0);
+		return imps.stream().allMatch(x -> x.getBitDepth() == first.getBitDepth() &&
+				Arrays.equals(x.getDimensions(), first.getDimensions()));
+	}
+
+	/**
+	 * Combines the given images into one hyperstack. Images combined along
+	 * the channel axis are returned as a {@link CompositeImage} that keeps the
+	 * display range of each source.
+	 *
+	 * @param title
+	 *            the title of the result
+	 * @param imps
+	 *            the images to combine
+	 * @param axis
+	 *            the axis along which to combine
+	 * @return the combined image
+	 */
+	public static ImagePlus concatenate(final String title, final List<ImagePlus> imps, final Axis axis) {
+
+		if (!areCompatible(imps))
+			throw new IllegalArgumentException("Images must have identical dimensions and types to be combined.");
+
+		final ImagePlus[] sources = imps.toArray(new ImagePlus[0]);
+		final N5ConcatenatedVirtualStack stack = new N5ConcatenatedVirtualStack(sources, axis);
+
+		final ImagePlus imp = new ImagePlus(title, stack);
+		imp.setDimensions(stack.nChannels, stack.nSlices, stack.nFrames);
+		imp.setOpenAsHyperStack(true);
+		imp.setCalibration(sources[0].getCalibration().copy());
+		imp.setFileInfo(sources[0].getOriginalFileInfo());
+
+		if (axis != Axis.CHANNEL || stack.nChannels < 2 || stack.nChannels > CompositeImage.MAX_CHANNELS) {
+			imp.setDisplayRange(sources[0].getDisplayRangeMin(), sources[0].getDisplayRangeMax());
+			return imp;
+		}
+
+		final CompositeImage composite = new CompositeImage(imp, IJ.COMPOSITE);
+		final int channelsPerSource = sources[0].getNChannels();
+		for (int c = 0; c < stack.nChannels; c++) {
+			final ImagePlus src = sources[c / channelsPerSource];
+			composite.setPosition(c + 1, 1, 1);
+			composite.setDisplayRange(src.getDisplayRangeMin(), src.getDisplayRangeMax());
+		}
+		composite.setPosition(1, 1, 1);
+		return composite;
+	}
+
+	@Override
+	public ImageProcessor getProcessor(final int n) {
+
+		final Object editedPixels = edited.get(n);
+		if (editedPixels != null) {
+			final ImageStack plane = new ImageStack(getWidth(), getHeight(), getColorModel());
+			plane.addSlice(null, editedPixels);
+			return plane.getProcessor(1);
+		}
+
+		final Future<ImageProcessor> prefetched;
+		synchronized (pending) {
+			prefetched = pending.remove(n);
+			if (prefetched == null) {
+				// an unrelated plane was requested, drop stale prefetches
+				pending.values().forEach(x -> x.cancel(false));
+				pending.clear();
+
+				for (final int sibling : siblings(n))
+					if (sibling != n)
+						pending.put(sibling, N5IoQueue.getInstance().submit(() -> read(sibling), N5IoQueue.PREFETCH));
+			}
+		}
+
+		// read here unless the prefetch has started already, so that callers
+		// on the queue never wait for a task behind them
+		if (prefetched == null || prefetched.cancel(false))
+			return read(n);
+
+		try {
+			return prefetched.get();
+		} catch (InterruptedException | ExecutionException e) {
+			IJ.handleException(e);
+			return read(n);
+		}
+	}
+
+	/**
+	 * Returns the stack indexes of the planes that are read together with
+	 * plane n: all channels, or all time points, at the same position.
+	 */
+	private int[] siblings(final int n) {
+
+		final int[] czt = convertIndexToPosition(n);
+		final int[] result = new int[sources.length];
+		final int stride = axis == Axis.CHANNEL ? sources[0].getNChannels() : sources[0].getNFrames();
+		final int offset = axis == Axis.CHANNEL ? (czt[0] - 1) % stride : (czt[2] - 1) % stride;
+		for (int i = 0; i < sources.length; i++) {
+			final int j = i * stride + offset + 1;
+			result[i] = axis == Axis.CHANNEL ? toIndex(j, czt[1], czt[2]) : toIndex(czt[0], czt[1], j);
+		}
+		return result;
+	}
+
+	private ImageProcessor read(final int n) {
+
+		final int[] czt = convertIndexToPosition(n);
+		final ImagePlus src;
+		final int index;
+		if (axis == Axis.CHANNEL) {
+			final int perSource = sources[0].getNChannels();
+			src = sources[(czt[0] - 1) / perSource];
+			index = src.getStackIndex((czt[0] - 1) % perSource + 1, czt[1], czt[2]);
+		} else {
+			final int perSource = sources[0].getNFrames();
+			src = sources[(czt[2] - 1) / perSource];
+			index = src.getStackIndex(czt[0], czt[1], (czt[2] - 1) % perSource + 1);
+		}
+		return src.getStack().getProcessor(index);
+	}
+
+	private int toIndex(final int c, final int z, final int t) {
+
+		return (t - 1) * nChannels * nSlices + (z - 1) * nChannels + c;
+	}
+
+	private int[] convertIndexToPosition(final int n) {
+
+		final int i = n - 1;
+		return new int[]{
+				i % nChannels + 1,
+				(i / nChannels) % nSlices + 1,
+				i / (nChannels * nSlices) + 1};
+	}
+
+	@Override
+	public Object getPixels(final int n) {
+
+		return getProcessor(n).getPixels();
+	}
+
+	@Override
+	public int getSize() {
+
+		return nChannels * nSlices * nFrames;
+	}
+
+	@Override
+	public String getSliceLabel(final int n) {
+
+		return null;
+	}
+
+	@Override
+	public void setPixels(final Object pixels, final int n) {
+
+		if (pixels != null)
+			edited.put(n, pixels);
+	}
+
+	@Override
+	public void deleteSlice(final int n) {
+
+		IJ.error("N5", "Slices of a combined N5 stack can not be deleted.");
+	}
+
+}
@@ -33,25 +33,39 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.N5Exception;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.cache.N5SessionPool;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCellLoader;
 import org.janelia.saalfeldlab.n5.converters.LabelMultisetLongConverter;
+import org.janelia.saalfeldlab.n5.converters.RealWindowConverter;
 import org.janelia.saalfeldlab.n5.converters.UnsignedShortLUTConverter;
 import org.janelia.saalfeldlab.n5.imglib2.N5LabelMultisets;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.metadata.FlatListingDiscovery;
+import org.janelia.saalfeldlab.n5.metadata.TargetedMetadataDiscovery;
 import org.janelia.saalfeldlab.n5.metadata.imagej.CanonicalMetadataToImagePlus;
 import org.janelia.saalfeldlab.n5.metadata.imagej.CosemToImagePlus;
 import org.janelia.saalfeldlab.n5.metadata.imagej.ImagePlusLegacyMetadataParser;
@@ -61,6 +75,7 @@ import org.janelia.saalfeldlab.n5.metadata.imagej.N5ViewerToImagePlus;
 import org.janelia.saalfeldlab.n5.metadata.imagej.NgffToImagePlus;
 import org.janelia.saalfeldlab.n5.ui.DataSelection;
 import org.janelia.saalfeldlab.n5.ui.DatasetSelectorDialog;
+import org.janelia.saalfeldlab.n5.ui.DatasetThumbnails;
 import org.janelia.saalfeldlab.n5.ui.N5DatasetTreeCellRenderer;
 import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
 import org.janelia.saalfeldlab.n5.universe.N5Factory;
@@ -89,16 +104,20 @@ import org.janelia.saalfeldlab.n5.zarr.ZarrDatasetAttributes;
 import org.janelia.saalfeldlab.n5.zarr.ZarrKeyValueReader;
 
 import ij.IJ;
+import ij.ImageListener;
 import ij.ImagePlus;
 import ij.Macro;
 import ij.Prefs;
+import ij.WindowManager;
 import ij.gui.GenericDialog;
+import ij.gui.Roi;
 import ij.io.FileInfo;
 import ij.plugin.PlugIn;
 import ij.plugin.frame.Recorder;
 import ij.process.ImageStatistics;
 import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
+import net.imglib2.IterableInterval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.converter.Converter;
@@ -112,6 +131,8 @@ import net.imglib2.parallel.DefaultTaskExecutor;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
@@ -130,6 +151,16 @@ public class N5Importer implements PlugIn {
 	public static final String hideKey = "hide";
 	public static final String minKey = "min";
 	public static final String maxKey = "max";
+	public static final String budgetKey = "budget";
+	public static final String screenKey = "screen";
+	public static final String backgroundKey = "background";
+	public static final String narrowKey = "narrow";
+	public static final String subsampleKey = "subsample";
+	public static final String averageKey = "average";
+	public static final String roiKey = "roi";
+	public static final String resliceKey = "reslice";
+	public static final String multiResolutionKey = "multiresolution";
+	public static final String combineKey = "combine";
 	public static final String COMMAND_NAME = "HDF5/N5/Zarr/OME-NGFF ... ";
 
 	public static final String BDV_OPTION = "BigDataViewer";
@@ -161,6 +192,12 @@ public class N5Importer implements PlugIn {
 
 	private static final Predicate<N5Metadata> ALL_PASS = x -> { return true; };
 
+	// the maximum width and height of the pyramid level shown while virtual planes load
+	private static final long[] PREVIEW_SIZE = new long[]{256, 256};
+
+	// the image property that holds the intensity window of a narrowed image
+	private static final String NARROW_WINDOW_PROPERTY = "n5.narrowWindow";
+
 	private N5Reader n5;
 
 	private DatasetSelectorDialog selectionDialog;
@@ -179,6 +216,20 @@ public class N5Importer implements PlugIn {
 
 	private boolean cropOption;
 
+	private PyramidLevelSelector levelSelector;
+
+	private N5ConcatenatedVirtualStack.Axis combineAxis;
+
+	private boolean backgroundLoad;
+
+	private int narrowBits;
+
+	private Subsampling subsampling;
+
+	private Reslice reslice;
+
+	private boolean multiResolution;
+
 	private Thread loaderThread;
 
 	private final ExecutorService exec;
@@ -236,6 +287,101 @@ public class N5Importer implements PlugIn {
 		return impMetaWriterTypes;
 	}
 
+	/**
+	 * Set a selector that replaces each dataset that is part of a multiscale
+	 * pyramid with the finest level fitting a memory or screen budget. Not
+	 * applied when cropping.
+	 *
+	 * @param levelSelector
+	 *            the selector, or null to open datasets as selected
+	 */
+	public void setLevelSelector(final PyramidLevelSelector levelSelector) {
+
+		this.levelSelector = levelSelector;
+	}
+
+	public PyramidLevelSelector getLevelSelector() {
+
+		return levelSelector;
+	}
+
+	/**
+	 * Set an axis along which all selected datasets are combined into one
+	 * virtual hyperstack, for example the channels of an N5Viewer container
+	 * ({@code c0/s0}, {@code c1/s0}, ...).
+	 *
+	 * @param combineAxis
+	 *            the axis, or null to open datasets as separate images
+	 */
+	public void setCombineAxis(final N5ConcatenatedVirtualStack.Axis combineAxis) {
+
+		this.combineAxis = combineAxis;
+	}
+
+	/**
+	 * Set a flag determining whether images are opened virtually and then
+	 * loaded into memory in the background if they fit into free memory.
+	 *
+	 * @param backgroundLoad
+	 *            the flag
+	 * @see N5BackgroundLoader
+	 */
+	public void setBackgroundLoad(final boolean backgroundLoad) {
+
+		this.backgroundLoad = backgroundLoad;
+	}
+
+	/**
+	 * Set the bit depth that uint16, float32 and float64 datasets are narrowed
+	 * to while they are read. The window that is mapped to the narrower range
+	 * is taken from the intensity range in the metadata if there is one, and
+	 * otherwise sampled from the middle plane.
+	 *
+	 * @param narrowBits
+	 *            8 or 16, or 0 to keep the type
+	 */
+	public void setNarrowBits(final int narrowBits) {
+
+		this.narrowBits = narrowBits;
+	}
+
+	/**
+	 * Set a subsampling that is applied to every dataset after cropping, to
+	 * open a reduced resolution overview of datasets without a multiscale
+	 * pyramid.
+	 *
+	 * @param subsampling
+	 *            the subsampling, or null to open at full resolution
+	 */
+	public void setSubsampling(final Subsampling subsampling) {
+
+		this.subsampling = subsampling;
+	}
+
+	/**
+	 * Set an orthogonal reslicing that is applied to every dataset, to browse
+	 * XZ or YZ planes of a virtual image.
+	 *
+	 * @param reslice
+	 *            the reslicing, or null to open XY planes
+	 */
+	public void setReslice(final Reslice reslice) {
+
+		this.reslice = reslice;
+	}
+
+	/**
+	 * Set a flag determining whether virtual images opened from a multiscale
+	 * pyramid draw coarser levels while a plane is read zoomed out.
+	 *
+	 * @param multiResolution
+	 *            the flag
+	 */
+	public void setMultiResolution(final boolean multiResolution) {
+
+		this.multiResolution = multiResolution;
+	}
+
 	public void setNumDimensionsForCropDialog(final int numDimensionsForCrop) {
 
 		this.numDimensionsForCrop = numDimensionsForCrop;
@@ -266,15 +412,19 @@ public class N5Importer implements PlugIn {
 
 		if (!isMacro && !isCrop) {
 			// the fancy selector dialog
+			// the dialog opens fresh readers, so that detecting again shows changes
 			selectionDialog = new DatasetSelectorDialog(
-					new N5ViewerReaderFun(),
+					new N5ViewerReaderFun(false),
 					new N5BasePathFun(),
 					lastOpenedContainer,
 					new N5MetadataParser[]{ new OmeNgffMetadataParser() }, // need the ngff parser because it's where the metadata are
 					PARSERS);
 
 			selectionDialog.setLoaderExecutor(exec);
+			selectionDialog.setPathValidationFun(new N5ViewerReaderFun(false, false));
 			selectionDialog.setTreeRenderer(new N5DatasetTreeCellRenderer(true));
+			selectionDialog.setThumbnailsOption(Prefs.get(DatasetThumbnails.ENABLED_KEY, true));
+			selectionDialog.setFlatListingDiscovery(Prefs.get(FlatListingDiscovery.ENABLED_KEY, true));
 
 			// restrict canonical metadata to those with spatial metadata, but
 			// without
@@ -297,6 +447,9 @@ public class N5Importer implements PlugIn {
 
 			selectionDialog.setVirtualOption(true);
 			selectionDialog.setCropOption(true);
+			selectionDialog.setFitToBudgetOption(true);
+			selectionDialog.setCombineOption(true);
+			selectionDialog.setBackgroundLoadOption(true);
 			selectionDialog.run(this::datasetSelectorCallBack);
 		} else {
 			// disable recorder
@@ -307,6 +460,29 @@ public class N5Importer implements PlugIn {
 			String n5Path = Macro.getValue(options, n5PathKey, "");
 			Interval thisDatasetCropInterval = null;
 			boolean openAsVirtual = options.contains(" " + virtualKey);
+			backgroundLoad = options.contains(" " + backgroundKey);
+			final String narrow = Macro.getValue(options, narrowKey, "0");
+			try {
+				narrowBits = Integer.parseInt(narrow);
+			} catch (final NumberFormatException e) {
+				narrowBits = -1;
+			}
+			if (narrowBits != 0 && narrowBits != 8 && narrowBits != 16) {
+				Recorder.record = initialRecorderState;
+				IJ.error("Import N5", "narrow must be 8 or 16, but was: " + narrow);
+				return;
+			}
+			try {
+				subsampling = Subsampling.parse(Macro.getValue(options, subsampleKey, ""), options.contains(" " + averageKey));
+				reslice = Reslice.parse(Macro.getValue(options, resliceKey, ""));
+			} catch (final IllegalArgumentException e) {
+				Recorder.record = initialRecorderState;
+				IJ.error("Import N5", e.getMessage());
+				return;
+			}
+			multiResolution = options.contains(" " + multiResolutionKey);
+			boolean useRoi = options.contains(" " + roiKey);
+			final Roi currentRoi = currentAreaRoi();
 
 			// we don't always know ahead of time the dimensionality
 			if (isCrop) {
@@ -329,6 +505,11 @@ public class N5Importer implements PlugIn {
 						gd.addNumericField("max_" + axisNames[i], Double.POSITIVE_INFINITY);
 				}
 
+				if (currentRoi != null) {
+					gd.addMessage(" ");
+					gd.addCheckbox("Restrict X and Y to the ROI of the current image", useRoi);
+				}
+
 				gd.showDialog();
 				if (gd.wasCanceled()) {
 					// set back recorder state if canceled
@@ -350,6 +531,9 @@ public class N5Importer implements PlugIn {
 					cropMax[i] = Double.isInfinite(v) ? Long.MAX_VALUE : (long)Math.ceil(v);
 				}
 
+				if (currentRoi != null)
+					useRoi = gd.getNextBoolean();
+
 				thisDatasetCropInterval = new FinalInterval(cropMin, cropMax);
 			} else {
 				final String minString = Macro.getValue(options, minKey, "");
@@ -358,38 +542,91 @@ public class N5Importer implements PlugIn {
 					thisDatasetCropInterval = parseCropParameters(minString, maxString);
 				}
 				show = !options.contains(" " + hideKey);
+				try {
+					levelSelector = parseLevelSelector(options);
+				} catch (final IllegalArgumentException e) {
+					Recorder.record = initialRecorderState;
+					IJ.error("Import N5", e.getMessage());
+					return;
+				}
 			}
 
 			// set recorder back
 			Recorder.record = initialRecorderState;
 
 			final N5Reader n5ForThisDataset = new N5ViewerReaderFun().apply(n5Path);
-			final String rootPath = n5ForThisDataset.getURI().toString();
-			final String dset = new N5BasePathFun().apply(n5Path);
-
-			final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(n5ForThisDataset, N5DatasetDiscoverer.fromParsers(PARSERS),
-					Collections.singletonList(new OmeNgffMetadataParser()));
-
-			N5Metadata meta = null;
+			List<ImagePlus> opened = null;
+			boolean keepsReading = false;
 			try {
-				final N5TreeNode root = discoverer.discoverAndParseRecursive("");
-				final Optional<N5Metadata> metaOpt = root.getDescendant(dset)
-						.filter(x -> {
-							return x.getMetadata() != null;
-						}).map(N5TreeNode::getMetadata);
+				final String rootPath = n5ForThisDataset.getURI().toString();
+				final String dset = new N5BasePathFun().apply(n5Path);
+
+				final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(n5ForThisDataset, N5DatasetDiscoverer.fromParsers(PARSERS),
+						Collections.singletonList(new OmeNgffMetadataParser()));
+
+				// further datasets of the same container to combine with this one as channels
+				final String combineString = Macro.getValue(options, combineKey, "");
+				final List<String> dsets = new ArrayList<>();
+				dsets.add(dset);
+				if (!combineString.isEmpty())
+					dsets.addAll(Arrays.asList(combineString.split(",")));
+
+				final List<N5DatasetMetadata> metaList = new ArrayList<>();
+				for (final String d : dsets) {
+					N5Metadata meta = null;
+					try {
+						final N5TreeNode root = TargetedMetadataDiscovery.discoverAndParse(n5ForThisDataset, discoverer, d);
+						final Optional<N5Metadata> metaOpt = root.getDescendant(d)
+								.filter(x -> {
+									return x.getMetadata() != null;
+								}).map(N5TreeNode::getMetadata);
+
+						if (metaOpt.isPresent())
+							meta = metaOpt.get();
+
+					} catch (final Exception e) {
+						throw new N5Exception("Failure to parse or find data at " + d, e);
+					}
+
+					if (meta != null && meta instanceof N5DatasetMetadata && useRoi && currentRoi != null && metaList.isEmpty())
+						thisDatasetCropInterval = RoiCropInterval.create(currentRoi, thisDatasetCropInterval,
+								((N5DatasetMetadata)meta).getAttributes().getNumDimensions());
+
+					if (meta != null && meta instanceof N5DatasetMetadata && levelSelector != null && thisDatasetCropInterval == null)
+						meta = levelSelector.select(n5ForThisDataset, (N5DatasetMetadata)meta);
+
+					if (meta != null && meta instanceof N5DatasetMetadata)
+						metaList.add((N5DatasetMetadata)meta);
+					else
+						System.err.println("not a dataset : " + d);
+				}
 
-				if (metaOpt.isPresent())
-					meta = metaOpt.get();
+				if (!combineString.isEmpty()) {
+					// combined images are virtual and keep reading from the container
+					lastResult = processCombined(n5ForThisDataset, rootPath, exec, metaList, thisDatasetCropInterval, show,
+							N5ConcatenatedVirtualStack.Axis.CHANNEL, impMetaWriterTypes);
+					opened = lastResult;
+					keepsReading = true;
+					return;
+				}
 
-			} catch (final Exception e) {
-				throw new N5Exception("Failure to parse or find data at " + dset, e);
+				if (!metaList.isEmpty()) {
+					final Interval crop = thisDatasetCropInterval;
+					final boolean virtual = openAsVirtual;
+					lastResult = withoutRecording(() -> process(n5ForThisDataset, rootPath, exec, metaList,
+							virtual || backgroundLoad, crop, show, narrowBits, subsampling, reslice, multiResolution, impMetaWriterTypes));
+					record(lastResult, openAsVirtual, thisDatasetCropInterval);
+					startBackgroundLoading(lastResult);
+					opened = lastResult;
+					keepsReading = openAsVirtual || backgroundLoad || reslice != null;
+				}
+			} finally {
+				// virtual images keep reading from the container until they are closed
+				if (keepsReading)
+					releaseWhenClosed(n5ForThisDataset, opened);
+				else
+					N5SessionPool.getInstance().release(n5ForThisDataset);
 			}
-
-			if (meta != null && meta instanceof N5DatasetMetadata)
-				lastResult = process(n5ForThisDataset, rootPath, exec, Collections.singletonList((N5DatasetMetadata)meta), openAsVirtual, thisDatasetCropInterval,
-						show, impMetaWriterTypes);
-			else
-				System.err.println("not a dataset : " + n5Path);
 		}
 	}
 
@@ -418,6 +655,13 @@ public class N5Importer implements PlugIn {
 		this.n5 = selection.n5;
 		this.asVirtual = selectionDialog.isVirtual();
 		this.cropOption = selectionDialog.isCropSelected();
+		if (selectionDialog.isFitToBudgetSelected())
+			levelSelector = PyramidLevelSelector.fromFreeMemory();
+
+		if (selectionDialog.isCombineSelected())
+			combineAxis = N5ConcatenatedVirtualStack.Axis.CHANNEL;
+
+		backgroundLoad = selectionDialog.isBackgroundLoadSelected();
 
 		if (cropOption)
 			processWithCrops();
@@ -433,6 +677,39 @@ public class N5Importer implements PlugIn {
 	public static String generateAndStoreOptions(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval,
 			final boolean hide) {
 
+		return generateAndStoreOptions(n5RootAndDataset, virtual, cropInterval, hide, false, null, 0, null, null, false);
+	}
+
+	/**
+	 * Stores the macro options for opening a dataset in the {@link Recorder}
+	 * and returns them.
+	 *
+	 * @param n5RootAndDataset
+	 *            the dataset url
+	 * @param virtual
+	 *            whether to open virtually
+	 * @param cropInterval
+	 *            optional crop interval
+	 * @param hide
+	 *            whether to not show the image
+	 * @param background
+	 *            whether to load into memory in the background
+	 * @param levelSelector
+	 *            optional memory or screen budget for choosing a pyramid level
+	 * @param narrowBits
+	 *            the bit depth to narrow to, or 0
+	 * @param subsampling
+	 *            optional subsampling
+	 * @param reslice
+	 *            optional reslicing
+	 * @param multiResolution
+	 *            whether to draw coarser levels while zoomed out
+	 * @return the options
+	 */
+	public static String generateAndStoreOptions(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval,
+			final boolean hide, final boolean background, final PyramidLevelSelector levelSelector, final int narrowBits,
+			final Subsampling subsampling, final Reslice reslice, final boolean multiResolution) {
+
 		Recorder.resetCommandOptions();
 		Recorder.recordOption(n5PathKey, n5RootAndDataset);
 
@@ -447,9 +724,65 @@ public class N5Importer implements PlugIn {
 			Recorder.recordOption(minKey, cropParams[0]);
 			Recorder.recordOption(maxKey, cropParams[1]);
 		}
+
+		if (cropInterval instanceof RoiCropInterval)
+			Recorder.recordOption(roiKey);
+
+		if (background)
+			Recorder.recordOption(backgroundKey);
+
+		if (levelSelector != null && levelSelector.getMaxBytes() >= 0)
+			Recorder.recordOption(budgetKey, Long.toString(levelSelector.getMaxBytes() / (1024 * 1024)));
+
+		if (levelSelector != null && levelSelector.getMaxScreenSize() != null)
+			Recorder.recordOption(screenKey, Arrays.stream(levelSelector.getMaxScreenSize())
+					.mapToObj(Long::toString)
+					.collect(Collectors.joining(",")));
+
+		if (narrowBits > 0)
+			Recorder.recordOption(narrowKey, Integer.toString(narrowBits));
+
+		if (subsampling != null) {
+			Recorder.recordOption(subsampleKey, Arrays.stream(subsampling.getFactors())
+					.mapToObj(Long::toString)
+					.collect(Collectors.joining(",")));
+			if (subsampling.isAverage())
+				Recorder.recordOption(averageKey);
+		}
+
+		if (reslice != null)
+			Recorder.recordOption(resliceKey, reslice.name().toLowerCase());
+
+		if (multiResolution)
+			Recorder.recordOption(multiResolutionKey);
+
 		return Recorder.getCommandOptions();
 	}
 
+	/**
+	 * The macro options for opening a dataset with the options of this
+	 * importer.
+	 */
+	private String generateAndStoreOptions(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval,
+			final boolean hide, final boolean background) {
+
+		return generateAndStoreOptions(n5RootAndDataset, virtual, cropInterval, hide, background, levelSelector, narrowBits,
+				subsampling, reslice, multiResolution);
+	}
+
+	/**
+	 * Returns the area roi of the current image, if there is one.
+	 */
+	private static Roi currentAreaRoi() {
+
+		final ImagePlus imp = WindowManager.getCurrentImage();
+		if (imp == null)
+			return null;
+
+		final Roi roi = imp.getRoi();
+		return roi != null && roi.isArea() ? roi : null;
+	}
+
 	private static String[] minMaxStrings(final Interval interval) {
 
 		final long[] tmp = new long[interval.numDimensions()];
@@ -463,6 +796,62 @@ public class N5Importer implements PlugIn {
 		return new String[]{minString, maxString};
 	}
 
+	/**
+	 * Reads the memory budget in megabytes and the screen size as
+	 * comma-separated width and height from macro options.
+	 *
+	 * @param options
+	 *            the macro options
+	 * @return the level selector, or null if neither option is given
+	 * @throws IllegalArgumentException
+	 *             if the budget is not a positive number or the screen size
+	 *             not two positive integers
+	 */
+	private static PyramidLevelSelector parseLevelSelector(final String options) {
+
+		final String budgetString = Macro.getValue(options, budgetKey, "");
+		final String screenString = Macro.getValue(options, screenKey, "");
+		if (budgetString.isEmpty() && screenString.isEmpty())
+			return null;
+
+		long maxBytes = -1;
+		if (!budgetString.isEmpty()) {
+			double megabytes;
+			try {
+				megabytes = Double.parseDouble(budgetString);
+			} catch (final NumberFormatException e) {
+				megabytes = -1;
+			}
+			if (!(megabytes > 0) || Double.isInfinite(megabytes))
+				throw new IllegalArgumentException("budget must be a positive number of megabytes, but was: " + budgetString);
+
+			maxBytes = (long)(megabytes * 1024 * 1024);
+		}
+
+		long[] screenSize = null;
+		if (!screenString.isEmpty()) {
+			try {
+				screenSize = Arrays.stream(screenString.split(",")).map(String::trim).mapToLong(Long::parseLong).toArray();
+			} catch (final NumberFormatException e) {
+				screenSize = null;
+			}
+			if (screenSize == null || screenSize.length != 2 || screenSize[0] < 1 || screenSize[1] < 1)
+				throw new IllegalArgumentException("screen must be a width and height such as 1920,1080, but was: " + screenString);
+		}
+
+		return new PyramidLevelSelector(maxBytes, screenSize);
+	}
+
+	private List<N5DatasetMetadata> selectLevels(final N5Reader n5, final List<N5DatasetMetadata> datasetMetadataList) {
+
+		if (levelSelector == null)
+			return datasetMetadataList;
+
+		return datasetMetadataList.stream()
+				.map(x -> x == null ? null : levelSelector.select(n5, x))
+				.collect(Collectors.toList());
+	}
+
 	private static Interval parseCropParameters(final String minParam, final String maxParam) {
 
 		return new FinalInterval(
@@ -472,11 +861,70 @@ public class N5Importer implements PlugIn {
 
 	public static void record(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval) {
 
+		record(n5RootAndDataset, virtual, cropInterval, false, 0, null, null, false);
+	}
+
+	private static void record(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval,
+			final boolean hide, final int narrowBits, final Subsampling subsampling, final Reslice reslice,
+			final boolean multiResolution) {
+
 		if (!Recorder.record)
 			return;
 
 		Recorder.setCommand(COMMAND_NAME);
-		generateAndStoreOptions(n5RootAndDataset, virtual, cropInterval);
+		generateAndStoreOptions(n5RootAndDataset, virtual, cropInterval, hide, false, null, narrowBits, subsampling, reslice,
+				multiResolution);
+
+		Recorder.saveCommand();
+	}
+
+	/**
+	 * Records opening each of the given images, by the url in its file info,
+	 * with the options of this importer.
+	 */
+	private void record(final List<ImagePlus> images, final boolean virtual, final Interval cropInterval) {
+
+		if (!Recorder.record || images == null)
+			return;
+
+		for (final ImagePlus imp : images) {
+			Recorder.setCommand(COMMAND_NAME);
+			generateAndStoreOptions(imp.getOriginalFileInfo().url, virtual, cropInterval, !show, backgroundLoad);
+			Recorder.saveCommand();
+		}
+	}
+
+	/**
+	 * Runs a task with the {@link Recorder} off, for callers that record
+	 * what it does themselves.
+	 */
+	private static <T> T withoutRecording(final Supplier<T> task) {
+
+		final boolean record = Recorder.record;
+		Recorder.record = false;
+		try {
+			return task.get();
+		} finally {
+			Recorder.record = record;
+		}
+	}
+
+	/**
+	 * Records opening the given datasets of one container combined as
+	 * channels: the url of the first and the paths of the others.
+	 */
+	private static void recordCombined(final String firstUrl, final List<N5DatasetMetadata> datasetMetadataList,
+			final Interval cropInterval, final boolean show) {
+
+		if (!Recorder.record)
+			return;
+
+		Recorder.setCommand(COMMAND_NAME);
+		generateAndStoreOptions(firstUrl, true, cropInterval, !show);
+		Recorder.recordOption(combineKey, datasetMetadataList.stream()
+				.skip(1)
+				.map(N5DatasetMetadata::getPath)
+				.collect(Collectors.joining(",")));
 
 		Recorder.saveCommand();
 	}
@@ -504,18 +952,81 @@ public class N5Importer implements PlugIn {
 	 * @throws IOException
 	 *             io
 	 */
-	@SuppressWarnings({"rawtypes", "unchecked"})
 	public static <T extends NumericType<T> & NativeType<T>, M extends N5DatasetMetadata, A extends AxisMetadata & N5Metadata> ImagePlus read(
 			final N5Reader n5,
 			final ExecutorService exec,
 			final N5DatasetMetadata datasetMetaArg, final Interval cropIntervalIn, final boolean asVirtual,
 			final ImageplusMetadata<M> ipMeta) throws IOException {
 
+		return read(n5, exec, datasetMetaArg, cropIntervalIn, asVirtual, ipMeta, 0, null, null);
+	}
+
+	/**
+	 * Read a single N5 dataset into a ImagePlus, optionally subsampled and
+	 * resliced, and narrowing uint16 to uint8, or float32 and float64 to uint16 or uint8, in
+	 * the same pass.
+	 *
+	 * @param <T>
+	 *            the image data type
+	 * @param <M>
+	 *            the metadata type
+	 * @param n5
+	 *            the n5Reader
+	 * @param exec
+	 *            an ExecutorService to manage parallel reading
+	 * @param datasetMetaArg
+	 *            datasetMetadata containing the path
+	 * @param cropIntervalIn
+	 *            optional crop interval
+	 * @param asVirtual
+	 *            whether to open virtually
+	 * @param ipMeta
+	 *            metadata
+	 * @param narrowBits
+	 *            8 or 16, or 0 to keep the type
+	 * @param subsampling
+	 *            subsampling to apply after cropping, or null
+	 * @param reslice
+	 *            orthogonal reslicing to apply after subsampling, or null
+	 * @return the ImagePlus
+	 * @throws IOException
+	 *             io
+	 */
+	public static <T extends NumericType<T> & NativeType<T>, M extends N5DatasetMetadata, A extends AxisMetadata & N5Metadata> ImagePlus read(
+			final N5Reader n5,
+			final ExecutorService exec,
+			final N5DatasetMetadata datasetMetaArg, final Interval cropIntervalIn, final boolean asVirtual,
+			final ImageplusMetadata<M> ipMeta, final int narrowBits, final Subsampling subsampling, final Reslice reslice)
+			throws IOException {
+
+		return read(n5, exec, datasetMetaArg, cropIntervalIn, asVirtual, ipMeta, narrowBits, subsampling, reslice, null);
+	}
+
+	/**
+	 * Reads a dataset like {@link #read(N5Reader, ExecutorService, N5DatasetMetadata, Interval, boolean, ImageplusMetadata, int, Subsampling, Reslice)},
+	 * narrowing with the given intensity window, so that the levels of a
+	 * pyramid are mapped alike. Narrowed images keep their window in the
+	 * {@link #NARROW_WINDOW_PROPERTY} property.
+	 *
+	 * @param narrowWindow
+	 *            the window, or null to take it from the metadata or the data
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static <T extends NumericType<T> & NativeType<T>, M extends N5DatasetMetadata> ImagePlus read(
+			final N5Reader n5,
+			final ExecutorService exec,
+			final N5DatasetMetadata datasetMetaArg, final Interval cropIntervalIn, final boolean asVirtual,
+			final ImageplusMetadata<M> ipMeta, final int narrowBits, final Subsampling subsampling, final Reslice reslice,
+			final double[] narrowWindow) throws IOException {
+
 		final String d = datasetMetaArg.getPath();
-		final CachedCellImg imgRaw = N5Utils.open(n5, d);
+		final boolean fOrder = OmeNgffMultiScaleMetadata.fOrder(datasetMetaArg.getAttributes());
+		final CachedCellImg imgRaw = reslice == null
+				? openCached(n5, d, datasetMetaArg.getAttributes().getDataType(), SharedBlockCellLoader.DEFAULT_MAX_NUM_CELLS)
+				: openCached(n5, d, datasetMetaArg.getAttributes().getDataType(), resliceCacheSize(datasetMetaArg, reslice, fOrder));
 
 		RandomAccessibleInterval imgNorm;
-		if (OmeNgffMultiScaleMetadata.fOrder(datasetMetaArg.getAttributes())) {
+		if (fOrder) {
 			imgNorm = AxisUtils.reverseDimensions(imgRaw);
 			ArrayUtils.reverse(datasetMetaArg.getAttributes().getDimensions());
 		}
@@ -527,29 +1038,48 @@ public class N5Importer implements PlugIn {
 		Interval cropInterval = null;
 		if (cropIntervalIn != null) {
 			cropInterval = processCropInterval(imgNorm, cropIntervalIn);
-			imgC = Views.interval(imgNorm, cropInterval);
+			if (cropInterval instanceof RoiCropInterval) {
+				// read the blocks that intersect the roi up front and in
+				// parallel, the rest of the bounding box is never read
+				final RoiCropInterval roiCrop = (RoiCropInterval)cropInterval;
+				if (!asVirtual)
+					roiCrop.prefetch(imgRaw, fOrder, exec);
+
+				imgC = roiCrop.mask(Views.interval(imgNorm, cropInterval));
+			} else
+				imgC = Views.interval(imgNorm, cropInterval);
 		} else
 			imgC = imgNorm;
 
 		final RandomAccessibleInterval img;
 		final M datasetMeta;
+		final int[] p;
 		if (datasetMetaArg != null && datasetMetaArg instanceof AxisMetadata) {
 
 			// this permutation will be applied to the image whose dimensions
 			// are padded to 5d with a canonical axis order
-			final int[] p = AxisUtils.findImagePlusPermutation((AxisMetadata)datasetMetaArg);
+			p = AxisUtils.findImagePlusPermutation((AxisMetadata)datasetMetaArg);
 
 			final Pair<RandomAccessibleInterval<T>, M> res = AxisUtils.permuteImageAndMetadataForImagePlus(p, imgC, datasetMetaArg);
 			img = res.getA();
 			datasetMeta = res.getB();
 		} else {
+			p = null;
 			img = imgC;
 			datasetMeta = (M)datasetMetaArg;
 		}
 
+		// subsample before any conversion that scans the whole image, so that
+		// only blocks containing sampled voxels are read
+		final RandomAccessibleInterval imgSub = subsampling == null ? img : subsampling.apply(img);
+		final RandomAccessibleInterval imgS = reslice == null ? imgSub : reslice.apply(imgSub);
+
 		RandomAccessibleInterval<T> convImg;
 		final DataType type = datasetMeta.getAttributes().getDataType();
 
+		// the sorted values of an integer image mapped to uint16, or null
+		long[] lut = null;
+
 		final boolean isRGB = (datasetMeta instanceof N5ImagePlusMetadata) && ((N5ImagePlusMetadata)datasetMeta).getType() == ImagePlus.COLOR_RGB;
 
 		// convert label multisets to ulong, then converts to ushort with LUT
@@ -558,33 +1088,71 @@ public class N5Importer implements PlugIn {
 			// why is this cast necessary?
 			convImg = (RandomAccessibleInterval<T>)convertToUShortLUT(
 					Converters.convert2(
-							img,
+							imgS,
 							new LabelMultisetLongConverter(),
 							UnsignedLongType::new));
 		} else {
 
 			// Compute LUT after crop
 			if (type == DataType.FLOAT64) {
-				convImg = convertDouble(img);
+				convImg = convertDouble(imgS);
 			} else if (isRGB && type == DataType.UINT32) {
-				convImg = convertToRGB(img);
+				convImg = convertToRGB(imgS);
 			} else if ( type == DataType.INT32 || type == DataType.UINT32 ||
 					    type == DataType.INT64 || type == DataType.UINT64) {
-				convImg = convertToUShortLUT(img);
+				final UnsignedShortLUTConverter lutConverter = new UnsignedShortLUTConverter(Views.flatIterable(imgS));
+				convImg = Converters.convert(imgS, lutConverter, new UnsignedShortType());
+
+				// uint64 values do not sort as longs
+				if (type != DataType.UINT64)
+					lut = lutConverter.values();
 			} else {
 				// this covers int8 -> uint8 and int16 -> uint16
-				convImg = img;
+				convImg = imgS;
 			}
 		}
 
+		final boolean narrowed = narrowBits > 0 && canNarrow(Util.getTypeFromInterval(convImg), narrowBits);
+		final double[] window = !narrowed ? null
+				: narrowWindow != null ? narrowWindow : intensityWindow(datasetMeta, (RandomAccessibleInterval)convImg);
+		if (narrowed)
+			convImg = narrow((RandomAccessibleInterval)convImg, narrowBits, window);
+
+		// resliced images are always virtual, each plane reads one layer of blocks
 		ImagePlus imp;
-		if (asVirtual) {
-			imp = ImageJFunctions.wrap(convImg, d, exec);
+		if (asVirtual || reslice != null) {
+			if (N5VirtualStack.isSupported(Util.getTypeFromInterval(convImg)))
+				imp = N5VirtualStack.wrap(convImg, d);
+			else
+				imp = ImageJFunctions.wrap(convImg, d, exec);
 		} else {
 			final ImagePlusImg<T, ?> ipImg = new ImagePlusImgFactory<>(Util.getTypeFromInterval(convImg)).create(convImg);
-			LoopBuilder.setImages(convImg, ipImg)
-					.multiThreaded(new DefaultTaskExecutor(exec))
-					.forEachPixel((x, y) -> y.set(x));
+
+			// without conversion, or for conversions that are elementwise on the
+			// backing arrays (float64 -> float32, uint32 -> ARGB, integers to
+			// uint16 through the look-up table), transpose and convert whole
+			// cells rather than walking the view per pixel
+			final Interval crop = cropInterval;
+			final boolean bulkConvertible = !narrowed && subsampling == null && reslice == null
+					&& !(cropInterval instanceof RoiCropInterval)
+					&& (convImg == img || type == DataType.FLOAT64 || (isRGB && type == DataType.UINT32) || lut != null);
+			final TransposingBlockCopy blockCopy = bulkConvertible
+					? new TransposingBlockCopy(imgRaw, x -> {
+						RandomAccessibleInterval v = fOrder ? AxisUtils.reverseDimensions(x) : x;
+						if (crop != null)
+							v = Views.interval(v, crop);
+						if (p != null)
+							v = AxisUtils.permuteImageAndMetadataForImagePlus(p, v, datasetMetaArg).getA();
+						return v;
+					}, ipImg, lut)
+					: null;
+
+			if (blockCopy != null && blockCopy.isSupported())
+				blockCopy.copy(exec);
+			else
+				LoopBuilder.setImages(convImg, ipImg)
+						.multiThreaded(new DefaultTaskExecutor(exec))
+						.forEachPixel((x, y) -> y.set(x));
 
 			imp = ipImg.getImagePlus();
 		}
@@ -597,6 +1165,12 @@ public class N5Importer implements PlugIn {
 			}
 		}
 
+		// the intensity window was mapped to the full range of the narrower type
+		if (narrowed) {
+			imp.setDisplayRange(0, (1 << narrowBits) - 1);
+			imp.setProperty(NARROW_WINDOW_PROPERTY, window);
+		}
+
 		if (cropInterval != null) {
 			imp.getCalibration().xOrigin -= cropInterval.min(0);
 			imp.getCalibration().yOrigin -= cropInterval.min(1);
@@ -605,9 +1179,77 @@ public class N5Importer implements PlugIn {
 				imp.getCalibration().zOrigin -= cropInterval.min(2);
 		}
 
+		if (subsampling != null)
+			subsampling.calibrate(imp, imgS.numDimensions());
+
+		if (reslice != null)
+			reslice.calibrate(imp, imgS);
+
 		return imp;
 	}
 
+	/**
+	 * Opens a dataset through the {@link SharedBlockCache} if it is enabled
+	 * and the data type is supported, otherwise with a per-image cache.
+	 *
+	 * @param n5
+	 *            the n5Reader
+	 * @param dataset
+	 *            the dataset path
+	 * @param type
+	 *            the data type
+	 * @return the image
+	 */
+	@SuppressWarnings("rawtypes")
+	private static CachedCellImg openCached(final N5Reader n5, final String dataset, final DataType type, final int maxNumCells) {
+
+		if (SharedBlockCache.getInstance().isEnabled() &&
+				SharedBlockCellLoader.isSupported(type) &&
+				!N5LabelMultisets.isLabelMultisetType(n5, dataset))
+			return SharedBlockCellLoader.open(n5, dataset, SharedBlockCache.getInstance(), maxNumCells);
+		else
+			return N5Utils.open(n5, dataset);
+	}
+
+	/**
+	 * The number of cells to keep for a resliced image: two layers of blocks
+	 * perpendicular to the axis the planes are stacked along, so that a plane
+	 * and its neighbor, which cross the same layer, do not read it twice.
+	 */
+	private static int resliceCacheSize(final N5DatasetMetadata meta, final Reslice reslice, final boolean fOrder) {
+
+		final long[] dims = meta.getAttributes().getDimensions();
+		final int[] blockSize = meta.getAttributes().getBlockSize();
+		final int stackAxis = resliceStackAxis(meta, reslice, fOrder);
+		long layer = 1;
+		for (int d = 0; d < dims.length; d++)
+			if (d != stackAxis)
+				layer *= (dims[d] + blockSize[d] - 1) / blockSize[d];
+
+		return (int)Math.min(Integer.MAX_VALUE, Math.max(SharedBlockCellLoader.DEFAULT_MAX_NUM_CELLS, 2 * layer));
+	}
+
+	/**
+	 * The storage axis along which the planes of a resliced image are
+	 * stacked, found by its axis label if the metadata has axes, and
+	 * otherwise in ImageJ order, reversed for F-order arrays.
+	 */
+	private static int resliceStackAxis(final N5DatasetMetadata meta, final Reslice reslice, final boolean fOrder) {
+
+		final int n = meta.getAttributes().getNumDimensions();
+		int axis = reslice.stackAxis();
+		if (meta instanceof AxisMetadata) {
+			final String label = axis == 0 ? "x" : "y";
+			final String[] labels = ((AxisMetadata)meta).getAxisLabels();
+			for (int i = 0; i < labels.length; i++)
+				if (label.equalsIgnoreCase(labels[i])) {
+					axis = i;
+					break;
+				}
+		}
+		return fOrder ? n - 1 - axis : axis;
+	}
+
 	private static boolean zarrFOrderAndEmptyMetadata(final N5Reader n5, N5Metadata meta) {
 
 		if (n5 instanceof ZarrKeyValueReader && meta instanceof N5DefaultSingleScaleMetadata) {
@@ -627,6 +1269,66 @@ public class N5Importer implements PlugIn {
 				new FloatType());
 	}
 
+	private static boolean canNarrow(final Object type, final int narrowBits) {
+
+		if (narrowBits == 8)
+			return type instanceof UnsignedShortType || type instanceof FloatType;
+		else if (narrowBits == 16)
+			return type instanceof FloatType;
+		else
+			return false;
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static RandomAccessibleInterval narrow(final RandomAccessibleInterval<? extends RealType<?>> img,
+			final int narrowBits, final double[] window) {
+
+		final RealWindowConverter converter = new RealWindowConverter(window[0], window[1], (1 << narrowBits) - 1);
+		if (narrowBits == 8)
+			return Converters.convert((RandomAccessibleInterval)img, converter, new UnsignedByteType());
+		else
+			return Converters.convert((RandomAccessibleInterval)img, converter, new UnsignedShortType());
+	}
+
+	/**
+	 * Returns the intensity range stored in the metadata, if any, or else the
+	 * 0.1 and 99.9 percentiles of a subsample of the middle plane. Sampling a
+	 * single plane only reads the blocks that intersect it.
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static double[] intensityWindow(final N5DatasetMetadata meta, final RandomAccessibleInterval<? extends RealType<?>> img) {
+
+		if (meta instanceof CanonicalDatasetMetadata) {
+			final CanonicalDatasetMetadata canonical = (CanonicalDatasetMetadata)meta;
+			if (canonical.maxIntensity() > canonical.minIntensity())
+				return new double[]{canonical.minIntensity(), canonical.maxIntensity()};
+		}
+
+		RandomAccessibleInterval<? extends RealType<?>> plane = img;
+		for (int d = img.numDimensions() - 1; d >= 2; d--)
+			plane = Views.hyperSlice(plane, d, (img.min(d) + img.max(d)) / 2);
+
+		final long step = Math.max(1, Math.max(plane.dimension(0), plane.dimension(1)) / 512);
+		final IterableInterval<? extends RealType<?>> sample = Views.flatIterable(Views.subsample((RandomAccessibleInterval)plane, step));
+		final double[] all = new double[(int)sample.size()];
+		int n = 0;
+		for (final RealType<?> x : sample) {
+			final double v = x.getRealDouble();
+			if (!Double.isNaN(v))
+				all[n++] = v;
+		}
+
+		if (n == 0)
+			return new double[]{0, 1};
+
+		final double[] values = Arrays.copyOf(all, n);
+		Arrays.sort(values);
+
+		final double min = values[(int)(0.001 * (values.length - 1))];
+		final double max = values[(int)(0.999 * (values.length - 1))];
+		return new double[]{min, max > min ? max : min + 1};
+	}
+
 	public static RandomAccessibleInterval<ARGBType> convertToRGB(final RandomAccessibleInterval<UnsignedIntType> img) {
 
 		return Converters.convert(
@@ -649,6 +1351,9 @@ public class N5Importer implements PlugIn {
 
 		assert img.numDimensions() == cropInterval.numDimensions();
 
+		if (cropInterval instanceof RoiCropInterval)
+			return ((RoiCropInterval)cropInterval).intersect(img);
+
 		final int nd = img.numDimensions();
 		final long[] min = new long[nd];
 		final long[] max = new long[nd];
@@ -683,7 +1388,7 @@ public class N5Importer implements PlugIn {
 					.map(x -> x - 1)
 					.toArray();
 
-			this.run("cropDialog " + generateAndStoreOptions(pathToN5Dataset, asVirtual, null, !show));
+			this.run("cropDialog " + generateAndStoreOptions(pathToN5Dataset, asVirtual, null, !show, backgroundLoad));
 		}
 	}
 
@@ -755,12 +1460,16 @@ public class N5Importer implements PlugIn {
 		} catch (final URISyntaxException e) {}
 
 		final Optional<N5DatasetMetadata> meta = metaStream.findFirst();
+		final ImagePlus imp;
 		if (meta.isPresent()) {
-			return open(n5, uri, meta.get(), show);
+			imp = open(n5, uri, meta.get(), show);
 		} else {
 			System.err.println("No arrays matching criteria found in container at: " + uri);
-			return null;
+			imp = null;
 		}
+
+		N5SessionPool.getInstance().release(n5);
+		return imp;
 	}
 
 	public static ImagePlus open(final N5Reader n5, final String uri, final N5DatasetMetadata metadata) {
@@ -840,58 +1549,172 @@ public class N5Importer implements PlugIn {
 			final boolean show,
 			final Map<Class<?>, ImageplusMetadata<?>> impMetaWriterTypes) {
 
+		return process(n5, rootPathArg, exec, datasetMetadataList, asVirtual, cropInterval, show, 0, null, null, false, impMetaWriterTypes);
+	}
+
+	/*
+	 * Read one or more N5 dataset into ImagePlus object(s), narrowing their
+	 * type to the given bit depth, subsampling and reslicing them if
+	 * requested, and show them, if requested. Virtual images of a multiscale
+	 * pyramid draw their coarser levels while zoomed out, if requested.
+	 */
+	public static List<ImagePlus> process(final N5Reader n5,
+			final String rootPathArg,
+			final ExecutorService exec,
+			final List<N5DatasetMetadata> datasetMetadataList,
+			final boolean asVirtual,
+			final Interval cropInterval,
+			final boolean show,
+			final int narrowBits,
+			final Subsampling subsampling,
+			final Reslice reslice,
+			final boolean multiResolution,
+			final Map<Class<?>, ImageplusMetadata<?>> impMetaWriterTypes) {
+
 		// determine if the root path contains a query
 		final String rootPath = rootPathArg;
-		final ArrayList<ImagePlus> imgList = new ArrayList<>();
-		for (final N5DatasetMetadata datasetMeta : datasetMetadataList) {
-			// is this check necessary?
-			if (datasetMeta == null)
-				continue;
 
-			final String d = normalPathName(datasetMeta.getPath(), n5.getGroupSeparator());
-			try {
+		// datasets are read concurrently, at most as many at once as there are ImageJ threads.
+		// Reading blocks within each dataset uses the given executor.
+		final List<N5DatasetMetadata> toRead = datasetMetadataList.stream()
+				.filter(x -> x != null)
+				.collect(Collectors.toList());
 
-				final StorageFormat fmt = N5Factory.StorageFormat.guessStorageFromUri(URI.create(rootPathArg));
-				final String fmtPrefix = fmt == null ? "" : fmt.toString().toLowerCase() + "://";
+		final int numConcurrent = Math.max(1, Math.min(toRead.size(), Prefs.getThreads()));
+		final ExecutorService datasetExec = numConcurrent > 1 ? Executors.newFixedThreadPool(numConcurrent, r -> {
+			final Thread t = new Thread(r, "n5-import-datasets");
+			t.setDaemon(true);
+			return t;
+		}) : null;
 
-				final String n5Url = fmtPrefix + N5URI.from(n5.getURI().toString(), d, null).toString();
+		final ArrayList<ImagePlus> imgList = new ArrayList<>();
+		final List<String> errors = new ArrayList<>();
+		try {
+			final List<Future<ImagePlus>> futures = new ArrayList<>();
+			for (final N5DatasetMetadata datasetMeta : toRead) {
 				final ImageplusMetadata<?> impMeta = impMetaWriterTypes.get(datasetMeta.getClass());
-
-				// datasetMeta must have absolute path
-				ImagePlus imp;
-				imp = N5Importer.read(n5, exec, datasetMeta, cropInterval, asVirtual, impMeta);
-
-				FileInfo fileInfo = imp.getOriginalFileInfo();
-				if (fileInfo == null)
-					fileInfo = new FileInfo();
-
-				fileInfo.url = n5Url;
-				imp.setFileInfo(fileInfo);
-
-				record(n5Url, asVirtual, cropInterval);
-				imgList.add(imp);
-				if (show) {
-					// set the display min and max with a heuristic:
-					// set the min of the range to the min value and the max range to the 98th
-					// percentile
-					final ImageStatistics stats = ImageStatistics.getStatistics(imp.getProcessor());
-					final double[] hist = stats.histogram();
-					toCumulativeHistogram(hist);
-					final double min = stats.histMin;
-					final double max = min + (stats.binSize * nthPercentile(hist, 0.98));
-					imp.setDisplayRange(min, max);
-					imp.show();
+				final Callable<ImagePlus> reader = () -> {
+					// datasetMeta must have absolute path
+					final ImagePlus imp = N5Importer.read(n5, exec, datasetMeta, cropInterval, asVirtual, impMeta, narrowBits, subsampling, reslice);
+					if (show)
+						setDisplayRangeFromHistogram(imp);
+
+					if (imp.getStack() instanceof N5VirtualStack && cropInterval == null) {
+						// previews and coarser levels are narrowed with the window of this image
+						final double[] window = (double[])imp.getProperty(NARROW_WINDOW_PROPERTY);
+						final N5VirtualStack<?> stack = (N5VirtualStack<?>)imp.getStack();
+						stack.setPreviewLoader(() -> openPreview(n5, exec, datasetMeta, narrowBits, window));
+						if (multiResolution && subsampling == null && reslice == null)
+							stack.setLevelsLoader(() -> openCoarserLevels(n5, exec, datasetMeta, narrowBits, window));
+					}
+
+					return imp;
+				};
+
+				if (datasetExec != null)
+					futures.add(datasetExec.submit(reader));
+				else {
+					final FutureTask<ImagePlus> task = new FutureTask<>(reader);
+					task.run();
+					futures.add(task);
 				}
+			}
+
+			// record, show, and report errors in the order of the selection
+			for (int i = 0; i < toRead.size(); i++) {
+
+				final String d = normalPathName(toRead.get(i).getPath(), n5.getGroupSeparator());
+				try {
 
-			} catch (final IOException e) {
-				IJ.error("failed to read n5");
-			} catch (final URISyntaxException e1) {
-				IJ.error("unable to parse url: " + rootPath + "?" + d );
+					final StorageFormat fmt = N5Factory.StorageFormat.guessStorageFromUri(URI.create(rootPathArg));
+					final String fmtPrefix = fmt == null ? "" : fmt.toString().toLowerCase() + "://";
+
+					final String n5Url = fmtPrefix + N5URI.from(n5.getURI().toString(), d, null).toString();
+					final ImagePlus imp = futures.get(i).get();
+
+					FileInfo fileInfo = imp.getOriginalFileInfo();
+					if (fileInfo == null)
+						fileInfo = new FileInfo();
+
+					fileInfo.url = n5Url;
+					imp.setFileInfo(fileInfo);
+
+					record(n5Url, asVirtual, cropInterval, !show, narrowBits, subsampling, reslice, multiResolution);
+					imgList.add(imp);
+					if (show)
+						imp.show();
+
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause() == null ? e : e.getCause();
+					errors.add(d + ": failed to read n5 (" + cause.getMessage() + ")");
+				} catch (final InterruptedException e) {
+					errors.add(d + ": interrupted");
+				} catch (final URISyntaxException e1) {
+					errors.add(d + ": unable to parse url: " + rootPath + "?" + d);
+				}
 			}
+		} finally {
+			if (datasetExec != null)
+				datasetExec.shutdown();
 		}
+
+		if (!errors.isEmpty())
+			IJ.error(String.join("\n", errors));
+
 		return imgList;
 	}
 
+	/**
+	 * Opens a coarse level of the multiscale pyramid that contains the given
+	 * dataset, to show while the planes of a virtual image are read.
+	 *
+	 * @return the preview, or null if the dataset is not part of a pyramid
+	 */
+	private static ImagePlus openPreview(final N5Reader n5, final ExecutorService exec, final N5DatasetMetadata datasetMeta,
+			final int narrowBits, final double[] narrowWindow) throws IOException {
+
+		final N5DatasetMetadata previewMeta = new PyramidLevelSelector(-1, PREVIEW_SIZE).select(n5, datasetMeta);
+		if (previewMeta == datasetMeta || previewMeta.getPath().equals(datasetMeta.getPath()))
+			return null;
+
+		return read(n5, exec, previewMeta, null, true, null, narrowBits, null, null, narrowWindow);
+	}
+
+	/**
+	 * Opens the levels of the multiscale pyramid that contains the given
+	 * dataset which are coarser than it, virtually.
+	 *
+	 * @return the coarser levels, empty if the dataset is not part of a pyramid
+	 */
+	private static List<ImagePlus> openCoarserLevels(final N5Reader n5, final ExecutorService exec,
+			final N5DatasetMetadata datasetMeta, final int narrowBits, final double[] narrowWindow) throws IOException {
+
+		final long n = PyramidLevelSelector.importedBytes(datasetMeta.getAttributes());
+		final List<ImagePlus> levels = new ArrayList<>();
+		for (final N5DatasetMetadata level : PyramidLevelSelector.levels(n5, datasetMeta))
+			if (PyramidLevelSelector.importedBytes(level.getAttributes()) < n)
+				levels.add(read(n5, exec, level, null, true, null, narrowBits, null, null, narrowWindow));
+
+		return levels;
+	}
+
+	/**
+	 * Set the display min and max with a heuristic: set the min of the range
+	 * to the min value and the max range to the 98th percentile.
+	 *
+	 * @param imp
+	 *            the image
+	 */
+	private static void setDisplayRangeFromHistogram(final ImagePlus imp) {
+
+		final ImageStatistics stats = ImageStatistics.getStatistics(imp.getProcessor());
+		final double[] hist = stats.histogram();
+		toCumulativeHistogram(hist);
+		final double min = stats.histMin;
+		final double max = min + (stats.binSize * nthPercentile(hist, 0.98));
+		imp.setDisplayRange(min, max);
+	}
+
 	/**
 	 * Turns a histogram into a cumulative histogram, in place and returns the total sum.
 	 * <p>
@@ -944,7 +1767,128 @@ public class N5Importer implements PlugIn {
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	public void process() {
 
-		process(n5, selectionDialog.getN5RootPath(), exec, (List)selection.metadata, asVirtual, cropInterval, impMetaWriterTypes);
+		final List<N5DatasetMetadata> metadataList = cropInterval == null ? selectLevels(n5, (List)selection.metadata) : (List)selection.metadata;
+		if (combineAxis != null && metadataList.size() > 1)
+			lastResult = processCombined(n5, selectionDialog.getN5RootPath(), exec, metadataList, cropInterval, show, combineAxis,
+					impMetaWriterTypes);
+		else {
+			lastResult = withoutRecording(() -> process(n5, selectionDialog.getN5RootPath(), exec, metadataList,
+					asVirtual || backgroundLoad, cropInterval, true, narrowBits, subsampling, reslice, multiResolution, impMetaWriterTypes));
+			record(lastResult, asVirtual, cropInterval);
+			startBackgroundLoading(lastResult);
+		}
+	}
+
+	/**
+	 * Releases a reader to the {@link N5SessionPool} once all given images
+	 * are closed, or at once if there are none.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param images
+	 *            the images that read from it, may be null
+	 */
+	static void releaseWhenClosed(final N5Reader n5, final List<ImagePlus> images) {
+
+		final Set<ImagePlus> open = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (images != null)
+			images.stream().filter(x -> x != null).forEach(open::add);
+
+		if (open.isEmpty()) {
+			N5SessionPool.getInstance().release(n5);
+			return;
+		}
+
+		ImagePlus.addImageListener(new ImageListener() {
+
+			@Override
+			public void imageOpened(final ImagePlus imp) {}
+
+			@Override
+			public void imageUpdated(final ImagePlus imp) {}
+
+			@Override
+			public void imageClosed(final ImagePlus imp) {
+
+				synchronized (open) {
+					if (!open.remove(imp) || !open.isEmpty())
+						return;
+				}
+				ImagePlus.removeImageListener(this);
+				N5SessionPool.getInstance().release(n5);
+			}
+		});
+	}
+
+	/**
+	 * Starts loading the shown images into memory if background loading is
+	 * enabled. Images that do not fit into free memory stay virtual.
+	 */
+	private void startBackgroundLoading(final List<ImagePlus> images) {
+
+		if (!backgroundLoad || images == null)
+			return;
+
+		for (final ImagePlus imp : images)
+			N5BackgroundLoader.start(imp);
+	}
+
+	/**
+	 * Opens several datasets virtually and combines them into one hyperstack
+	 * along the given axis without copying. If the datasets differ in size or
+	 * type, they are opened as separate images instead.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param rootPath
+	 *            the root path
+	 * @param exec
+	 *            an ExecutorService to manage parallel reading
+	 * @param datasetMetadataList
+	 *            the datasets, in the order they are combined
+	 * @param cropInterval
+	 *            optional crop interval
+	 * @param show
+	 *            whether to show the result
+	 * @param axis
+	 *            the axis along which datasets are combined
+	 * @param impMetaWriterTypes
+	 *            metadata converters
+	 * @return a list containing the combined image, or the separate images
+	 */
+	public static List<ImagePlus> processCombined(final N5Reader n5,
+			final String rootPath,
+			final ExecutorService exec,
+			final List<N5DatasetMetadata> datasetMetadataList,
+			final Interval cropInterval,
+			final boolean show,
+			final N5ConcatenatedVirtualStack.Axis axis,
+			final Map<Class<?>, ImageplusMetadata<?>> impMetaWriterTypes) {
+
+		// the sources are recorded together as one combined image below
+		final List<ImagePlus> imps = withoutRecording(
+				() -> process(n5, rootPath, exec, datasetMetadataList, true, cropInterval, false, impMetaWriterTypes));
+
+		if (show)
+			imps.forEach(N5Importer::setDisplayRangeFromHistogram);
+
+		if (imps.size() < 2 || !N5ConcatenatedVirtualStack.areCompatible(imps)) {
+			if (imps.size() > 1)
+				IJ.log("Datasets differ in size or type and can not be combined, opening them separately.");
+
+			imps.forEach(imp -> record(imp.getOriginalFileInfo().url, true, cropInterval));
+			if (show)
+				imps.forEach(ImagePlus::show);
+
+			return imps;
+		}
+
+		final ImagePlus combined = N5ConcatenatedVirtualStack.concatenate(imps.get(0).getTitle(), imps, axis);
+		recordCombined(imps.get(0).getOriginalFileInfo().url, datasetMetadataList, cropInterval, show);
+		if (show)
+			combined.show();
+
+		return Collections.singletonList(combined);
 	}
 
 	public List<ImagePlus> process(final String n5FullPath, final boolean asVirtual) {
@@ -969,8 +1913,8 @@ public class N5Importer implements PlugIn {
 					Collections.singletonList(new OmeNgffMetadataParser()));
 			if( parseAllMetadata )
 			{
-				root = discoverer.discoverAndParseRecursive("");
-				metadata = (N5DatasetMetadata)root.getDescendant(dataset).get().getMetadata();
+				root = TargetedMetadataDiscovery.discoverAndParse(n5, discoverer, dataset);
+				metadata = (N5DatasetMetadata)root.getDescendant(dataset).map(N5TreeNode::getMetadata).orElse(null);
 			}
 			else {
 				metadata = (N5DatasetMetadata)discoverer.parse(dataset).getMetadata();
@@ -980,10 +1924,22 @@ public class N5Importer implements PlugIn {
 			return null;
 		}
 
-		final List<ImagePlus> result = process(n5, dataset, exec, Collections.singletonList(metadata),
+		if (metadata == null) {
+			System.err.println("Not a dataset: " + dataset);
+			return null;
+		}
+
+		final List<N5DatasetMetadata> metadataList = cropInterval == null ? selectLevels(n5, Collections.singletonList(metadata))
+				: Collections.singletonList(metadata);
+
+		final List<ImagePlus> result = process(n5, dataset, exec, metadataList,
 				asVirtual, cropInterval, show, getImagePlusMetadataWriterMap());
 
-		n5.close();
+		// virtual images keep reading from the container until they are closed
+		if (asVirtual)
+			releaseWhenClosed(n5, result);
+		else
+			N5SessionPool.getInstance().release(n5);
 
 		return result;
 	}
@@ -995,10 +1951,13 @@ public class N5Importer implements PlugIn {
 		if (metadataList == null || metadataList.size() < 1)
 			return null;
 
-		final List<ImagePlus> result = process(n5, dataset, exec, metadataList,
+		final List<ImagePlus> result = process(n5, dataset, exec, cropInterval == null ? selectLevels(n5, metadataList) : metadataList,
 				asVirtual, cropInterval, show, getImagePlusMetadataWriterMap());
 
-		n5.close();
+		if (asVirtual)
+			releaseWhenClosed(n5, result);
+		else
+			N5SessionPool.getInstance().release(n5);
 		return result;
 	}
 
@@ -1015,10 +1974,42 @@ public class N5Importer implements PlugIn {
 		loaderThread.run();
 	}
 
+	/**
+	 * Opens the container of a dataset uri. Pooled readers are acquired from
+	 * the {@link N5SessionPool} and have to be released to it rather than
+	 * closed.
+	 */
 	public static class N5ViewerReaderFun implements Function<String, N5Reader> {
 
 		public String message;
 
+		private final boolean pooled;
+
+		private final boolean showErrors;
+
+		/**
+		 * @param pooled
+		 *            whether to use readers from the {@link N5SessionPool}
+		 * @param showErrors
+		 *            whether to show errors to the user, otherwise they are
+		 *            thrown
+		 */
+		public N5ViewerReaderFun(final boolean pooled, final boolean showErrors) {
+
+			this.pooled = pooled;
+			this.showErrors = showErrors;
+		}
+
+		public N5ViewerReaderFun(final boolean pooled) {
+
+			this(pooled, true);
+		}
+
+		public N5ViewerReaderFun() {
+
+			this(true);
+		}
+
 		@Override
 		public N5Reader apply(final String n5UriOrPath) {
 
@@ -1043,10 +2034,14 @@ public class N5Importer implements PlugIn {
 			if (rootPath == null)
 				rootPath = upToLastExtension(n5UriOrPath);
 
-			final N5Factory factory = new N5Factory().cacheAttributes(true);
 			try {
-				n5 = factory.openReader(rootPath);
+				n5 = pooled
+						? N5SessionPool.getInstance().acquireReader(rootPath)
+						: new N5Factory().cacheAttributes(true).openReader(rootPath);
 			} catch (final N5Exception e) {
+				if (!showErrors)
+					throw e;
+
 				IJ.handleException(e);
 				return null;
 			}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ij.Prefs;
+
+/**
+ * A shared executor for reading image data in which tasks for what the user
+ * is looking at run before prefetching and background loading.
+ * <p>
+ * Tasks run in order of priority. Among tasks of equal priority, the most
+ * recently submitted runs first, so that when the user scrolls quickly, the
+ * slice that is currently shown is read before the ones that were skipped.
+ */
+public class N5IoQueue {
+
+	public static final int VISIBLE = 0;
+
+	public static final int PREFETCH = 1;
+
+	public static final int BACKGROUND = 2;
+
+	private static N5IoQueue instance;
+
+	private final ThreadPoolExecutor exec;
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	public N5IoQueue(final int numThreads) {
+
+		exec = new ThreadPoolExecutor(numThreads, numThreads, 30, TimeUnit.SECONDS, new PriorityBlockingQueue<>(), r -> {
+			final Thread t = new Thread(r, "n5-io-queue");
+			t.setDaemon(true);
+			return t;
+		});
+		exec.allowCoreThreadTimeOut(true);
+	}
+
+	public static synchronized N5IoQueue getInstance() {
+
+		if (instance == null)
+			instance = new N5IoQueue(Prefs.getThreads());
+
+		return instance;
+	}
+
+	public <V> Future<V> submit(final Callable<V> task, final int priority) {
+
+		final Task<V> t = new Task<>(task, priority, sequence.incrementAndGet());
+		exec.execute(t);
+		return t;
+	}
+
+	public Future<Void> submit(final Runnable task, final int priority) {
+
+		return submit(() -> {
+			task.run();
+			return null;
+		}, priority);
+	}
+
+	private static class Task<V> extends FutureTask<V> implements Comparable<Task<?>> {
+
+		private final int priority;
+
+		private final long sequence;
+
+		public Task(final Callable<V> callable, final int priority, final long sequence) {
+
+			super(callable);
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(final Task<?> other) {
+
+			if (priority != other.priority)
+				return Integer.compare(priority, other.priority);
+
+			return Long.compare(other.sequence, sequence);
+		}
+	}
+
+}
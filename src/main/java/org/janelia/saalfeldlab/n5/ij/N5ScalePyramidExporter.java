@@ -68,6 +68,8 @@ import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.RawCompression;
 import org.janelia.saalfeldlab.n5.XzCompression;
 import org.janelia.saalfeldlab.n5.blosc.BloscCompression;
+import org.janelia.saalfeldlab.n5.cache.N5SessionPool;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.n5.metadata.imagej.CosemToImagePlus;
 import org.janelia.saalfeldlab.n5.metadata.imagej.ImagePlusLegacyMetadataParser;
@@ -78,7 +80,6 @@ import org.janelia.saalfeldlab.n5.metadata.imagej.N5ImagePlusMetadata;
 import org.janelia.saalfeldlab.n5.metadata.imagej.N5ViewerToImagePlus;
 import org.janelia.saalfeldlab.n5.metadata.imagej.NgffToImagePlus;
 import org.janelia.saalfeldlab.n5.ui.N5MetadataSpecDialog;
-import org.janelia.saalfeldlab.n5.universe.N5Factory;
 import org.janelia.saalfeldlab.n5.universe.N5Factory.StorageFormat;
 import org.janelia.saalfeldlab.n5.universe.metadata.AbstractN5DatasetMetadata;
 import org.janelia.saalfeldlab.n5.universe.metadata.MetadataUtils;
@@ -492,10 +493,12 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 		boolean doGroupExistsWarning = true;
 		if( N5URI.normalizeGroupPath(dataset).isEmpty()) {
 			try {
-				final N5Reader n5Reader = new N5Factory()
-						.zarrDimensionSeparator("/")
-						.openReader(rootWithFormatPrefix);
-				doGroupExistsWarning = n5Reader.exists("");
+				final N5Reader n5Reader = N5SessionPool.getInstance().acquireReader(rootWithFormatPrefix);
+				try {
+					doGroupExistsWarning = n5Reader.exists("");
+				} finally {
+					N5SessionPool.getInstance().release(n5Reader);
+				}
 			} catch (final N5Exception e) {
 				// an exception may be thrown if the container does not exist
 				// in which case we should skip group existence check
@@ -504,10 +507,18 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 			}
 		}
 
-		final N5Writer n5 = new N5Factory()
-				.zarrDimensionSeparator("/")
-				.s3UseCredentials() // need credentials if writing to s3
-				.openWriter(rootWithFormatPrefix);
+		final N5Writer n5 = N5SessionPool.getInstance().acquireWriter(rootWithFormatPrefix);
+		try {
+			writeMultiscale(n5, doGroupExistsWarning);
+		} finally {
+			N5SessionPool.getInstance().release(n5);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends RealType<T> & NativeType<T>, M extends N5DatasetMetadata, N extends SpatialMetadataGroup<?>> void writeMultiscale(
+			final N5Writer n5, final boolean doGroupExistsWarning) throws IOException, InterruptedException, ExecutionException {
+
 		final Compression compression = getCompression();
 
 		if( !promptOverwriteAndDelete(n5, dataset, doGroupExistsWarning))
@@ -621,7 +632,7 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 						n5,
 						channelDataset);
 		}
-		n5.close();
+		SharedBlockCache.getInstance().invalidate(n5.getURI().toString(), dataset);
 	}
 
 	protected void initializeDataset() {
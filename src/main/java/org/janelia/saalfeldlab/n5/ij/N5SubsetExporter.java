@@ -37,9 +37,10 @@ import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5URI;
 import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.cache.N5SessionPool;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
-import org.janelia.saalfeldlab.n5.universe.N5Factory;
 import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
 import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
 import org.janelia.saalfeldlab.n5.universe.metadata.N5DefaultSingleScaleMetadata;
@@ -200,12 +201,13 @@ public class N5SubsetExporter extends ContextCommand {
 		if (rootWithFormatPrefix == null)
 			return;
 
-		final N5Writer n5 = new N5Factory()
-				.zarrDimensionSeparator("/")
-				.s3UseCredentials()
-				.openWriter(containerRoot);
-		write(n5);
-		n5.close();
+		final N5Writer n5 = N5SessionPool.getInstance().acquireWriter(containerRoot);
+		try {
+			write(n5);
+			SharedBlockCache.getInstance().invalidate(n5.getURI().toString(), dataset);
+		} finally {
+			N5SessionPool.getInstance().release(n5);
+		}
 	}
 
 	public void parseOffset() {
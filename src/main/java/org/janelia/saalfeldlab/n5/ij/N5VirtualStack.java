@@ -0,0 +1,539 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.awt.EventQueue;
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+import ij.CompositeImage;
+import ij.ImagePlus;
+import ij.VirtualStack;
+import ij.gui.ImageCanvas;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ShortProcessor;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.GenericByteType;
+import net.imglib2.type.numeric.integer.GenericShortType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * A virtual stack of the planes of an image that shows something while
+ * planes are read.
+ * <p>
+ * {@link #getProcessor(int)} and {@link #getPixels(int)} always return the
+ * data of the plane, and read it if it is not loaded. While the image is
+ * shown in a window and a plane is read, a placeholder is drawn on the
+ * canvas: the corresponding plane of a lower resolution preview, if one is
+ * set and that plane is loaded. The placeholder is only drawn, the image
+ * itself is not changed, and the next repaint shows the plane. Neighboring
+ * planes are prefetched on the {@link N5IoQueue}.
+ * <p>
+ * If the coarser levels of a multiscale pyramid are set, the placeholder of
+ * a zoomed out window is read from the coarsest level that still has at
+ * least one pixel per screen pixel. Levels are only ever drawn, the planes
+ * of this stack are always read at full resolution.
+ *
+ * @param <T>
+ *            the image type
+ */
+public class N5VirtualStack<T extends NativeType<T>> extends VirtualStack {
+
+	private static final long MAX_CACHED_BYTES = 64 * 1024 * 1024;
+
+	private final RandomAccessibleInterval<T> img;
+
+	private final T type;
+
+	private final int width;
+
+	private final int height;
+
+	private final int size;
+
+	private final Map<Integer, Object> planes;
+
+	private final Set<Integer> pending = new HashSet<>();
+
+	private ImagePlus imp;
+
+	private volatile ImagePlus preview;
+
+	private Callable<ImagePlus> previewLoader;
+
+	private volatile List<ImagePlus> levels = Collections.emptyList();
+
+	private Callable<List<ImagePlus>> levelsLoader;
+
+	public N5VirtualStack(final RandomAccessibleInterval<T> img) {
+
+		super((int)img.dimension(0), (int)img.dimension(1), null, null);
+		this.img = Views.zeroMin(img);
+		type = Util.getTypeFromInterval(img);
+		width = (int)img.dimension(0);
+		height = (int)img.dimension(1);
+
+		long n = 1;
+		for (int d = 2; d < img.numDimensions(); d++)
+			n *= img.dimension(d);
+		size = (int)n;
+
+		setBitDepth(bitDepth(type));
+
+		final long planeBytes = Math.max(1, (long)width * height * getBitDepth() / 8);
+		final int maxCachedPlanes = (int)Math.max(4, MAX_CACHED_BYTES / planeBytes);
+		planes = new LinkedHashMap<Integer, Object>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Integer, Object> eldest) {
+
+				return size() > maxCachedPlanes;
+			}
+		};
+	}
+
+	/**
+	 * Returns true if images of the given type can be shown with this stack.
+	 *
+	 * @param type
+	 *            the type
+	 * @return whether the type is supported
+	 */
+	public static boolean isSupported(final Object type) {
+
+		return bitDepth(type) > 0;
+	}
+
+	private static int bitDepth(final Object type) {
+
+		if (type instanceof GenericByteType)
+			return 8;
+		else if (type instanceof GenericShortType)
+			return 16;
+		else if (type instanceof ARGBType)
+			return 24;
+		else if (type instanceof RealType)
+			return 32;
+		else
+			return -1;
+	}
+
+	/**
+	 * Wraps an image whose axes are in ImageJ order (XYCZT) as an
+	 * {@link ImagePlus} backed by an {@link N5VirtualStack}.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param img
+	 *            the image
+	 * @param title
+	 *            the title
+	 * @return the ImagePlus
+	 */
+	public static <T extends NativeType<T>> ImagePlus wrap(final RandomAccessibleInterval<T> img, final String title) {
+
+		final N5VirtualStack<T> stack = new N5VirtualStack<>(img);
+		final ImagePlus imp = new ImagePlus(title, stack);
+		if (img.numDimensions() == 5)
+			imp.setDimensions((int)img.dimension(2), (int)img.dimension(3), (int)img.dimension(4));
+
+		stack.imp = imp;
+		return imp;
+	}
+
+	/**
+	 * Sets a loader for a lower resolution version of this image, to show in
+	 * place of planes that are not loaded yet. The loader is run on the
+	 * {@link N5IoQueue} the first time it is needed.
+	 *
+	 * @param previewLoader
+	 *            opens the preview, may return null
+	 */
+	public synchronized void setPreviewLoader(final Callable<ImagePlus> previewLoader) {
+
+		this.previewLoader = previewLoader;
+	}
+
+	/**
+	 * Sets a loader for the levels of a multiscale pyramid that are coarser
+	 * than this image, to draw placeholders from while the window is zoomed
+	 * out. The levels must have the same type and axes as this image, and be
+	 * backed by {@link N5VirtualStack}s themselves. The loader is run on the
+	 * {@link N5IoQueue} the first time a placeholder is drawn.
+	 *
+	 * @param levelsLoader
+	 *            opens the coarser levels, in any order
+	 */
+	public synchronized void setLevelsLoader(final Callable<List<ImagePlus>> levelsLoader) {
+
+		this.levelsLoader = levelsLoader;
+	}
+
+	@Override
+	public int getSize() {
+
+		return size;
+	}
+
+	@Override
+	public String getSliceLabel(final int n) {
+
+		return null;
+	}
+
+	@Override
+	public Object getPixels(final int n) {
+
+		return getProcessor(n).getPixels();
+	}
+
+	/**
+	 * Returns the processor of the given plane, reading it if necessary.
+	 * While the image is shown, a placeholder is drawn until the plane is
+	 * read, and the neighboring planes are prefetched.
+	 *
+	 * @param n
+	 *            the one-based plane index
+	 * @return the processor
+	 */
+	@Override
+	public ImageProcessor getProcessor(final int n) {
+
+		final Object pixels = cached(n);
+		if (pixels != null)
+			return createProcessor(pixels);
+
+		if (imp == null || imp.getWindow() == null)
+			return getProcessorNow(n);
+
+		if (n > 1)
+			request(n - 1, N5IoQueue.PREFETCH, null);
+		if (n < size)
+			request(n + 1, N5IoQueue.PREFETCH, null);
+
+		paintPlaceholder(n);
+		try {
+			return getProcessorNow(n);
+		} finally {
+			// draw the plane over the placeholder
+			final ImageCanvas canvas = imp.getCanvas();
+			if (canvas != null)
+				EventQueue.invokeLater(canvas::repaint);
+		}
+	}
+
+	/**
+	 * Returns the processor of the given plane, reading it if necessary.
+	 *
+	 * @param n
+	 *            the one-based plane index
+	 * @return the processor
+	 */
+	public ImageProcessor getProcessorNow(final int n) {
+
+		Object pixels = cached(n);
+		if (pixels == null) {
+			pixels = render(n);
+			synchronized (this) {
+				planes.put(n, pixels);
+			}
+		}
+		return createProcessor(pixels);
+	}
+
+	private synchronized Object cached(final int n) {
+
+		return planes.get(n);
+	}
+
+	private synchronized void request(final int n, final int priority, final Runnable onLoaded) {
+
+		if (planes.containsKey(n) || !pending.add(n))
+			return;
+
+		N5IoQueue.getInstance().submit(() -> {
+			final Object pixels = render(n);
+			synchronized (this) {
+				planes.put(n, pixels);
+				pending.remove(n);
+			}
+			if (onLoaded != null)
+				EventQueue.invokeLater(onLoaded);
+		}, priority);
+	}
+
+	/**
+	 * Draws the placeholder of a plane that is being read on the canvas,
+	 * unless the plane is loaded or no longer shown.
+	 */
+	private void paintPlaceholder(final int n) {
+
+		if (!EventQueue.isDispatchThread()) {
+			EventQueue.invokeLater(() -> paintPlaceholder(n));
+			return;
+		}
+
+		// composite images are drawn from all their channels
+		final ImagePlus imp = this.imp;
+		if (imp == null || imp instanceof CompositeImage || imp.getStack() != this || imp.getCurrentSlice() != n ||
+				cached(n) != null)
+			return;
+
+		final ImageCanvas canvas = imp.getCanvas();
+		final ImageProcessor ip = placeholder(n);
+		if (canvas == null || ip == null)
+			return;
+
+		final Graphics g = canvas.getGraphics();
+		if (g == null)
+			return;
+
+		try {
+			if (getBitDepth() != 24) {
+				ip.setColorModel(imp.getProcessor().getColorModel());
+				ip.setMinAndMax(imp.getDisplayRangeMin(), imp.getDisplayRangeMax());
+			}
+
+			// the visible part of the image, in the coordinates of the placeholder
+			final Rectangle src = canvas.getSrcRect();
+			final double magnification = canvas.getMagnification();
+			final double sx = (double)ip.getWidth() / width;
+			final double sy = (double)ip.getHeight() / height;
+			g.drawImage(ip.createImage(),
+					0, 0, (int)Math.round(src.width * magnification), (int)Math.round(src.height * magnification),
+					(int)(src.x * sx), (int)(src.y * sy),
+					(int)Math.ceil((src.x + src.width) * sx), (int)Math.ceil((src.y + src.height) * sy),
+					null);
+		} finally {
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Returns the coarsest level that has at least one pixel per screen pixel
+	 * at the current magnification, or null if the placeholder should not be
+	 * read from a level.
+	 */
+	private ImagePlus level() {
+
+		final ImageCanvas canvas = imp.getCanvas();
+		if (canvas == null)
+			return null;
+
+		final double magnification = canvas.getMagnification();
+		ImagePlus best = null;
+		for (final ImagePlus level : levels()) {
+			if (level.getWidth() >= width * magnification && level.getHeight() >= height * magnification &&
+					(best == null || level.getWidth() < best.getWidth()))
+				best = level;
+		}
+		return best;
+	}
+
+	/**
+	 * A lower resolution version of a plane that is loaded already, or null.
+	 */
+	private ImageProcessor placeholder(final int n) {
+
+		// while zoomed out, the level that matches the screen
+		final ImagePlus level = level();
+		if (level != null) {
+			final N5VirtualStack<?> levelStack = (N5VirtualStack<?>)level.getStack();
+			final int levelIndex = levelIndex(level, n);
+			final Object levelPixels = levelStack.cached(levelIndex);
+			if (levelPixels != null)
+				return levelStack.createProcessor(levelPixels);
+
+			levelStack.request(levelIndex, N5IoQueue.VISIBLE, () -> paintPlaceholder(n));
+		}
+
+		// the finest level that has this plane already
+		ImagePlus finest = null;
+		for (final ImagePlus level : levels) {
+			if (((N5VirtualStack<?>)level.getStack()).cached(levelIndex(level, n)) != null &&
+					(finest == null || level.getWidth() > finest.getWidth()))
+				finest = level;
+		}
+		if (finest != null)
+			return ((N5VirtualStack<?>)finest.getStack()).getProcessorNow(levelIndex(finest, n));
+
+		// only preview planes that are loaded already, the others are read on
+		// the queue and shown when they arrive
+		final ImagePlus preview = preview();
+		if (preview != null && preview.getStack() instanceof N5VirtualStack) {
+			final N5VirtualStack<?> previewStack = (N5VirtualStack<?>)preview.getStack();
+			final int previewIndex = levelIndex(preview, n);
+			final Object previewPixels = previewStack.cached(previewIndex);
+			if (previewPixels != null)
+				return previewStack.createProcessor(previewPixels);
+
+			previewStack.request(previewIndex, N5IoQueue.VISIBLE, () -> paintPlaceholder(n));
+		}
+
+		return null;
+	}
+
+	/**
+	 * The index of the plane of a lower resolution version of this image that
+	 * corresponds to a plane of this image.
+	 */
+	private int levelIndex(final ImagePlus level, final int n) {
+
+		final int[] pos = imp.convertIndexToPosition(n);
+		return level.getStackIndex(
+				scale(pos[0], imp.getNChannels(), level.getNChannels()),
+				scale(pos[1], imp.getNSlices(), level.getNSlices()),
+				scale(pos[2], imp.getNFrames(), level.getNFrames()));
+	}
+
+	private static int scale(final int position, final int size, final int previewSize) {
+
+		return Math.min(previewSize, 1 + (int)((long)(position - 1) * previewSize / size));
+	}
+
+	private synchronized ImagePlus preview() {
+
+		if (previewLoader != null) {
+			final Callable<ImagePlus> loader = previewLoader;
+			previewLoader = null;
+			N5IoQueue.getInstance().submit(() -> {
+				try {
+					preview = loader.call();
+				} catch (final Exception e) {
+					return;
+				}
+				EventQueue.invokeLater(() -> {
+					if (imp != null && imp.getWindow() != null)
+						imp.updateAndDraw();
+				});
+			}, N5IoQueue.VISIBLE);
+		}
+		return preview;
+	}
+
+	private synchronized List<ImagePlus> levels() {
+
+		if (levelsLoader != null) {
+			final Callable<List<ImagePlus>> loader = levelsLoader;
+			levelsLoader = null;
+			N5IoQueue.getInstance().submit(() -> {
+				final List<ImagePlus> loaded;
+				try {
+					loaded = loader.call();
+				} catch (final Exception e) {
+					return;
+				}
+				if (loaded == null)
+					return;
+
+				// only levels that can stand in for planes of this image
+				levels = Collections.unmodifiableList(loaded.stream()
+						.filter(x -> x != null && x.getStack() instanceof N5VirtualStack)
+						.filter(x -> x.getBitDepth() == getBitDepth() && x.getWidth() < width)
+						.collect(Collectors.toList()));
+
+			}, N5IoQueue.VISIBLE);
+		}
+		return levels;
+	}
+
+	private Object createPixels() {
+
+		switch (getBitDepth()) {
+		case 8:
+			return new byte[width * height];
+		case 16:
+			return new short[width * height];
+		case 24:
+			return new int[width * height];
+		default:
+			return new float[width * height];
+		}
+	}
+
+	private ImageProcessor createProcessor(final Object pixels) {
+
+		if (pixels instanceof byte[])
+			return new ByteProcessor(width, height, (byte[])pixels);
+		else if (pixels instanceof short[])
+			return new ShortProcessor(width, height, (short[])pixels, null);
+		else if (pixels instanceof int[])
+			return new ColorProcessor(width, height, (int[])pixels);
+		else
+			return new FloatProcessor(width, height, (float[])pixels);
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private Object render(final int n) {
+
+		// the position of the plane along axes 2 and up
+		RandomAccessibleInterval plane = img;
+		long index = n - 1;
+		final long[] position = new long[img.numDimensions()];
+		for (int d = 2; d < img.numDimensions(); d++) {
+			position[d] = index % img.dimension(d);
+			index /= img.dimension(d);
+		}
+		for (int d = img.numDimensions() - 1; d >= 2; d--)
+			plane = Views.hyperSlice(plane, d, position[d]);
+
+		final Object pixels = createPixels();
+		if (type instanceof GenericByteType)
+			LoopBuilder.setImages(plane, ArrayImgs.bytes((byte[])pixels, width, height))
+					.forEachPixel((s, t) -> ((GenericByteType)t).setByte(((GenericByteType)s).getByte()));
+		else if (type instanceof GenericShortType)
+			LoopBuilder.setImages(plane, ArrayImgs.shorts((short[])pixels, width, height))
+					.forEachPixel((s, t) -> ((GenericShortType)t).setShort(((GenericShortType)s).getShort()));
+		else if (type instanceof ARGBType)
+			LoopBuilder.setImages(plane, ArrayImgs.argbs((int[])pixels, width, height))
+					.forEachPixel((s, t) -> ((ARGBType)t).set((ARGBType)s));
+		else
+			LoopBuilder.setImages(plane, ArrayImgs.floats((float[])pixels, width, height))
+					.forEachPixel((s, t) -> ((RealType)t).setReal(((RealType)s).getRealDouble()));
+
+		return pixels;
+	}
+
+}
@@ -45,6 +45,8 @@ import org.janelia.saalfeldlab.n5.N5URI;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.RawCompression;
 import org.janelia.saalfeldlab.n5.XzCompression;
+import org.janelia.saalfeldlab.n5.cache.N5SessionPool;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache;
 import org.janelia.saalfeldlab.n5.blosc.BloscCompression;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
 import org.janelia.saalfeldlab.n5.metadata.imagej.CosemToImagePlus;
@@ -285,6 +287,8 @@ public class NgffExporter implements WindowListener {
 			e.printStackTrace();
 		}
 
+		SharedBlockCache.getInstance().invalidate(n5.getURI().toString(), dataset);
+		N5SessionPool.getInstance().invalidate(rootLocation);
 		n5.close();
 	}
 
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5MetadataGroup;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.v04.OmeNgffMultiScaleMetadata;
+
+import ij.IJ;
+
+/**
+ * Chooses the finest scale level of a multiscale pyramid that fits a memory
+ * budget and / or a screen size.
+ * <p>
+ * The budget is compared to the size of the image after conversion to an
+ * ImageJ type, and the screen size to the first two spatial dimensions. If no
+ * level fits, the coarsest level is chosen. Datasets that are not part of a
+ * multiscale group are returned unchanged.
+ * <p>
+ * The chosen level's own metadata is used to open the image, so its
+ * calibration includes the downsampling factors of that level.
+ */
+public class PyramidLevelSelector {
+
+	private final long maxBytes;
+
+	private final long[] maxScreenSize;
+
+	/**
+	 * @param maxBytes
+	 *            the memory budget in bytes, ignored if not positive
+	 * @param maxScreenSize
+	 *            the maximum width and height in pixels, may be null
+	 */
+	public PyramidLevelSelector(final long maxBytes, final long[] maxScreenSize) {
+
+		this.maxBytes = maxBytes;
+		this.maxScreenSize = maxScreenSize;
+	}
+
+	public PyramidLevelSelector(final long maxBytes) {
+
+		this(maxBytes, null);
+	}
+
+	/**
+	 * A selector whose budget is half of the currently free memory available
+	 * to ImageJ.
+	 *
+	 * @return the selector
+	 */
+	public static PyramidLevelSelector fromFreeMemory() {
+
+		return new PyramidLevelSelector((IJ.maxMemory() - IJ.currentMemory()) / 2);
+	}
+
+	public long getMaxBytes() {
+
+		return maxBytes;
+	}
+
+	public long[] getMaxScreenSize() {
+
+		return maxScreenSize;
+	}
+
+	/**
+	 * Returns the metadata of the finest level of the multiscale group that
+	 * contains the given dataset which fits this selector's budget.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param datasetMeta
+	 *            the metadata of one level of a pyramid
+	 * @return metadata of the selected level
+	 */
+	public N5DatasetMetadata select(final N5Reader n5, final N5DatasetMetadata datasetMeta) {
+
+		final List<N5DatasetMetadata> levels = levels(n5, datasetMeta);
+		if (levels.isEmpty())
+			return datasetMeta;
+
+		final DatasetAttributes[] attrs = levels.stream().map(N5DatasetMetadata::getAttributes).toArray(DatasetAttributes[]::new);
+		return levels.get(select(attrs));
+	}
+
+	/**
+	 * Returns the metadata of all levels of the multiscale group that
+	 * contains the given dataset, including the dataset itself.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param datasetMeta
+	 *            the metadata of one level of a pyramid
+	 * @return metadata of the levels, empty if the dataset is not part of a
+	 *         multiscale group
+	 */
+	public static List<N5DatasetMetadata> levels(final N5Reader n5, final N5DatasetMetadata datasetMeta) {
+
+		final String path = N5URI.normalizeGroupPath(datasetMeta.getPath());
+		final int i = path.lastIndexOf('/');
+		final String parentPath = i < 0 ? "" : path.substring(0, i);
+
+		final N5Metadata groupMeta;
+		try {
+			groupMeta = parseGroup(n5, parentPath).getMetadata();
+		} catch (final Exception e) {
+			return Collections.emptyList();
+		}
+
+		if (!(groupMeta instanceof N5MetadataGroup))
+			return Collections.emptyList();
+
+		final List<N5DatasetMetadata> levels = new ArrayList<>();
+		boolean containsDataset = false;
+		for (final Object child : ((N5MetadataGroup<?>)groupMeta).getChildrenMetadata()) {
+			if (child instanceof N5DatasetMetadata) {
+				final N5DatasetMetadata level = (N5DatasetMetadata)child;
+				levels.add(level);
+				containsDataset |= N5URI.normalizeGroupPath(level.getPath()).equals(path);
+			}
+		}
+
+		return containsDataset ? levels : Collections.emptyList();
+	}
+
+	/**
+	 * Parses the metadata of a group and its immediate children only, rather
+	 * than of the whole subtree.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param groupPath
+	 *            the group
+	 * @return the parsed node
+	 * @throws Exception
+	 *             if listing or parsing fails
+	 */
+	private static N5TreeNode parseGroup(final N5Reader n5, final String groupPath) throws Exception {
+
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(n5,
+				N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+				Arrays.asList(N5Importer.GROUP_PARSERS));
+
+		final N5TreeNode node = new N5TreeNode(groupPath);
+		for (final String child : n5.list(groupPath))
+			node.childrenList().add(new N5TreeNode(groupPath.isEmpty() ? child : groupPath + "/" + child));
+
+		discoverer.parseMetadataRecursive(node, x -> {});
+		return node;
+	}
+
+	/**
+	 * Returns the index of the level with the largest size that fits, or of
+	 * the smallest level if none fit.
+	 *
+	 * @param levels
+	 *            attributes of each level, in any order
+	 * @return the index of the selected level
+	 */
+	public int select(final DatasetAttributes[] levels) {
+
+		int best = -1;
+		int smallest = -1;
+		for (int i = 0; i < levels.length; i++) {
+			final long bytes = importedBytes(levels[i]);
+			if (smallest < 0 || bytes < importedBytes(levels[smallest]))
+				smallest = i;
+
+			if (fits(levels[i]) && (best < 0 || bytes > importedBytes(levels[best])))
+				best = i;
+		}
+		return best >= 0 ? best : smallest;
+	}
+
+	public boolean fits(final DatasetAttributes attributes) {
+
+		if (maxBytes > 0 && importedBytes(attributes) > maxBytes)
+			return false;
+
+		if (maxScreenSize != null) {
+			final long[] dims = attributes.getDimensions().clone();
+			if (OmeNgffMultiScaleMetadata.fOrder(attributes))
+				ArrayUtils.reverse(dims);
+
+			for (int d = 0; d < Math.min(2, Math.min(dims.length, maxScreenSize.length)); d++)
+				if (dims[d] > maxScreenSize[d])
+					return false;
+		}
+		return true;
+	}
+
+	/**
+	 * The size of a dataset in bytes once opened as an {@link ij.ImagePlus}.
+	 *
+	 * @param attributes
+	 *            the dataset attributes
+	 * @return the size in bytes
+	 */
+	public static long importedBytes(final DatasetAttributes attributes) {
+
+		final long n = Arrays.stream(attributes.getDimensions()).reduce(1, (x, y) -> x * y);
+		return n * importedBytesPerElement(attributes.getDataType());
+	}
+
+	/**
+	 * The number of bytes per pixel of the ImageJ type that the given type is
+	 * converted to on import.
+	 *
+	 * @param dataType
+	 *            the stored type
+	 * @return number of bytes per pixel
+	 */
+	public static int importedBytesPerElement(final DataType dataType) {
+
+		switch (dataType) {
+		case INT8:
+		case UINT8:
+			return 1;
+		case INT16:
+		case UINT16:
+		case INT64:
+		case UINT64:
+		case INT32:
+			return 2;
+		default:
+			// uint32 may be rgb, float64 becomes float32
+			return 4;
+		}
+	}
+
+}
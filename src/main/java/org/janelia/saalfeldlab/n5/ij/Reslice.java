@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import ij.ImagePlus;
+import ij.measure.Calibration;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.view.Views;
+
+/**
+ * Orthogonal reslicing of an image whose axes are in ImageJ order (XYCZT)
+ * as a view, so that a virtual stack of XZ or YZ planes only reads the layer
+ * of blocks each plane crosses.
+ * <ul>
+ * <li>{@link #XZ}: planes of X and Z, stacked along Y</li>
+ * <li>{@link #YZ}: planes of Y and Z, stacked along X</li>
+ * </ul>
+ * For images without channel and time axes, the third axis is Z. Four
+ * dimensional images can not be resliced, since it is unknown whether their
+ * third axis is C or Z.
+ */
+public enum Reslice {
+
+	XY, XZ, YZ;
+
+	/**
+	 * Parses a reslice option, ignoring case.
+	 *
+	 * @param value
+	 *            "xy", "xz", "yz", or empty
+	 * @return the reslice, or null for no reslicing
+	 * @throws IllegalArgumentException
+	 *             if the value is none of the above
+	 */
+	public static Reslice parse(final String value) {
+
+		if (value == null || value.trim().isEmpty())
+			return null;
+
+		final Reslice reslice;
+		try {
+			reslice = valueOf(value.trim().toUpperCase());
+		} catch (final IllegalArgumentException e) {
+			throw new IllegalArgumentException("reslice must be xy, xz, or yz, but was: " + value);
+		}
+		return reslice == XY ? null : reslice;
+	}
+
+	/**
+	 * The axis, in ImageJ order, along which the resliced planes are stacked.
+	 *
+	 * @return 1 (Y) for {@link #XZ}, 0 (X) for {@link #YZ}, and 2 otherwise
+	 */
+	public int stackAxis() {
+
+		switch (this) {
+		case XZ:
+			return 1;
+		case YZ:
+			return 0;
+		default:
+			return 2;
+		}
+	}
+
+	private static int zAxis(final int numDimensions) {
+
+		if (numDimensions == 4)
+			throw new IllegalArgumentException("Can not reslice a 4D dataset without axis metadata, its third axis may be C or Z.");
+
+		return numDimensions == 5 ? 3 : 2;
+	}
+
+	/**
+	 * Reslices the given image.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param img
+	 *            the image in ImageJ axis order
+	 * @return the resliced view
+	 * @throws IllegalArgumentException
+	 *             if the image is four dimensional
+	 */
+	public <T> RandomAccessibleInterval<T> apply(final RandomAccessibleInterval<T> img) {
+
+		final int nd = img.numDimensions();
+		if (nd < 3 || this == XY)
+			return img;
+
+		final int z = zAxis(nd);
+		switch (this) {
+		case XZ:
+			// X, Z, ..., Y
+			return Views.permute(img, 1, z);
+		case YZ:
+			// Y, Z, ..., X
+			return Views.permute(Views.permute(img, 0, 1), 1, z);
+		default:
+			return img;
+		}
+	}
+
+	/**
+	 * Sets the dimensions and calibration of an image opened from a resliced
+	 * view. Must be called after the metadata of the original orientation was
+	 * applied.
+	 *
+	 * @param imp
+	 *            the image
+	 * @param resliced
+	 *            the resliced view
+	 */
+	public void calibrate(final ImagePlus imp, final RandomAccessibleInterval<?> resliced) {
+
+		final int nd = resliced.numDimensions();
+		if (nd < 3 || this == XY)
+			return;
+
+		if (nd == 5)
+			imp.setDimensions((int)resliced.dimension(2), (int)resliced.dimension(3), (int)resliced.dimension(4));
+		else
+			imp.setDimensions(1, imp.getStackSize(), 1);
+
+		final Calibration cal = imp.getCalibration();
+		final double pw = cal.pixelWidth;
+		final double ph = cal.pixelHeight;
+		final double pd = cal.pixelDepth;
+		final double xo = cal.xOrigin;
+		final double yo = cal.yOrigin;
+		final double zo = cal.zOrigin;
+		final String xu = cal.getXUnit();
+		final String yu = cal.getYUnit();
+		final String zu = cal.getZUnit();
+
+		if (this == XZ) {
+			cal.pixelHeight = pd;
+			cal.pixelDepth = ph;
+			cal.yOrigin = zo;
+			cal.zOrigin = yo;
+			cal.setYUnit(zu);
+			cal.setZUnit(yu);
+		} else {
+			cal.pixelWidth = ph;
+			cal.pixelHeight = pd;
+			cal.pixelDepth = pw;
+			cal.xOrigin = yo;
+			cal.yOrigin = zo;
+			cal.zOrigin = xo;
+			cal.setXUnit(yu);
+			cal.setYUnit(zu);
+			cal.setZUnit(xu);
+		}
+	}
+
+}
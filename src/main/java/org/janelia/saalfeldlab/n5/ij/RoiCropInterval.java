@@ -0,0 +1,262 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+
+import ij.gui.Roi;
+import ij.gui.ShapeRoi;
+import ij.process.ImageProcessor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.numeric.NumericType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * A crop interval shaped by an ImageJ area {@link Roi} in the first two
+ * dimensions (X and Y, in pixel coordinates of the dataset) and by a box in
+ * the others, for example a Z range.
+ * <p>
+ * The interval itself is the bounding box. {@link #mask(RandomAccessibleInterval)}
+ * sets voxels outside the ROI to zero without reading them, and
+ * {@link #prefetch(CachedCellImg, boolean, ExecutorService)} loads, in
+ * parallel, exactly the blocks whose XY extent intersects the ROI.
+ */
+public class RoiCropInterval extends FinalInterval {
+
+	private final Roi roi;
+
+	private final Shape shape;
+
+	/**
+	 * @param roi
+	 *            an area roi
+	 * @param interval
+	 *            the box for the remaining dimensions. Its first two
+	 *            dimensions are intersected with the bounds of the roi.
+	 */
+	public RoiCropInterval(final Roi roi, final Interval interval) {
+
+		super(roiBounds(roi, interval));
+		this.roi = roi;
+		shape = new ShapeRoi(roi).getShape();
+	}
+
+	private static Interval roiBounds(final Roi roi, final Interval interval) {
+
+		final Rectangle b = roi.getBounds();
+		final long[] min = Intervals.minAsLongArray(interval);
+		final long[] max = Intervals.maxAsLongArray(interval);
+		min[0] = Math.max(min[0], b.x);
+		min[1] = Math.max(min[1], b.y);
+		max[0] = Math.min(max[0], (long)b.x + b.width - 1);
+		max[1] = Math.min(max[1], (long)b.y + b.height - 1);
+		return new FinalInterval(min, max);
+	}
+
+	/**
+	 * Creates a roi crop for an image with the given number of dimensions.
+	 *
+	 * @param roi
+	 *            an area roi
+	 * @param crop
+	 *            the box for the remaining dimensions, or null for all of
+	 *            them
+	 * @param numDimensions
+	 *            the number of dimensions
+	 * @return the crop interval
+	 */
+	public static RoiCropInterval create(final Roi roi, final Interval crop, final int numDimensions) {
+
+		if (crop != null)
+			return new RoiCropInterval(roi, crop);
+
+		final long[] min = new long[numDimensions];
+		final long[] max = new long[numDimensions];
+		Arrays.fill(max, Long.MAX_VALUE);
+		return new RoiCropInterval(roi, new FinalInterval(min, max));
+	}
+
+	public Roi getRoi() {
+
+		return roi;
+	}
+
+	/**
+	 * Returns this crop limited to the given interval.
+	 *
+	 * @param interval
+	 *            the interval
+	 * @return the intersection
+	 */
+	public RoiCropInterval intersect(final Interval interval) {
+
+		return new RoiCropInterval(roi, Intervals.intersect(this, interval));
+	}
+
+	/**
+	 * Returns true if the XY rectangle with the given min and max intersects
+	 * the roi.
+	 *
+	 * @param minX
+	 *            min x
+	 * @param minY
+	 *            min y
+	 * @param maxX
+	 *            max x, inclusive
+	 * @param maxY
+	 *            max y, inclusive
+	 * @return whether it intersects
+	 */
+	public boolean intersects(final long minX, final long minY, final long maxX, final long maxY) {
+
+		return shape.intersects(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	/**
+	 * Returns a view of the given image in which voxels outside the roi are
+	 * zero. Those voxels are never read from the image.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param img
+	 *            an image whose first two dimensions are X and Y
+	 * @return the masked image
+	 */
+	public <T extends NumericType<T>> RandomAccessibleInterval<T> mask(final RandomAccessibleInterval<T> img) {
+
+		final Rectangle bounds = roi.getBounds();
+		final ImageProcessor maskIp = roi.getMask();
+		final byte[] mask = maskIp == null ? null : (byte[])maskIp.getPixels();
+
+		final T type = Util.getTypeFromInterval(img).createVariable();
+		final Supplier<BiConsumer<Localizable, ? super T>> function = () -> {
+			final RandomAccess<T> ra = img.randomAccess();
+			return (p, t) -> {
+				final long x = p.getLongPosition(0) - bounds.x;
+				final long y = p.getLongPosition(1) - bounds.y;
+				final boolean inside = x >= 0 && y >= 0 && x < bounds.width && y < bounds.height &&
+						(mask == null || mask[(int)(y * bounds.width + x)] != 0);
+
+				if (inside) {
+					ra.setPosition(p);
+					t.set(ra.get());
+				} else
+					t.setZero();
+			};
+		};
+
+		return Views.interval(new FunctionRandomAccessible<T>(img.numDimensions(), function, () -> type.createVariable()), img);
+	}
+
+	/**
+	 * Loads the blocks of the given image that intersect this crop in
+	 * parallel.
+	 *
+	 * @param img
+	 *            the image as stored
+	 * @param fOrder
+	 *            whether the stored axes are reversed with respect to this
+	 *            crop
+	 * @param exec
+	 *            the executor
+	 * @return the number of blocks loaded
+	 */
+	public int prefetch(final CachedCellImg<?, ?> img, final boolean fOrder, final ExecutorService exec) {
+
+		final int nd = img.numDimensions();
+		if (nd != numDimensions())
+			return 0;
+
+		final CellGrid grid = img.getCellGrid();
+		final int[] cellDims = new int[nd];
+		grid.cellDimensions(cellDims);
+
+		// grid range in stored axis order
+		final long[] gridMin = new long[nd];
+		final long[] gridMax = new long[nd];
+		for (int d = 0; d < nd; d++) {
+			final int c = fOrder ? nd - 1 - d : d;
+			gridMin[d] = min(c) / cellDims[d];
+			gridMax[d] = Math.min(max(c), img.max(d)) / cellDims[d];
+		}
+
+		final int xAxis = fOrder ? nd - 1 : 0;
+		final int yAxis = fOrder ? nd - 2 : 1;
+
+		final List<Future<?>> futures = new ArrayList<>();
+		final long[] pos = gridMin.clone();
+		while (true) {
+			final long minX = pos[xAxis] * cellDims[xAxis];
+			final long minY = pos[yAxis] * cellDims[yAxis];
+			if (intersects(minX, minY, minX + cellDims[xAxis] - 1, minY + cellDims[yAxis] - 1)) {
+				final long[] gridPosition = pos.clone();
+				futures.add(exec.submit(() -> {
+					final RandomAccess<?> cells = img.getCells().randomAccess();
+					cells.setPosition(gridPosition);
+					cells.get();
+				}));
+			}
+
+			int d = 0;
+			for (; d < nd; d++) {
+				if (++pos[d] <= gridMax[d])
+					break;
+				pos[d] = gridMin[d];
+			}
+			if (d == nd)
+				break;
+		}
+
+		try {
+			for (final Future<?> f : futures)
+				f.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new N5Exception("Failed to read blocks", e);
+		}
+		return futures.size();
+	}
+
+}
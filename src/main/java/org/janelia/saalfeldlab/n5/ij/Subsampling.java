@@ -0,0 +1,216 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import ij.ImagePlus;
+import ij.measure.Calibration;
+import net.imglib2.FinalInterval;
+import net.imglib2.Localizable;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Integer subsampling of an image whose axes are in ImageJ order (XYCZT),
+ * either by taking every n-th voxel or by averaging over n-voxel windows.
+ * <p>
+ * The result is a lazy view, so that copying it only reads the blocks that
+ * contain sampled voxels. The calibration of the resulting {@link ImagePlus}
+ * is scaled accordingly with {@link #calibrate(ImagePlus, int)}.
+ */
+public class Subsampling {
+
+	private final long[] factors;
+
+	private final boolean average;
+
+	/**
+	 * @param factors
+	 *            the subsampling factor per axis in ImageJ order, missing axes
+	 *            are not subsampled
+	 * @param average
+	 *            whether to average over each window rather than take its
+	 *            first voxel
+	 */
+	public Subsampling(final long[] factors, final boolean average) {
+
+		this.factors = factors;
+		this.average = average;
+	}
+
+	/**
+	 * Parses comma-separated factors.
+	 *
+	 * @param factors
+	 *            the factors, for example "4,4,1,16"
+	 * @param average
+	 *            whether to average
+	 * @return the subsampling, or null if no axis is subsampled
+	 * @throws IllegalArgumentException
+	 *             if a factor is not a positive integer
+	 */
+	public static Subsampling parse(final String factors, final boolean average) {
+
+		if (factors == null || factors.trim().isEmpty())
+			return null;
+
+		long[] f;
+		try {
+			f = Arrays.stream(factors.split(",")).map(String::trim).mapToLong(Long::parseLong).toArray();
+		} catch (final NumberFormatException e) {
+			f = null;
+		}
+		if (f == null || Arrays.stream(f).anyMatch(x -> x < 1))
+			throw new IllegalArgumentException("subsample must be comma-separated positive integers, but was: " + factors);
+
+		if (Arrays.stream(f).allMatch(x -> x == 1))
+			return null;
+
+		return new Subsampling(f, average);
+	}
+
+	public long[] getFactors() {
+
+		return factors;
+	}
+
+	public boolean isAverage() {
+
+		return average;
+	}
+
+	public long factor(final int d) {
+
+		return d < factors.length ? Math.max(1, factors[d]) : 1;
+	}
+
+	@Override
+	public String toString() {
+
+		return Arrays.stream(factors).mapToObj(Long::toString).reduce((a, b) -> a + "," + b).orElse("");
+	}
+
+	/**
+	 * Subsamples the given image.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param img
+	 *            the image
+	 * @return the subsampled image, with min zero
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public <T extends NativeType<T>> RandomAccessibleInterval<T> apply(final RandomAccessibleInterval<T> img) {
+
+		final int nd = img.numDimensions();
+		final long[] steps = new long[nd];
+		for (int d = 0; d < nd; d++)
+			steps[d] = Math.min(factor(d), img.dimension(d));
+
+		final RandomAccessibleInterval<T> zeroMin = Views.zeroMin(img);
+		final T type = Util.getTypeFromInterval(img);
+		if (!average || !(type instanceof RealType))
+			return Views.subsample(zeroMin, steps);
+
+		return (RandomAccessibleInterval<T>)averaged((RandomAccessibleInterval)zeroMin, steps);
+	}
+
+	private static <T extends RealType<T> & NativeType<T>> RandomAccessibleInterval<T> averaged(
+			final RandomAccessibleInterval<T> img, final long[] steps) {
+
+		final int nd = img.numDimensions();
+		final long[] dims = new long[nd];
+		for (int d = 0; d < nd; d++)
+			dims[d] = (img.dimension(d) + steps[d] - 1) / steps[d];
+
+		final T type = Util.getTypeFromInterval(img).createVariable();
+		final Supplier<BiConsumer<Localizable, ? super T>> function = () -> {
+			final RandomAccess<T> ra = img.randomAccess();
+			final long[] min = new long[nd];
+			final long[] max = new long[nd];
+			final long[] pos = new long[nd];
+			return (p, t) -> {
+				for (int d = 0; d < nd; d++) {
+					min[d] = p.getLongPosition(d) * steps[d];
+					max[d] = Math.min(min[d] + steps[d], img.dimension(d)) - 1;
+				}
+
+				double sum = 0;
+				long count = 0;
+				System.arraycopy(min, 0, pos, 0, nd);
+				while (true) {
+					ra.setPosition(pos);
+					sum += ra.get().getRealDouble();
+					count++;
+
+					int d = 0;
+					for (; d < nd; d++) {
+						if (++pos[d] <= max[d])
+							break;
+						pos[d] = min[d];
+					}
+					if (d == nd)
+						break;
+				}
+				t.setReal(sum / count);
+			};
+		};
+
+		return Views.interval(new FunctionRandomAccessible<T>(nd, function, () -> type.createVariable()), new FinalInterval(dims));
+	}
+
+	/**
+	 * Scales the calibration of an image opened from a subsampled view.
+	 *
+	 * @param imp
+	 *            the image
+	 * @param numDimensions
+	 *            the number of dimensions of the view, if five, the axes are
+	 *            XYCZT, otherwise the third axis is Z
+	 */
+	public void calibrate(final ImagePlus imp, final int numDimensions) {
+
+		final int zAxis = numDimensions == 5 ? 3 : 2;
+		final Calibration cal = imp.getCalibration();
+		cal.pixelWidth *= factor(0);
+		cal.pixelHeight *= factor(1);
+		cal.pixelDepth *= factor(zAxis);
+		cal.xOrigin /= factor(0);
+		cal.yOrigin /= factor(1);
+		cal.zOrigin /= factor(zAxis);
+		if (numDimensions == 5)
+			cal.frameInterval *= factor(4);
+	}
+
+}
@@ -0,0 +1,426 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.converters.ArrayConverters;
+import org.janelia.saalfeldlab.n5.converters.UnsignedShortLUTConverter;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.imageplus.ImagePlusImg;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Copies the cells of a {@link CachedCellImg} into an {@link ImagePlusImg}
+ * whose axes are a permutation (with possibly reversed and cropped axes) of
+ * the cell image's axes, as for F-order Zarr arrays or OME-NGFF arrays whose
+ * axes are not in ImageJ order.
+ * <p>
+ * Copying through a permuted view walks the source with large strides. Here,
+ * each decoded cell is instead transposed as a whole: rows along the target
+ * x axis are written contiguously while reading from the cell, which is small
+ * enough to stay in cache. Cells are copied in parallel.
+ * <p>
+ * float64 cells are narrowed to float32, packed uint32 cells are copied as
+ * ARGB, and int32, uint32 and int64 cells are mapped to uint16 through a
+ * look-up table while they are transposed, using the bulk kernels in
+ * {@link ArrayConverters}.
+ */
+public class TransposingBlockCopy {
+
+	/**
+	 * Copies one row of a cell into a plane of the target.
+	 */
+	@FunctionalInterface
+	private static interface RowKernel {
+
+		void copy(Object src, int srcOffset, int srcStride, Object dst, int dstOffset, int dstStep, int length);
+	}
+
+	private static final RowKernel BYTE_KERNEL = (src, srcOffset, srcStride, dst, dstOffset, dstStep, length) -> {
+		final byte[] s = (byte[])src;
+		final byte[] d = (byte[])dst;
+		for (int i = 0, si = srcOffset, di = dstOffset; i < length; i++, si += srcStride, di += dstStep)
+			d[di] = s[si];
+	};
+
+	private static final RowKernel SHORT_KERNEL = (src, srcOffset, srcStride, dst, dstOffset, dstStep, length) -> {
+		final short[] s = (short[])src;
+		final short[] d = (short[])dst;
+		for (int i = 0, si = srcOffset, di = dstOffset; i < length; i++, si += srcStride, di += dstStep)
+			d[di] = s[si];
+	};
+
+	private static final RowKernel INT_KERNEL = (src, srcOffset, srcStride, dst, dstOffset, dstStep, length) ->
+			ArrayConverters.uint32ToARGB((int[])src, srcOffset, srcStride, (int[])dst, dstOffset, dstStep, length);
+
+	private static final RowKernel FLOAT_KERNEL = (src, srcOffset, srcStride, dst, dstOffset, dstStep, length) -> {
+		final float[] s = (float[])src;
+		final float[] d = (float[])dst;
+		for (int i = 0, si = srcOffset, di = dstOffset; i < length; i++, si += srcStride, di += dstStep)
+			d[di] = s[si];
+	};
+
+	private static final RowKernel DOUBLE_TO_FLOAT_KERNEL = (src, srcOffset, srcStride, dst, dstOffset, dstStep, length) ->
+			ArrayConverters.doubleToFloat((double[])src, srcOffset, srcStride, (float[])dst, dstOffset, dstStep, length);
+
+	private final CachedCellImg<?, ?> source;
+
+	// sorted values that integer cells are mapped through to uint16, or null
+	private final long[] lut;
+
+	private final boolean unsignedLut;
+
+	private final ImagePlusImg<?, ?> target;
+
+	private final long[] targetStrides;
+
+	private final int planeSize;
+
+	// for each source axis, the target axis it maps to, or -1
+	private final int[] targetAxis;
+
+	// for each source axis, +1 or -1
+	private final int[] sign;
+
+	// the source position of the target origin
+	private final long[] offset;
+
+	private final long[] sourceMin;
+
+	private final long[] sourceMax;
+
+	/**
+	 * @param source
+	 *            the cell image
+	 * @param toTarget
+	 *            the view transformations that turn the source into an image
+	 *            with the target's axis order. Must only permute, reverse,
+	 *            crop, or add singleton axes.
+	 * @param target
+	 *            the target
+	 */
+	public TransposingBlockCopy(
+			final CachedCellImg<?, ?> source,
+			final UnaryOperator<RandomAccessibleInterval<?>> toTarget,
+			final ImagePlusImg<?, ?> target) {
+
+		this(source, toTarget, target, null);
+	}
+
+	/**
+	 * @param source
+	 *            the cell image
+	 * @param toTarget
+	 *            the view transformations that turn the source into an image
+	 *            with the target's axis order. Must only permute, reverse,
+	 *            crop, or add singleton axes.
+	 * @param target
+	 *            the target
+	 * @param lut
+	 *            the sorted values that int32, uint32 or int64 cells are
+	 *            mapped through to a uint16 target, as
+	 *            {@link UnsignedShortLUTConverter#values()}, may be null
+	 */
+	public TransposingBlockCopy(
+			final CachedCellImg<?, ?> source,
+			final UnaryOperator<RandomAccessibleInterval<?>> toTarget,
+			final ImagePlusImg<?, ?> target,
+			final long[] lut) {
+
+		this.source = source;
+		this.target = target;
+		this.lut = lut;
+		// int32 values never exceed the int range, and uint32 values within
+		// it are the same when read as signed
+		unsignedLut = lut != null && lut.length > 0 && lut[lut.length - 1] > Integer.MAX_VALUE;
+
+		final int nt = target.numDimensions();
+		targetStrides = new long[nt];
+		long stride = 1;
+		for (int k = 0; k < nt; k++) {
+			targetStrides[k] = stride;
+			stride *= target.dimension(k);
+		}
+		planeSize = (int)(nt < 2 ? target.dimension(0) : target.dimension(0) * target.dimension(1));
+
+		final int ns = source.numDimensions();
+		targetAxis = new int[ns];
+		sign = new int[ns];
+		offset = new long[ns];
+		sourceMin = new long[ns];
+		sourceMax = new long[ns];
+		mapAxes(toTarget);
+	}
+
+	/**
+	 * Finds where the source axes end up in the target by applying the view
+	 * transformations to an image whose values are the flat source indexes.
+	 */
+	private void mapAxes(final UnaryOperator<RandomAccessibleInterval<?>> toTarget) {
+
+		final int ns = source.numDimensions();
+		final long[] dims = Intervals.dimensionsAsLongArray(source);
+		final long[] sourceStrides = new long[ns];
+		long stride = 1;
+		for (int d = 0; d < ns; d++) {
+			sourceStrides[d] = stride;
+			stride *= dims[d];
+		}
+
+		final FunctionRandomAccessible<LongType> flatIndex = new FunctionRandomAccessible<>(ns, (pos, t) -> {
+			long i = 0;
+			for (int d = 0; d < ns; d++)
+				i += pos.getLongPosition(d) * sourceStrides[d];
+			t.set(i);
+		}, LongType::new);
+
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<LongType> probe = (RandomAccessibleInterval<LongType>)toTarget.apply(
+				Views.interval(flatIndex, new FinalInterval(dims)));
+
+		if (probe.numDimensions() != target.numDimensions())
+			throw new IllegalArgumentException("View transformations do not produce the target dimensionality");
+
+		final RandomAccess<LongType> ra = probe.randomAccess();
+		final long[] origin = Intervals.minAsLongArray(probe);
+		ra.setPosition(origin);
+		final long originIndex = ra.get().get();
+
+		// decode the source position of the target origin
+		long rem = originIndex;
+		for (int d = ns - 1; d >= 0; d--) {
+			offset[d] = rem / sourceStrides[d];
+			rem = rem % sourceStrides[d];
+		}
+
+		for (int d = 0; d < ns; d++) {
+			targetAxis[d] = -1;
+			sign[d] = 1;
+			sourceMin[d] = offset[d];
+			sourceMax[d] = offset[d];
+		}
+
+		for (int k = 0; k < probe.numDimensions(); k++) {
+			if (probe.dimension(k) < 2)
+				continue;
+
+			ra.setPosition(origin);
+			ra.fwd(k);
+			final long diff = ra.get().get() - originIndex;
+			for (int d = 0; d < ns; d++) {
+				if (dims[d] > 1 && Math.abs(diff) == sourceStrides[d]) {
+					targetAxis[d] = k;
+					sign[d] = diff > 0 ? 1 : -1;
+					final long extent = probe.dimension(k) - 1;
+					sourceMin[d] = sign[d] > 0 ? offset[d] : offset[d] - extent;
+					sourceMax[d] = sign[d] > 0 ? offset[d] + extent : offset[d];
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns true if a kernel exists for the storage type of the target and
+	 * rows along the target x axis can be copied.
+	 *
+	 * @return whether this copy can be run
+	 */
+	public boolean isSupported() {
+
+		final Object sourceArray = ((ArrayDataAccess<?>)source.getAccessType()).getCurrentStorageArray();
+		if (kernel(sourceArray, target.getPlane(0).getCurrentStorageArray()) == null)
+			return false;
+
+		for (int d = 0; d < targetAxis.length; d++)
+			if (targetAxis[d] == 0)
+				return true;
+
+		return false;
+	}
+
+	private RowKernel kernel(final Object src, final Object dst) {
+
+		if (src instanceof double[] && dst instanceof float[])
+			return DOUBLE_TO_FLOAT_KERNEL;
+
+		if (lut != null && dst instanceof short[]) {
+			if (src instanceof int[])
+				return (s, srcOffset, srcStride, d, dstOffset, dstStep, length) -> ArrayConverters.int32ToUShortLUT(
+						(int[])s, srcOffset, srcStride, (short[])d, dstOffset, dstStep, length, lut, unsignedLut);
+			else if (src instanceof long[])
+				return (s, srcOffset, srcStride, d, dstOffset, dstStep, length) -> ArrayConverters.int64ToUShortLUT(
+						(long[])s, srcOffset, srcStride, (short[])d, dstOffset, dstStep, length, lut);
+			else
+				return null;
+		}
+
+		if (src.getClass() != dst.getClass())
+			return null;
+
+		final Object array = dst;
+		if (array instanceof byte[])
+			return BYTE_KERNEL;
+		else if (array instanceof short[])
+			return SHORT_KERNEL;
+		else if (array instanceof int[])
+			return INT_KERNEL;
+		else if (array instanceof float[])
+			return FLOAT_KERNEL;
+		else
+			return null;
+	}
+
+	/**
+	 * Copies all cells that intersect the target, in parallel.
+	 *
+	 * @param exec
+	 *            the executor
+	 */
+	public void copy(final ExecutorService exec) {
+
+		final CellGrid grid = source.getCellGrid();
+		final int ns = source.numDimensions();
+		final int[] cellDims = new int[ns];
+		grid.cellDimensions(cellDims);
+
+		final long[] gridMin = new long[ns];
+		final long[] gridMax = new long[ns];
+		for (int d = 0; d < ns; d++) {
+			gridMin[d] = sourceMin[d] / cellDims[d];
+			gridMax[d] = sourceMax[d] / cellDims[d];
+		}
+
+		final List<Future<?>> futures = new ArrayList<>();
+		final long[] gridPosition = gridMin.clone();
+		while (true) {
+			final long[] pos = gridPosition.clone();
+			futures.add(exec.submit(() -> copyCell(pos)));
+
+			int d = 0;
+			for (; d < ns; d++) {
+				if (++gridPosition[d] <= gridMax[d])
+					break;
+				gridPosition[d] = gridMin[d];
+			}
+			if (d == ns)
+				break;
+		}
+
+		try {
+			for (final Future<?> f : futures)
+				f.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new N5Exception("Failed to copy blocks", e);
+		}
+	}
+
+	private void copyCell(final long[] gridPosition) {
+
+		final int ns = source.numDimensions();
+		final CellGrid grid = source.getCellGrid();
+		final long[] cellMin = new long[ns];
+		final int[] cellDims = new int[ns];
+		grid.getCellDimensions(gridPosition, cellMin, cellDims);
+
+		final RandomAccess<? extends Cell<?>> cells = source.getCells().randomAccess();
+		cells.setPosition(gridPosition);
+		final Object src = ((ArrayDataAccess<?>)cells.get().getData()).getCurrentStorageArray();
+		final Object dst0 = target.getPlane(0).getCurrentStorageArray();
+		final RowKernel kernel = kernel(src, dst0);
+
+		// the part of the cell that lies in the target
+		final long[] min = new long[ns];
+		final long[] max = new long[ns];
+		for (int d = 0; d < ns; d++) {
+			min[d] = Math.max(cellMin[d], sourceMin[d]);
+			max[d] = Math.min(cellMin[d] + cellDims[d] - 1, sourceMax[d]);
+			if (max[d] < min[d])
+				return;
+		}
+
+		final int[] cellStrides = new int[ns];
+		int stride = 1;
+		for (int d = 0; d < ns; d++) {
+			cellStrides[d] = stride;
+			stride *= cellDims[d];
+		}
+
+		// rows run along the source axis that maps to the target x axis
+		int rowAxis = 0;
+		for (int d = 0; d < ns; d++)
+			if (targetAxis[d] == 0)
+				rowAxis = d;
+
+		final int rowLength = (int)(max[rowAxis] - min[rowAxis] + 1);
+		final int dstStep = sign[rowAxis];
+
+		final long[] pos = min.clone();
+		while (true) {
+			long targetIndex = 0;
+			int srcOffset = 0;
+			for (int d = 0; d < ns; d++) {
+				srcOffset += (int)(pos[d] - cellMin[d]) * cellStrides[d];
+				if (targetAxis[d] >= 0)
+					targetIndex += sign[d] * (pos[d] - offset[d]) * targetStrides[targetAxis[d]];
+			}
+
+			final int plane = (int)(targetIndex / planeSize);
+			final int dstOffset = (int)(targetIndex % planeSize);
+			kernel.copy(src, srcOffset, cellStrides[rowAxis],
+					target.getPlane(plane).getCurrentStorageArray(), dstOffset, dstStep, rowLength);
+
+			int d = 0;
+			for (; d < ns; d++) {
+				if (d == rowAxis)
+					continue;
+				if (++pos[d] <= max[d])
+					break;
+				pos[d] = min[d];
+			}
+			if (d == ns)
+				break;
+		}
+	}
+
+}
@@ -0,0 +1,476 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.metadata;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+import org.janelia.saalfeldlab.n5.N5URI;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.AnonymousAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.regions.DefaultAwsRegionProviderChain;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageOptions;
+
+import ij.Prefs;
+
+/**
+ * Works out the groups and datasets of a container in an object store from
+ * one flat listing of all keys below its root, instead of listing every
+ * group separately.
+ * <p>
+ * Object stores list keys in pages of up to a thousand. Groups and datasets
+ * are the prefixes of metadata keys ({@code attributes.json},
+ * {@code .zarray}, {@code .zgroup}, {@code .zattrs} and {@code zarr.json})
+ * and their ancestors; all other keys, such as chunks, are skipped. The
+ * listing stops when the listing thread is interrupted.
+ * <p>
+ * S3 ({@code s3://} and {@code https://*.amazonaws.com}) and Google Cloud
+ * Storage ({@code gs://} and {@code https://storage.googleapis.com}) are
+ * supported. Other {@code http(s)://} hosts are only listed if they are the
+ * S3 compatible endpoint set with {@value #ENDPOINT_KEY}, for example
+ * {@code http://localhost:9000}, with path style access; any other web server
+ * is never sent a listing request.
+ * <p>
+ * S3 is listed without credentials, the same way the readers of the
+ * {@link org.janelia.saalfeldlab.n5.cache.N5SessionPool} are opened by
+ * {@link org.janelia.saalfeldlab.n5.universe.N5Factory}, so no access keys
+ * are sent along.
+ *
+ * @see org.janelia.saalfeldlab.n5.ui.IncrementalTreeLoader
+ */
+public class FlatListingDiscovery {
+
+	public static final String ENABLED_KEY = "n5.discovery.flatlisting";
+
+	/**
+	 * The preference that holds the endpoint of an S3 compatible store, as
+	 * {@code scheme://host[:port]}, that may be listed flat.
+	 */
+	public static final String ENDPOINT_KEY = "n5.discovery.s3endpoint";
+
+	/**
+	 * The most metadata keys that are listed before giving up.
+	 */
+	public static final int MAX_KEYS = 1000000;
+
+	public static final Set<String> METADATA_KEYS = new HashSet<>(
+			Arrays.asList("attributes.json", ".zarray", ".zgroup", ".zattrs", "zarr.json"));
+
+	private static Storage googleCloudStorage;
+
+	private FlatListingDiscovery() {}
+
+	/**
+	 * Lists all keys below a prefix of a container. Closing a lister releases
+	 * the client it created.
+	 */
+	@FunctionalInterface
+	public interface KeyLister extends AutoCloseable {
+
+		/**
+		 * Lists all keys that start with the given prefix.
+		 *
+		 * @param prefix
+		 *            the prefix, relative to the root of the container
+		 * @param keys
+		 *            receives the keys, relative to the root of the container
+		 * @throws IOException
+		 *             if listing fails or is interrupted
+		 */
+		void list(String prefix, Consumer<String> keys) throws IOException;
+
+		@Override
+		default void close() {}
+	}
+
+	/**
+	 * Where a container is stored in an object store.
+	 */
+	public static class Location {
+
+		public enum Store {
+			S3, GOOGLE_CLOUD
+		}
+
+		public final Store store;
+
+		/**
+		 * The endpoint of an S3 compatible store, or null for the default
+		 * endpoint.
+		 */
+		public final String endpoint;
+
+		public final String bucket;
+
+		public final String key;
+
+		public Location(final Store store, final String endpoint, final String bucket, final String key) {
+
+			this.store = store;
+			this.endpoint = endpoint;
+			this.bucket = bucket;
+			this.key = key;
+		}
+	}
+
+	/**
+	 * @param uri
+	 *            the uri of a container
+	 * @return whether the container may be in an object store that can be
+	 *         listed flat
+	 */
+	public static boolean isSupported(final URI uri) {
+
+		return location(uri).isPresent();
+	}
+
+	/**
+	 * Works out the store, bucket and key of a container from its uri, with
+	 * the S3 compatible endpoint set in the preferences.
+	 *
+	 * @param uri
+	 *            the uri of a container
+	 * @return the location, or empty if the uri is not one of an object store
+	 */
+	public static Optional<Location> location(final URI uri) {
+
+		return location(uri, Prefs.get(ENDPOINT_KEY, ""));
+	}
+
+	/**
+	 * Works out the store, bucket and key of a container from its uri.
+	 *
+	 * @param uri
+	 *            the uri of a container
+	 * @param endpoint
+	 *            the S3 compatible endpoint whose containers may be listed, as
+	 *            {@code scheme://host[:port]}, may be null or empty
+	 * @return the location, or empty if the uri is not one of an object store
+	 */
+	public static Optional<Location> location(final URI uri, final String endpoint) {
+
+		final String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+		if (uri.getHost() == null ||
+				!(scheme.equals("s3") || scheme.equals("gs") || scheme.equals("http") || scheme.equals("https")))
+			return Optional.empty();
+
+		final String host = uri.getHost().toLowerCase(Locale.ROOT);
+		final String path = uri.getPath() == null ? "" : N5URI.normalizeGroupPath(uri.getPath());
+		if (scheme.equals("gs"))
+			return Optional.of(new Location(Location.Store.GOOGLE_CLOUD, null, uri.getHost(), path));
+		else if (scheme.equals("s3"))
+			return Optional.of(new Location(Location.Store.S3, null, uri.getHost(), path));
+
+		// path style http(s)://host/bucket/key
+		final int slash = path.indexOf('/');
+		final String bucket = slash < 0 ? path : path.substring(0, slash);
+		final String key = slash < 0 ? "" : path.substring(slash + 1);
+		final boolean https = scheme.equals("https");
+		if (https && host.equals("storage.googleapis.com"))
+			return Optional.of(new Location(Location.Store.GOOGLE_CLOUD, null, bucket, key));
+		else if (https && host.endsWith(".amazonaws.com")) {
+			// virtual hosted https://bucket.s3.region.amazonaws.com/key
+			final int s3 = host.indexOf(".s3");
+			if (s3 > 0)
+				return Optional.of(new Location(Location.Store.S3, null, uri.getHost().substring(0, s3), path));
+
+			return Optional.of(new Location(Location.Store.S3, null, bucket, key));
+		}
+
+		// other web servers only if they are the configured endpoint
+		final String uriEndpoint = scheme + "://" + host + (uri.getPort() < 0 ? "" : ":" + uri.getPort());
+		if (bucket.isEmpty() || endpoint == null || !uriEndpoint.equals(normalizeEndpoint(endpoint)))
+			return Optional.empty();
+
+		return Optional.of(new Location(Location.Store.S3, uriEndpoint, bucket, key));
+	}
+
+	private static String normalizeEndpoint(final String endpoint) {
+
+		String normalized = endpoint.trim().toLowerCase(Locale.ROOT);
+		while (normalized.endsWith("/"))
+			normalized = normalized.substring(0, normalized.length() - 1);
+
+		return normalized;
+	}
+
+	/**
+	 * Creates a lister for the container at the given uri. S3 listers own a
+	 * client that is shut down when they are closed, Google Cloud Storage
+	 * listers share one client.
+	 *
+	 * @param uri
+	 *            the uri of a container
+	 * @return the lister, or empty if the container is not in a supported
+	 *         object store
+	 */
+	public static Optional<KeyLister> lister(final URI uri) {
+
+		return location(uri).map(location -> location.store == Location.Store.GOOGLE_CLOUD
+				? new GoogleCloudKeyLister(googleCloudStorage(), location.bucket, location.key)
+				: new S3KeyLister(createS3(location.endpoint), location.bucket, location.key, true));
+	}
+
+	/**
+	 * Lists the groups and datasets below the given path from one flat
+	 * listing of keys.
+	 *
+	 * @param lister
+	 *            the lister
+	 * @param rootPath
+	 *            the path to list below
+	 * @return the paths of groups and datasets, relative to the root path,
+	 *         parents before their children
+	 * @throws IOException
+	 *             if listing fails, is interrupted, or finds more than
+	 *             {@link #MAX_KEYS} metadata keys
+	 */
+	public static String[] deepList(final KeyLister lister, final String rootPath) throws IOException {
+
+		final String normRoot = N5URI.normalizeGroupPath(rootPath);
+		final String prefix = normRoot.isEmpty() ? "" : normRoot + "/";
+		final TreeSet<String> nodes = new TreeSet<>();
+		final int[] count = new int[1];
+		try {
+			lister.list(prefix, key -> {
+				if (addNode(nodes, prefix, key) && ++count[0] > MAX_KEYS)
+					throw new StopListing();
+			});
+		} catch (final StopListing e) {
+			throw new IOException("More than " + MAX_KEYS + " metadata keys below " + normRoot);
+		}
+
+		return nodes.toArray(new String[0]);
+	}
+
+	/**
+	 * Lists the children of all groups below the given path from one flat
+	 * listing of keys.
+	 *
+	 * @param lister
+	 *            the lister
+	 * @param rootPath
+	 *            the path to list below
+	 * @return the names of the children of each group that has any, by the
+	 *         normalized path of the group
+	 * @throws IOException
+	 *             if listing fails, is interrupted, or finds more than
+	 *             {@link #MAX_KEYS} metadata keys
+	 */
+	public static Map<String, List<String>> listChildren(final KeyLister lister, final String rootPath) throws IOException {
+
+		final String normRoot = N5URI.normalizeGroupPath(rootPath);
+		final Map<String, List<String>> children = new HashMap<>();
+		for (final String relative : deepList(lister, normRoot)) {
+			final String path = normRoot.isEmpty() ? relative : normRoot + "/" + relative;
+			final int slash = path.lastIndexOf('/');
+			final String parent = slash < 0 ? "" : path.substring(0, slash);
+			children.computeIfAbsent(parent, x -> new ArrayList<>()).add(path.substring(slash + 1));
+		}
+		return children;
+	}
+
+	/**
+	 * Adds the node of a metadata key and its ancestors below the root.
+	 *
+	 * @return whether the key is a metadata key
+	 */
+	private static boolean addNode(final Set<String> nodes, final String prefix, final String key) {
+
+		if (!key.startsWith(prefix))
+			return false;
+
+		final String relative = key.substring(prefix.length());
+		final int slash = relative.lastIndexOf('/');
+		if (!METADATA_KEYS.contains(relative.substring(slash + 1)))
+			return false;
+
+		String path = slash < 0 ? "" : relative.substring(0, slash);
+		while (!path.isEmpty() && nodes.add(path)) {
+			final int i = path.lastIndexOf('/');
+			path = i < 0 ? "" : path.substring(0, i);
+		}
+		return true;
+	}
+
+	private static synchronized Storage googleCloudStorage() {
+
+		if (googleCloudStorage == null)
+			googleCloudStorage = StorageOptions.getDefaultInstance().getService();
+
+		return googleCloudStorage;
+	}
+
+	private static AmazonS3 createS3(final String endpoint) {
+
+		// anonymous, as the pooled readers that open the container
+		final AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard()
+				.withCredentials(new AWSStaticCredentialsProvider(new AnonymousAWSCredentials()));
+		if (endpoint != null)
+			return builder.withEndpointConfiguration(new EndpointConfiguration(endpoint, "us-east-1"))
+					.withPathStyleAccessEnabled(true)
+					.build();
+
+		String region;
+		try {
+			region = new DefaultAwsRegionProviderChain().getRegion();
+		} catch (final SdkClientException e) {
+			region = "us-east-1";
+		}
+		return builder.withRegion(region).withForceGlobalBucketAccessEnabled(true).build();
+	}
+
+	private static String withSlash(final String key) {
+
+		return key.isEmpty() || key.endsWith("/") ? key : key + "/";
+	}
+
+	private static void checkInterrupted() throws InterruptedIOException {
+
+		if (Thread.currentThread().isInterrupted())
+			throw new InterruptedIOException("Listing interrupted");
+	}
+
+	/**
+	 * Lists keys of a container in an S3 bucket, a page of up to a thousand
+	 * keys per request.
+	 */
+	public static class S3KeyLister implements KeyLister {
+
+		private final AmazonS3 s3;
+
+		private final String bucket;
+
+		private final String containerKey;
+
+		private final boolean shutdown;
+
+		/**
+		 * @param s3
+		 *            the client
+		 * @param bucket
+		 *            the bucket
+		 * @param containerKey
+		 *            the key of the root of the container
+		 * @param shutdown
+		 *            whether closing the lister shuts the client down
+		 */
+		public S3KeyLister(final AmazonS3 s3, final String bucket, final String containerKey, final boolean shutdown) {
+
+			this.s3 = s3;
+			this.bucket = bucket;
+			this.containerKey = withSlash(containerKey);
+			this.shutdown = shutdown;
+		}
+
+		@Override
+		public void list(final String prefix, final Consumer<String> keys) throws IOException {
+
+			final ListObjectsV2Request request = new ListObjectsV2Request()
+					.withBucketName(bucket)
+					.withPrefix(containerKey + prefix);
+
+			ListObjectsV2Result result;
+			do {
+				checkInterrupted();
+				result = s3.listObjectsV2(request);
+				for (final S3ObjectSummary object : result.getObjectSummaries())
+					keys.accept(object.getKey().substring(containerKey.length()));
+
+				request.setContinuationToken(result.getNextContinuationToken());
+			} while (result.isTruncated());
+		}
+
+		@Override
+		public void close() {
+
+			if (shutdown)
+				s3.shutdown();
+		}
+	}
+
+	/**
+	 * Lists keys of a container in a Google Cloud Storage bucket, a page at a
+	 * time.
+	 */
+	public static class GoogleCloudKeyLister implements KeyLister {
+
+		private final Storage storage;
+
+		private final String bucket;
+
+		private final String containerKey;
+
+		public GoogleCloudKeyLister(final Storage storage, final String bucket, final String containerKey) {
+
+			this.storage = storage;
+			this.bucket = bucket;
+			this.containerKey = withSlash(containerKey);
+		}
+
+		@Override
+		public void list(final String prefix, final Consumer<String> keys) throws IOException {
+
+			for (final Blob blob : storage.list(bucket, Storage.BlobListOption.prefix(containerKey + prefix)).iterateAll()) {
+				checkInterrupted();
+				keys.accept(blob.getName().substring(containerKey.length()));
+			}
+		}
+	}
+
+	private static class StopListing extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		StopListing() {
+
+			super(null, null, false, false);
+		}
+	}
+
+}
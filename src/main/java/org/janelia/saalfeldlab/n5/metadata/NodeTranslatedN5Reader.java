@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.metadata;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GsonN5Reader;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+
+/**
+ * An {@link N5Reader} that presents the attributes of another reader after a
+ * {@link NodeTranslation}.
+ * <p>
+ * Nodes are translated when their attributes are first read, and the most
+ * recently used translations are kept, so that memory use does not depend
+ * on the size of the container. Listing and blocks are read from the
+ * underlying reader.
+ */
+public class NodeTranslatedN5Reader implements GsonN5Reader {
+
+	public static final int DEFAULT_MAX_CACHED = 4096;
+
+	private final N5Reader n5;
+
+	private final Gson gson;
+
+	private final NodeTranslation translation;
+
+	private final Map<String, JsonElement> cache;
+
+	public NodeTranslatedN5Reader(final N5Reader n5, final Gson gson, final NodeTranslation translation) {
+
+		this(n5, gson, translation, DEFAULT_MAX_CACHED);
+	}
+
+	public NodeTranslatedN5Reader(final N5Reader n5, final Gson gson, final NodeTranslation translation, final int maxCached) {
+
+		this.n5 = n5;
+		this.gson = gson;
+		this.translation = translation;
+		cache = new LinkedHashMap<String, JsonElement>(64, 0.75f, true) {
+
+			private static final long serialVersionUID = -2375036511693617417L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, JsonElement> eldest) {
+
+				return size() > maxCached;
+			}
+		};
+	}
+
+	public N5Reader getUnderlyingReader() {
+
+		return n5;
+	}
+
+	public NodeTranslation getTranslation() {
+
+		return translation;
+	}
+
+	@Override
+	public Gson getGson() {
+
+		return gson;
+	}
+
+	@Override
+	public String getAttributesKey() {
+
+		return n5 instanceof GsonN5Reader ? ((GsonN5Reader)n5).getAttributesKey() : "attributes.json";
+	}
+
+	@Override
+	public JsonElement getAttributes(final String pathName) throws N5Exception {
+
+		final String path = N5URI.normalizeGroupPath(pathName);
+		synchronized (cache) {
+			final JsonElement cached = cache.get(path);
+			if (cached != null)
+				return cached.isJsonNull() ? null : cached;
+		}
+
+		// translate outside of the lock, concurrent translations of the same node agree
+		final JsonElement translated;
+		try {
+			translated = translation.translate(n5, path);
+		} catch (final IOException e) {
+			throw new N5Exception("Failed to translate the attributes of " + path, e);
+		}
+
+		synchronized (cache) {
+			cache.put(path, translated == null ? JsonNull.INSTANCE : translated);
+		}
+		return translated;
+	}
+
+	/**
+	 * Discards the cached translations.
+	 */
+	public void invalidate() {
+
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	@Override
+	public DataBlock<?> readBlock(final String pathName, final DatasetAttributes datasetAttributes, final long... gridPosition)
+			throws N5Exception {
+
+		return n5.readBlock(pathName, datasetAttributes, gridPosition);
+	}
+
+	@Override
+	public boolean exists(final String pathName) {
+
+		return n5.exists(pathName);
+	}
+
+	@Override
+	public String[] list(final String pathName) throws N5Exception {
+
+		return n5.list(pathName);
+	}
+
+	@Override
+	public URI getURI() {
+
+		return n5.getURI();
+	}
+
+	@Override
+	public String getGroupSeparator() {
+
+		return n5.getGroupSeparator();
+	}
+
+	@Override
+	public void close() {
+
+		invalidate();
+		n5.close();
+	}
+
+}
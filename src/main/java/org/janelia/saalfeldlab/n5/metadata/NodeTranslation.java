@@ -0,0 +1,338 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.metadata;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.GsonN5Reader;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.metadata.imagej.MetadataTemplateMapper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import net.thisptr.jackson.jq.JsonQuery;
+import net.thisptr.jackson.jq.Scope;
+
+/**
+ * Translates the attributes of the nodes of a container one node at a time.
+ * <p>
+ * Unlike a translation of the whole container tree, the jq expression is
+ * applied to the attributes of every node separately, with the path of the
+ * node bound to {@code $path}. Its first output replaces the attributes of
+ * the node, no output or {@code null} removes them. This is a different
+ * dialect than the translation of the whole tree: expressions see one node
+ * only, and can not refer to its parent, siblings or children. Because nodes
+ * do not depend on each other, they are read and translated in parallel.
+ * <p>
+ * Translated trees are json objects of the form
+ *
+ * <pre>
+ * { "attributes": { ... }, "children": { "name": { ... }, ... } }
+ * </pre>
+ */
+public class NodeTranslation {
+
+	public static final String ATTRIBUTES = "attributes";
+
+	public static final String CHILDREN = "children";
+
+	/**
+	 * The most nodes per group that {@link #writeTree} translates ahead of
+	 * writing them.
+	 */
+	public static final int WINDOW = 64;
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final JsonQuery query;
+
+	/**
+	 * @param query
+	 *            the jq expression applied to the attributes of each node
+	 * @throws IOException
+	 *             if the expression is invalid
+	 */
+	public NodeTranslation(final String query) throws IOException {
+
+		this.query = MetadataTemplateMapper.compile(query);
+	}
+
+	/**
+	 * Translates the attributes of one node.
+	 *
+	 * @param path
+	 *            the path of the node
+	 * @param attributes
+	 *            the attributes of the node, may be null
+	 * @return the translated attributes, or null
+	 * @throws IOException
+	 *             if the translation fails
+	 */
+	public JsonElement translate(final String path, final JsonElement attributes) throws IOException {
+
+		final Scope scope = Scope.newChildScope(MetadataTemplateMapper.rootScope());
+		scope.setValue("path", new TextNode(path));
+
+		final JsonNode in = attributes == null || attributes.isJsonNull()
+				? NullNode.getInstance()
+				: MAPPER.readTree(attributes.toString());
+
+		final List<JsonNode> out = new ArrayList<>(1);
+		query.apply(scope, in, out::add);
+		if (out.isEmpty() || out.get(0).isNull())
+			return null;
+
+		return new JsonParser().parse(out.get(0).toString());
+	}
+
+	/**
+	 * Reads and translates the attributes of one node of a container.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param path
+	 *            the path of the node
+	 * @return the translated attributes, or null
+	 * @throws IOException
+	 *             if reading or the translation fails
+	 */
+	public JsonElement translate(final N5Reader n5, final String path) throws IOException {
+
+		return translate(path, attributes(n5, path));
+	}
+
+	/**
+	 * Translates the node at the given path and all its descendants. Nodes
+	 * are read and translated by the given executor, the children of a group
+	 * in parallel.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param path
+	 *            the path of the root of the translated tree
+	 * @param exec
+	 *            the executor that reads and translates nodes
+	 * @return the translated tree
+	 * @throws IOException
+	 *             if reading or the translation fails
+	 */
+	public JsonObject translateTree(final N5Reader n5, final String path, final ExecutorService exec) throws IOException {
+
+		final String normPath = N5URI.normalizeGroupPath(path);
+		return translateNode(n5, normPath, submit(n5, normPath, exec), exec);
+	}
+
+	private JsonObject translateNode(final N5Reader n5, final String path, final Future<TranslatedNode> future,
+			final ExecutorService exec) throws IOException {
+
+		final TranslatedNode node = get(future);
+		final JsonObject tree = new JsonObject();
+		if (node.attributes != null)
+			tree.add(ATTRIBUTES, node.attributes);
+
+		if (node.children.length > 0) {
+			// the whole tree is kept, so all children are read ahead
+			final List<Future<TranslatedNode>> ahead = new ArrayList<>();
+			for (final String name : node.children)
+				ahead.add(submit(n5, child(path, name), exec));
+
+			final JsonObject children = new JsonObject();
+			try {
+				for (int i = 0; i < node.children.length; i++)
+					children.add(node.children[i], translateNode(n5, child(path, node.children[i]), ahead.get(i), exec));
+			} finally {
+				for (final Future<TranslatedNode> f : ahead)
+					f.cancel(true);
+			}
+			tree.add(CHILDREN, children);
+		}
+		return tree;
+	}
+
+	/**
+	 * Translates the node at the given path and all its descendants, and
+	 * writes the translated tree as it goes. Nodes are read and translated
+	 * ahead of writing them by the given executor, at most {@link #WINDOW}
+	 * per level of the tree, so memory use does not depend on the size of
+	 * the tree.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param path
+	 *            the path of the root of the translated tree
+	 * @param gson
+	 *            the gson used to write attributes
+	 * @param writer
+	 *            the writer
+	 * @param exec
+	 *            the executor that reads and translates nodes
+	 * @throws IOException
+	 *             if reading, the translation or writing fails
+	 */
+	public void writeTree(final N5Reader n5, final String path, final Gson gson, final JsonWriter writer,
+			final ExecutorService exec) throws IOException {
+
+		final String normPath = N5URI.normalizeGroupPath(path);
+		writeNode(n5, normPath, submit(n5, normPath, exec), gson, writer, exec);
+		writer.flush();
+	}
+
+	private void writeNode(final N5Reader n5, final String path, final Future<TranslatedNode> future, final Gson gson,
+			final JsonWriter writer, final ExecutorService exec) throws IOException {
+
+		final TranslatedNode node = get(future);
+		writer.beginObject();
+		if (node.attributes != null) {
+			writer.name(ATTRIBUTES);
+			gson.toJson(node.attributes, writer);
+		}
+
+		if (node.children.length > 0) {
+			writer.name(CHILDREN);
+			writer.beginObject();
+			final ArrayDeque<Future<TranslatedNode>> ahead = new ArrayDeque<>();
+			int next = 0;
+			try {
+				for (final String name : node.children) {
+					while (next < node.children.length && ahead.size() < WINDOW)
+						ahead.add(submit(n5, child(path, node.children[next++]), exec));
+
+					writer.name(name);
+					writeNode(n5, child(path, name), ahead.poll(), gson, writer, exec);
+				}
+			} finally {
+				for (final Future<TranslatedNode> f : ahead)
+					f.cancel(true);
+			}
+			writer.endObject();
+		}
+		writer.endObject();
+	}
+
+	private Future<TranslatedNode> submit(final N5Reader n5, final String path, final ExecutorService exec) {
+
+		return exec.submit(() -> new TranslatedNode(translate(n5, path), children(n5, path)));
+	}
+
+	private static TranslatedNode get(final Future<TranslatedNode> future) throws IOException {
+
+		try {
+			return future.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the attributes of a node as a json object.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param path
+	 *            the path of the node
+	 * @return the attributes, or null if the node has none
+	 */
+	public static JsonElement attributes(final N5Reader n5, final String path) {
+
+		if (n5 instanceof GsonN5Reader)
+			return ((GsonN5Reader)n5).getAttributes(path);
+
+		final Map<String, Class<?>> keys = n5.listAttributes(path);
+		if (keys == null || keys.isEmpty())
+			return null;
+
+		final JsonObject attributes = new JsonObject();
+		for (final String key : keys.keySet()) {
+			final JsonElement value = n5.getAttribute(path, key, JsonElement.class);
+			attributes.add(key, value == null ? JsonNull.INSTANCE : value);
+		}
+		return attributes;
+	}
+
+	/**
+	 * Lists the children of a group, datasets have none.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param path
+	 *            the path of the node
+	 * @return the names of the children
+	 */
+	public static String[] children(final N5Reader n5, final String path) {
+
+		if (n5.datasetExists(path))
+			return new String[0];
+
+		try {
+			return n5.list(path);
+		} catch (final N5Exception e) {
+			return new String[0];
+		}
+	}
+
+	static String child(final String parentPath, final String name) {
+
+		return parentPath.isEmpty() ? name : parentPath + "/" + name;
+	}
+
+	private static class TranslatedNode {
+
+		final JsonElement attributes;
+
+		final String[] children;
+
+		TranslatedNode(final JsonElement attributes, final String[] children) {
+
+			this.attributes = attributes;
+			this.children = children;
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.metadata;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+
+/**
+ * Parses the metadata of one known node of a container without discovering
+ * the whole container.
+ * <p>
+ * Only the node itself, its immediate children, its siblings and its
+ * ancestors are parsed, which is what single scale, multiscale and OME-NGFF
+ * group parsers need to describe it. Ancestors are parsed with only the
+ * child that leads to the node. If the node exists but that does not yield
+ * metadata for it, the node is returned without metadata, and callers
+ * report that it is not a dataset.
+ * <p>
+ * If the node does not exist, an empty tree is returned.
+ */
+public class TargetedMetadataDiscovery {
+
+	/**
+	 * Parents with more children than this are parsed with only the target
+	 * as their child.
+	 */
+	public static final int MAX_SIBLINGS = 1024;
+
+	private TargetedMetadataDiscovery() {}
+
+	/**
+	 * Discovers and parses the metadata needed to describe the node at the
+	 * given path.
+	 *
+	 * @param n5
+	 *            the n5 reader
+	 * @param discoverer
+	 *            the discoverer with the parsers to use
+	 * @param path
+	 *            the path of the node
+	 * @return the root of a tree that contains the node at the given path
+	 * @throws Exception
+	 *             if listing or parsing fails
+	 */
+	public static N5TreeNode discoverAndParse(final N5Reader n5, final N5DatasetDiscoverer discoverer, final String path)
+			throws Exception {
+
+		final String normPath = N5URI.normalizeGroupPath(path);
+		final N5TreeNode root = new N5TreeNode("");
+
+		// nothing to describe
+		if (!n5.exists(normPath))
+			return root;
+
+		final N5TreeNode target;
+		if (normPath.isEmpty())
+			target = root;
+		else {
+			// the chain of ancestors, down to the parent
+			final String[] parts = normPath.split("/");
+			N5TreeNode parent = root;
+			String parentPath = "";
+			for (int i = 0; i < parts.length - 1; i++) {
+				parentPath = child(parentPath, parts[i]);
+				final N5TreeNode node = new N5TreeNode(parentPath);
+				parent.childrenList().add(node);
+				parent = node;
+			}
+
+			// the parent with the siblings of the target
+			target = new N5TreeNode(normPath);
+			final String[] siblings = n5.list(parentPath);
+			if (siblings.length <= MAX_SIBLINGS) {
+				for (final String sibling : siblings) {
+					final String siblingPath = child(parentPath, sibling);
+					parent.childrenList().add(siblingPath.equals(normPath) ? target : new N5TreeNode(siblingPath));
+				}
+			}
+			if (!parent.childrenList().contains(target))
+				parent.childrenList().add(target);
+		}
+
+		// the target with its children
+		if (!n5.datasetExists(normPath)) {
+			for (final String child : n5.list(normPath))
+				target.childrenList().add(new N5TreeNode(child(normPath, child)));
+		}
+
+		discoverer.parseMetadataRecursive(root, x -> {});
+		return root;
+	}
+
+	private static String child(final String parentPath, final String name) {
+
+		return parentPath.isEmpty() ? name : parentPath + "/" + name;
+	}
+
+}
@@ -3,7 +3,12 @@ package org.janelia.saalfeldlab.n5.metadata;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.universe.N5Factory;
@@ -11,6 +16,7 @@ import org.janelia.saalfeldlab.n5.universe.translation.JqUtils;
 import org.janelia.saalfeldlab.n5.universe.translation.TranslatedN5Reader;
 
 import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
 
 import picocli.CommandLine;
 import picocli.CommandLine.Option;
@@ -28,6 +34,12 @@ public class TranslateN5Tree implements Callable<Void> {
 	@Option( names = { "-f", "--translation-file" }, required = false, description = "Translation file." )
 	private String translationFilePath;
 
+	@Option( names = { "-n", "--per-node" }, required = false, description = "Apply the translation to the attributes of each node separately, and write the result as it is translated. The input of the translation is the attributes of one node, with its path in $path, rather than the whole tree." )
+	private boolean perNode = false;
+
+	@Option( names = { "-p", "--threads" }, required = false, description = "Number of threads for per node translation." )
+	private int numThreads = Runtime.getRuntime().availableProcessors();
+
 	@Override
 	public Void call() throws Exception {
 
@@ -44,7 +56,25 @@ public class TranslateN5Tree implements Callable<Void> {
 		}
 
 		final Gson gson = JqUtils.buildGson(n5Base);
-		if( translation == null ) {
+		if( perNode ) {
+			final NodeTranslation nodeTranslation = new NodeTranslation( translation == null ? "." : translation );
+			final ExecutorService exec = Executors.newFixedThreadPool( Math.max( 1, numThreads ), r -> {
+				final Thread t = new Thread(r, "n5-translate");
+				t.setDaemon(true);
+				return t;
+			});
+			try {
+				final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+				final JsonWriter writer = gson.newJsonWriter(out);
+				nodeTranslation.writeTree(n5Base, "", gson, writer, exec);
+				out.write(System.lineSeparator());
+				out.flush();
+			} finally {
+				exec.shutdownNow();
+				n5Base.close();
+			}
+		}
+		else if( translation == null ) {
 			final TranslatedN5Reader n5 = new TranslatedN5Reader(n5Base, gson, ".", ".");
 			System.out.println(gson.toJson(n5.getTranslation().getOrig()));
 			n5.close();
@@ -48,6 +48,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.universe.metadata.N5MetadataWriter;
@@ -66,6 +67,13 @@ public class MetadataTemplateMapper implements N5MetadataWriter<ImagePlusMetadat
 
 	private ObjectMapper objMapper;
 
+	/**
+	 * The most compiled queries kept by {@link #compile(String)}.
+	 */
+	public static final int MAX_CACHED_QUERIES = 256;
+
+	private static final ConcurrentHashMap<String, JsonQuery> QUERIES = new ConcurrentHashMap<>();
+
 	public MetadataTemplateMapper(final Scope scope, final String query) {
 
 		this.scope = scope;
@@ -76,7 +84,7 @@ public class MetadataTemplateMapper implements N5MetadataWriter<ImagePlusMetadat
 
 	public MetadataTemplateMapper( final String query )
 	{
-		this( buildRootScope(), query );
+		this( Scope.newChildScope( rootScope() ), query );
 	}
 	
 	public void setObjectMapper( final ObjectMapper objMapper )
@@ -86,7 +94,29 @@ public class MetadataTemplateMapper implements N5MetadataWriter<ImagePlusMetadat
 	
 	public JsonQuery getQuery() throws JsonQueryException
 	{
-		return JsonQuery.compile( query, Versions.JQ_1_6 );
+		return compile( query );
+	}
+
+	/**
+	 * Compiles a jq expression, or returns the query compiled earlier for the
+	 * same expression. Compiled queries can be applied from several threads.
+	 *
+	 * @param query the jq expression
+	 * @return the compiled query
+	 * @throws JsonQueryException if the expression is invalid
+	 */
+	public static JsonQuery compile( final String query ) throws JsonQueryException
+	{
+		final JsonQuery cached = QUERIES.get( query );
+		if ( cached != null )
+			return cached;
+
+		final JsonQuery compiled = JsonQuery.compile( query, Versions.JQ_1_6 );
+		if ( QUERIES.size() >= MAX_CACHED_QUERIES )
+			QUERIES.clear();
+
+		final JsonQuery previous = QUERIES.putIfAbsent( query, compiled );
+		return previous != null ? previous : compiled;
 	}
 	
 	public Scope getScope()
@@ -126,6 +156,23 @@ public class MetadataTemplateMapper implements N5MetadataWriter<ImagePlusMetadat
 		return new JsonParser().parse( map( input ));
 	}
 
+	/**
+	 * Returns the scope with the builtin and custom functions that is shared by
+	 * all mappers. It must not be modified, define variables or functions in a
+	 * child scope instead, see {@link Scope#newChildScope(Scope)}.
+	 *
+	 * @return the shared root scope
+	 */
+	public static Scope rootScope()
+	{
+		return RootScope.INSTANCE;
+	}
+
+	private static class RootScope
+	{
+		private static final Scope INSTANCE = buildRootScope();
+	}
+
 	public static Scope buildRootScope()
 	{
 		// First of all, you have to prepare a Scope which s a container of built-in/user-defined functions and variables.
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.cache.N5SessionPool;
+
+/**
+ * Checks in the background whether a typed path can be opened as a
+ * container, so that typing the path of a remote or slow store does not
+ * block the user interface.
+ * <p>
+ * A path is checked once it has not changed for a short delay. Results are
+ * kept for a while, so that going back to a recently checked path shows
+ * its result at once. The reader opened by a successful check can be
+ * taken, once, by whatever opens the container next. Readers that are not
+ * taken are released to the {@link N5SessionPool}, which closes them unless
+ * they came from it.
+ * <p>
+ * All methods except {@link #takeReader(String)} have to be called on the
+ * event dispatch thread, and results are reported there.
+ */
+public class ContainerPathValidator {
+
+	public enum State {
+		/** nothing to check */
+		NONE,
+		/** the path is being checked */
+		CHECKING,
+		/** the path can be opened */
+		VALID,
+		/** the path can not be opened */
+		INVALID
+	}
+
+	public static final int DEFAULT_DELAY_MILLIS = 500;
+
+	private static final long MAX_AGE_MILLIS = 30000;
+
+	private static final int MAX_RESULTS = 32;
+
+	private final Function<String, N5Reader> readerFun;
+
+	private final BiConsumer<State, String> onResult;
+
+	private final Timer timer;
+
+	private final ExecutorService exec = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "n5-path-validator");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final Map<String, Result> results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = -2372209317445806154L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Result> eldest) {
+
+			return size() > MAX_RESULTS;
+		}
+	};
+
+	private String path;
+
+	private Future<?> check;
+
+	// the reader of the last successful check, until it is taken
+	private String readerPath;
+
+	private N5Reader reader;
+
+	/**
+	 * @param readerFun
+	 *            opens a reader for a path, and returns null or throws if it
+	 *            can not
+	 * @param onResult
+	 *            receives the state of the current path and a message
+	 * @param delayMillis
+	 *            how long the path has to stay the same before it is checked
+	 */
+	public ContainerPathValidator(final Function<String, N5Reader> readerFun, final BiConsumer<State, String> onResult,
+			final int delayMillis) {
+
+		this.readerFun = readerFun;
+		this.onResult = onResult;
+		timer = new Timer(delayMillis, e -> check());
+		timer.setRepeats(false);
+	}
+
+	/**
+	 * Checks the given path after the delay, unless another path is requested
+	 * before.
+	 *
+	 * @param path
+	 *            the path
+	 */
+	public void request(final String path) {
+
+		this.path = path == null ? "" : path.trim();
+		if (check != null)
+			check.cancel(true);
+
+		if (this.path.isEmpty()) {
+			timer.stop();
+			onResult.accept(State.NONE, null);
+			return;
+		}
+
+		final Result result = results.get(this.path);
+		if (result != null && System.currentTimeMillis() - result.time < MAX_AGE_MILLIS) {
+			timer.stop();
+			onResult.accept(result.state, result.message);
+			return;
+		}
+
+		onResult.accept(State.CHECKING, "Checking " + this.path + " ...");
+		timer.restart();
+	}
+
+	private void check() {
+
+		final String path = this.path;
+		check = exec.submit(() -> {
+			State state;
+			String message;
+			N5Reader checked = null;
+			try {
+				checked = readerFun.apply(path);
+				state = checked == null ? State.INVALID : State.VALID;
+				message = checked == null ? "Could not open " + path : null;
+			} catch (final Exception e) {
+				state = State.INVALID;
+				message = e.getMessage();
+			}
+
+			if (Thread.currentThread().isInterrupted()) {
+				discard(checked);
+				return;
+			}
+
+			final N5Reader opened = checked;
+			final State finalState = state;
+			final String finalMessage = message;
+			if (opened != null)
+				keep(path, opened);
+
+			SwingUtilities.invokeLater(() -> {
+				results.put(path, new Result(finalState, finalMessage));
+				if (path.equals(this.path))
+					onResult.accept(finalState, finalMessage);
+			});
+		});
+	}
+
+	private void keep(final String path, final N5Reader opened) {
+
+		final N5Reader replaced;
+		synchronized (this) {
+			replaced = reader;
+			readerPath = path;
+			reader = opened;
+		}
+		discard(replaced);
+	}
+
+	private static void discard(final N5Reader reader) {
+
+		if (reader != null)
+			N5SessionPool.getInstance().release(reader);
+	}
+
+	/**
+	 * Returns the reader opened by the last successful check if it was for
+	 * the given path, and forgets it.
+	 *
+	 * @param path
+	 *            the path
+	 * @return the reader, or null
+	 */
+	public synchronized N5Reader takeReader(final String path) {
+
+		if (reader == null || path == null || !path.trim().equals(readerPath))
+			return null;
+
+		final N5Reader taken = reader;
+		reader = null;
+		readerPath = null;
+		return taken;
+	}
+
+	/**
+	 * Forgets the result for the given path, for example because opening it
+	 * failed after all.
+	 *
+	 * @param path
+	 *            the path
+	 */
+	public void invalidate(final String path) {
+
+		if (path != null)
+			results.remove(path.trim());
+	}
+
+	/**
+	 * Stops checking and releases the reader of the last check, if it was not
+	 * taken.
+	 */
+	public void shutdown() {
+
+		timer.stop();
+		exec.shutdownNow();
+
+		final N5Reader unused;
+		synchronized (this) {
+			unused = reader;
+			reader = null;
+			readerPath = null;
+		}
+		discard(unused);
+	}
+
+	private static class Result {
+
+		private final State state;
+
+		private final String message;
+
+		private final long time;
+
+		public Result(final State state, final String message) {
+
+			this.state = state;
+			this.message = message;
+			time = System.currentTimeMillis();
+		}
+	}
+
+}
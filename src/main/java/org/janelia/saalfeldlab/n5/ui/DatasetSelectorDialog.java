@@ -25,6 +25,8 @@
  */
 package org.janelia.saalfeldlab.n5.ui;
 
+import java.awt.BorderLayout;
+import java.awt.Color;
 import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.GridBagConstraints;
@@ -37,6 +39,7 @@ import java.text.Collator;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
@@ -59,11 +62,18 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
+import javax.swing.JTextField;
 import javax.swing.JTree;
 import javax.swing.ScrollPaneConstants;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
+import javax.swing.event.TreeWillExpandListener;
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreeCellRenderer;
 import javax.swing.tree.TreePath;
@@ -76,6 +86,8 @@ import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.N5Exception;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.cache.N5SessionPool;
+import org.janelia.saalfeldlab.n5.metadata.TargetedMetadataDiscovery;
 import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
 import org.janelia.saalfeldlab.n5.universe.N5Factory;
 import org.janelia.saalfeldlab.n5.universe.N5Factory.StorageFormat;
@@ -93,7 +105,6 @@ import ij.IJ;
 import ij.ImageJ;
 import ij.gui.ProgressBar;
 import net.imglib2.util.Pair;
-import se.sawano.java.text.AlphanumericComparator;
 
 public class DatasetSelectorDialog {
 
@@ -119,6 +130,12 @@ public class DatasetSelectorDialog {
 
 	private JCheckBox cropBox;
 
+	private JCheckBox fitToBudgetBox;
+
+	private JCheckBox combineBox;
+
+	private JCheckBox backgroundLoadBox;
+
 	private JTree containerTree;
 
 	private JButton browseBtn;
@@ -145,6 +162,22 @@ public class DatasetSelectorDialog {
 
 	private boolean cropOption = false;
 
+	private boolean fitToBudgetOption = false;
+
+	private boolean combineOption = false;
+
+	private boolean backgroundLoadOption = false;
+
+	private boolean thumbnailsOption = false;
+
+	private Function<String, N5Reader> pathValidationFun;
+
+	private ContainerPathValidator pathValidator;
+
+	private ExecutorService readerExec;
+
+	private long openRequests;
+
 	private Thread loaderThread;
 
 	private ExecutorService loaderExecutor;
@@ -181,7 +214,30 @@ public class DatasetSelectorDialog {
 
 	private boolean detectCalled;
 
-	private final AlphanumericComparator comp = new AlphanumericComparator(Collator.getInstance());
+	private boolean incrementalDiscovery = true;
+
+	private boolean flatListingDiscovery = false;
+
+	private IncrementalTreeLoader treeLoader;
+
+	// the number of groups that are listed and parsed at the same time
+	private static final int PARSE_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	private final Comparator<N5TreeNode> order = N5SwingTreeNode.order(Collator.getInstance());
+
+	private JTextField filterField;
+
+	private TreeSearchIndex searchIndex;
+
+	private ExecutorService searchExec;
+
+	private Future<?> searchFuture;
+
+	private Timer searchTimer;
+
+	public static final int MAX_SEARCH_RESULTS = 10000;
+
+	private static final int MAX_EXPANDED_ROWS = 2000;
 
 	public DatasetSelectorDialog(
 			final Function<String, N5Reader> n5Fun,
@@ -264,6 +320,33 @@ public class DatasetSelectorDialog {
 		this.treeRenderer = treeRenderer;
 	}
 
+	/**
+	 * Sets whether detecting datasets lists and parses the container one
+	 * level at a time, starting with the levels the user expands, rather than
+	 * listing the whole container first.
+	 *
+	 * @param incrementalDiscovery
+	 *            the flag
+	 * @see IncrementalTreeLoader
+	 */
+	public void setIncrementalDiscovery(final boolean incrementalDiscovery) {
+
+		this.incrementalDiscovery = incrementalDiscovery;
+	}
+
+	/**
+	 * Sets whether incremental discovery also lists containers in object
+	 * stores flat, so that groups need not be listed one at a time.
+	 *
+	 * @param flatListingDiscovery
+	 *            the flag
+	 * @see IncrementalTreeLoader#setFlatListing(boolean)
+	 */
+	public void setFlatListingDiscovery(final boolean flatListingDiscovery) {
+
+		this.flatListingDiscovery = flatListingDiscovery;
+	}
+
 	public void setRecursiveFilterCallback(final Predicate<N5TreeNode> n5NodeFilter) {
 
 		this.n5NodeFilter = n5NodeFilter;
@@ -315,6 +398,79 @@ public class DatasetSelectorDialog {
 		return cropOption && cropBox.isSelected();
 	}
 
+	public void setFitToBudgetOption(final boolean arg) {
+
+		this.fitToBudgetOption = arg;
+	}
+
+	/**
+	 * Returns true if the user asked to open the finest level of a multiscale
+	 * pyramid that fits in memory, instead of the selected level.
+	 *
+	 * @return whether to fit the memory budget
+	 */
+	public boolean isFitToBudgetSelected() {
+
+		return fitToBudgetOption && fitToBudgetBox.isSelected();
+	}
+
+	public void setCombineOption(final boolean arg) {
+
+		this.combineOption = arg;
+	}
+
+	/**
+	 * Returns true if the user asked to combine all selected datasets into
+	 * one virtual image, one channel per dataset.
+	 *
+	 * @return whether to combine the selection
+	 */
+	public boolean isCombineSelected() {
+
+		return combineOption && combineBox.isSelected();
+	}
+
+	public void setBackgroundLoadOption(final boolean arg) {
+
+		this.backgroundLoadOption = arg;
+	}
+
+	/**
+	 * Returns true if the user asked to open images virtually and load them
+	 * into memory in the background.
+	 *
+	 * @return whether to load in the background
+	 */
+	public boolean isBackgroundLoadSelected() {
+
+		return backgroundLoadOption && backgroundLoadBox.isSelected();
+	}
+
+	/**
+	 * Shows thumbnails of datasets if the tree renderer is a
+	 * {@link N5DatasetTreeCellRenderer}.
+	 *
+	 * @param arg whether to show thumbnails
+	 */
+	public void setThumbnailsOption(final boolean arg) {
+
+		thumbnailsOption = arg;
+	}
+
+	/**
+	 * Checks typed paths in the background while the user types, with a
+	 * function that opens a reader for a path and returns null or throws if
+	 * it can not. The reader of the last successful check is used when the
+	 * container is opened.
+	 *
+	 * @param pathValidationFun
+	 *            opens readers, without showing errors to the user
+	 */
+	public void setPathValidationFun(final Function<String, N5Reader> pathValidationFun) {
+
+		this.pathValidationFun = pathValidationFun;
+	}
+
 	public boolean isVirtual() {
 
 		return (virtualBox != null) && virtualBox.isSelected();
@@ -378,6 +534,19 @@ public class DatasetSelectorDialog {
 		containerPathText.setPreferredSize(new Dimension(frameSizeX / 3, containerPathText.getPreferredSize().height));
 		containerPathText.addActionListener(e -> openContainer(n5Fun, () -> getN5RootPath(), pathFun));
 
+		readerExec = Executors.newSingleThreadExecutor(r -> {
+			final Thread t = new Thread(r, "n5-reader-opener");
+			t.setDaemon(true);
+			return t;
+		});
+
+		// check whether typed paths can be opened, in the background
+		if (pathValidationFun != null) {
+			pathValidator = new ContainerPathValidator(pathValidationFun, containerPathText::setCheckState,
+					ContainerPathValidator.DEFAULT_DELAY_MILLIS);
+			containerPathText.setCallback(() -> pathValidator.request(normalizedPath(containerPathText.getText())));
+		}
+
 		final GridBagConstraints ctxt = new GridBagConstraints();
 		ctxt.gridx = 0;
 		ctxt.gridy = 0;
@@ -413,11 +582,31 @@ public class DatasetSelectorDialog {
 		cdetect.insets = new Insets(OUTER_PAD, BUTTON_PAD, MID_PAD, OUTER_PAD);
 		panel.add(detectBtn, cdetect);
 
+		filterField = new JTextField();
+		filterField.setToolTipText("<html>Show only the matching groups and datasets. Search terms are<br>"
+				+ "a part of the path, a glob of the name like <code>s*</code>, <code>re:</code> followed by a regular expression,<br>"
+				+ "<code>type:uint8</code>, <code>dims:3</code>, <code>is:dataset</code> or <code>is:multiscale</code></html>");
+
+		final JPanel filterPanel = new JPanel(new BorderLayout(BUTTON_PAD, 0));
+		filterPanel.add(new JLabel("Filter"), BorderLayout.WEST);
+		filterPanel.add(filterField, BorderLayout.CENTER);
+
+		final GridBagConstraints cfilter = new GridBagConstraints();
+		cfilter.gridx = 0;
+		cfilter.gridy = 1;
+		cfilter.gridwidth = 6;
+		cfilter.gridheight = 1;
+		cfilter.weightx = 1.0;
+		cfilter.weighty = 0.0;
+		cfilter.fill = GridBagConstraints.HORIZONTAL;
+		cfilter.insets = new Insets(0, OUTER_PAD, MID_PAD, OUTER_PAD);
+		panel.add(filterPanel, cfilter);
+
 		final GridBagConstraints ctree = new GridBagConstraints();
 		ctree.gridx = 0;
-		ctree.gridy = 1;
+		ctree.gridy = 2;
 		ctree.gridwidth = 6;
-		ctree.gridheight = 3;
+		ctree.gridheight = 2;
 		ctree.weightx = 1.0;
 		ctree.weighty = 1.0;
 		ctree.ipadx = 0;
@@ -429,6 +618,43 @@ public class DatasetSelectorDialog {
 		containerTree = new JTree(treeModel);
 		containerTree.setMinimumSize(new Dimension(550, 230));
 
+		// search an index of the tree in the background, shortly after typing
+		searchIndex = new TreeSearchIndex(treeModel);
+		searchExec = Executors.newSingleThreadExecutor(r -> {
+			final Thread t = new Thread(r, "n5-tree-search");
+			t.setDaemon(true);
+			return t;
+		});
+		searchTimer = new Timer(200, e -> search());
+		searchTimer.setRepeats(false);
+		filterField.getDocument().addDocumentListener(new DocumentListener() {
+
+			@Override
+			public void insertUpdate(final DocumentEvent e) {
+
+				searchTimer.restart();
+			}
+
+			@Override
+			public void removeUpdate(final DocumentEvent e) {
+
+				searchTimer.restart();
+			}
+
+			@Override
+			public void changedUpdate(final DocumentEvent e) {
+
+				searchTimer.restart();
+			}
+		});
+
+		// show nodes found while the container is loaded, at most every
+		// timer delay
+		searchIndex.setOnUpdate(() -> SwingUtilities.invokeLater(() -> {
+			if (!filterField.getText().trim().isEmpty() && !searchTimer.isRunning())
+				searchTimer.start();
+		}));
+
 		containerTree.getSelectionModel().setSelectionMode(
 				TreeSelectionModel.DISCONTIGUOUS_TREE_SELECTION);
 
@@ -437,6 +663,21 @@ public class DatasetSelectorDialog {
 		treeSelectionListener.setSelectionFilter(selectionFilter);
 		containerTree.addTreeSelectionListener(treeSelectionListener);
 
+		// load groups as they are expanded
+		containerTree.addTreeWillExpandListener(new TreeWillExpandListener() {
+
+			@Override
+			public void treeWillExpand(final TreeExpansionEvent event) {
+
+				final Object node = event.getPath().getLastPathComponent();
+				if (treeLoader != null && node instanceof N5SwingTreeNode)
+					treeLoader.request((N5SwingTreeNode)node);
+			}
+
+			@Override
+			public void treeWillCollapse(final TreeExpansionEvent event) {}
+		});
+
 		// By default leaf nodes (datasets) are displayed as files. This changes
 		// the default behavior to display them as folders
 		// final DefaultTreeCellRenderer treeCellRenderer =
@@ -480,6 +721,46 @@ public class DatasetSelectorDialog {
 			panel.add(cropPanel, cbot);
 		}
 
+		if (fitToBudgetOption) {
+			final JPanel budgetPanel = new JPanel();
+			fitToBudgetBox = new JCheckBox();
+			fitToBudgetBox.setToolTipText("Open the finest scale level of a multiscale pyramid that fits in free memory.");
+			final JLabel budgetLabel = new JLabel("Fit to memory");
+			cbot.gridx = 3;
+			cbot.anchor = GridBagConstraints.WEST;
+			budgetPanel.add(fitToBudgetBox);
+			budgetPanel.add(budgetLabel);
+			panel.add(budgetPanel, cbot);
+		}
+
+		if (combineOption) {
+			final JPanel combinePanel = new JPanel();
+			combineBox = new JCheckBox();
+			combineBox.setToolTipText("Open the selected datasets as the channels of one virtual image.");
+			final JLabel combineLabel = new JLabel("Combine as channels");
+			cbot.gridx = 0;
+			cbot.gridy = 5;
+			cbot.anchor = GridBagConstraints.WEST;
+			combinePanel.add(combineBox);
+			combinePanel.add(combineLabel);
+			panel.add(combinePanel, cbot);
+			cbot.gridy = 4;
+		}
+
+		if (backgroundLoadOption) {
+			final JPanel backgroundPanel = new JPanel();
+			backgroundLoadBox = new JCheckBox();
+			backgroundLoadBox.setToolTipText("Open at once as virtual, then load into memory in the background if it fits.");
+			final JLabel backgroundLabel = new JLabel("Load in background");
+			cbot.gridx = 1;
+			cbot.gridy = 5;
+			cbot.anchor = GridBagConstraints.WEST;
+			backgroundPanel.add(backgroundLoadBox);
+			backgroundPanel.add(backgroundLabel);
+			panel.add(backgroundPanel, cbot);
+			cbot.gridy = 4;
+		}
+
 		messageLabel = new JLabel("");
 		messageLabel.setVisible(false);
 		cbot.gridx = 2;
@@ -508,6 +789,79 @@ public class DatasetSelectorDialog {
 		return dialog;
 	}
 
+	/**
+	 * Shows the nodes matching the text of the filter field, or all nodes if
+	 * it is empty. Called on the event dispatch thread.
+	 */
+	private void search() {
+
+		if (searchFuture != null)
+			searchFuture.cancel(true);
+
+		final String query = filterField.getText().trim();
+		final N5SwingTreeNode root = rootNode;
+		if (query.isEmpty() || root == null) {
+			filterField.setForeground(UIManager.getColor("TextField.foreground"));
+			if (containerTree.getModel() != treeModel)
+				containerTree.setModel(treeModel);
+
+			return;
+		}
+
+		searchFuture = searchExec.submit(() -> {
+			final List<N5TreeNode> matches;
+			try {
+				matches = searchIndex.search(query, MAX_SEARCH_RESULTS);
+			} catch (final IllegalArgumentException e) {
+				SwingUtilities.invokeLater(() -> filterField.setForeground(Color.RED));
+				return;
+			}
+
+			final DefaultTreeModel filteredModel = filteredModel(root, matches);
+			if (Thread.currentThread().isInterrupted())
+				return;
+
+			SwingUtilities.invokeLater(() -> {
+				// the query or the container changed in the meantime
+				if (!query.equals(filterField.getText().trim()) || rootNode != root)
+					return;
+
+				filterField.setForeground(UIManager.getColor("TextField.foreground"));
+				containerTree.setModel(filteredModel);
+				for (int i = 0; i < containerTree.getRowCount() && i < MAX_EXPANDED_ROWS; i++)
+					containerTree.expandRow(i);
+			});
+		});
+	}
+
+	/**
+	 * A copy of the tree that contains only the given nodes and their
+	 * ancestors, with their metadata.
+	 */
+	private DefaultTreeModel filteredModel(final N5SwingTreeNode root, final List<N5TreeNode> matches) {
+
+		final DefaultTreeModel filteredModel = new DefaultTreeModel(null);
+		final N5SwingTreeNode filteredRoot = new N5SwingTreeNode(root.getPath(), filteredModel);
+		filteredModel.setRoot(filteredRoot);
+
+		final List<String> paths = new ArrayList<>(matches.size());
+		for (final N5TreeNode match : matches)
+			paths.add(match.getPath());
+
+		filteredRoot.addPaths(paths, order);
+
+		for (final N5TreeNode match : matches) {
+			N5TreeNode node = match;
+			N5SwingTreeNode copy = filteredRoot.find(match.getPath());
+			while (node != null && copy != null && copy.getMetadata() == null) {
+				copy.setMetadata(node.getMetadata());
+				node = (N5TreeNode)((N5SwingTreeNode)node).getParent();
+				copy = (N5SwingTreeNode)copy.getParent();
+			}
+		}
+		return filteredModel;
+	}
+
 	public JTree getJTree() {
 
 		return containerTree;
@@ -576,7 +930,11 @@ public class DatasetSelectorDialog {
 
 	private N5Reader makeN5(final String n5Path) {
 
-		n5 = n5Fun.apply(n5Path);
+		// the reader of the last check of the typed path, if any
+		n5 = pathValidator == null ? null : pathValidator.takeReader(normalizedPath(n5Path));
+		if (n5 == null)
+			n5 = n5Fun.apply(n5Path);
+
 		if (n5 == null) {
 			messageLabel.setVisible(false);
 			dialog.repaint();
@@ -598,7 +956,7 @@ public class DatasetSelectorDialog {
 		}
 
 		boolean isTranslated = false;
-		final Optional<TranslatedN5Reader> translatedN5 = translationPanel.getTranslatedN5Optional(n5, gson);
+		final Optional<N5Reader> translatedN5 = translationPanel.getTranslatedReaderOptional(n5, gson);
 		if (translatedN5.isPresent()) {
 			n5 = translatedN5.get();
 			isTranslated = true;
@@ -640,10 +998,35 @@ public class DatasetSelectorDialog {
 			loaderExecutor = Executors.newCachedThreadPool();
 		}
 
-		n5 = n5Fun.apply(n5Path);
+		// open the reader in the background, so that slow stores do not
+		// block the dialog
+		stopParsing();
+		final long request = ++openRequests;
+		readerExec.submit(() -> {
+			N5Reader reader = pathValidator == null ? null : pathValidator.takeReader(normalizedPath(n5Path));
+			if (reader == null)
+				reader = n5Fun.apply(n5Path);
+
+			final N5Reader opened = reader;
+			SwingUtilities.invokeLater(() -> {
+				// another container was requested in the meantime
+				if (request == openRequests)
+					openContainer(opened, n5Path, pathToRoot);
+				else if (opened != null)
+					N5SessionPool.getInstance().release(opened);
+			});
+		});
+	}
+
+	private void openContainer(final N5Reader reader, final String n5Path, final Function<String, String> pathToRoot) {
+
+		n5 = reader;
 		final String rootPath = pathToRoot.apply(n5Path).replaceFirst("^/", "");
 
 		if (n5 == null) {
+			if (pathValidator != null)
+				pathValidator.invalidate(normalizedPath(n5Path));
+
 			messageLabel.setVisible(false);
 			dialog.repaint();
 			return;
@@ -664,7 +1047,7 @@ public class DatasetSelectorDialog {
 		}
 
 		boolean isTranslated = false;
-		final Optional<TranslatedN5Reader> translatedN5 = translationPanel.getTranslatedN5Optional(n5, gson);
+		final Optional<N5Reader> translatedN5 = translationPanel.getTranslatedReaderOptional(n5, gson);
 		if (translatedN5.isPresent()) {
 			n5 = translatedN5.get();
 			isTranslated = true;
@@ -674,8 +1057,13 @@ public class DatasetSelectorDialog {
 		final String[] pathParts = n5.getURI().toString().split(n5.getGroupSeparator());
 		final String suffix = (rootPath == null || rootPath.isEmpty()) ? "" : n5.getGroupSeparator() + rootPath;
 		final String treeRootName = pathParts[pathParts.length - 1] + suffix;
-		if (treeRenderer != null && treeRenderer instanceof N5DatasetTreeCellRenderer)
+		if (treeRenderer != null && treeRenderer instanceof N5DatasetTreeCellRenderer) {
 			((N5DatasetTreeCellRenderer)treeRenderer).setRootName(treeRootName);
+			if (thumbnailsOption) {
+				((N5DatasetTreeCellRenderer)treeRenderer).setThumbnails(new DatasetThumbnails(n5));
+				containerTree.setRowHeight(Math.max(containerTree.getRowHeight(), DatasetThumbnails.SIZE + 2));
+			}
+		}
 
 		final N5TreeNode tmpRootNode = new N5TreeNode(rootPath);
 		rootNode = new N5SwingTreeNode(rootPath, treeModel);
@@ -691,23 +1079,19 @@ public class DatasetSelectorDialog {
 			SwingUtilities.invokeLater(() -> {
 				if (x.getMetadata() != null) {
 					// get the node at the requested path, or add it if not present
-					final N5SwingTreeNode node = (N5SwingTreeNode)rootNode.getDescendants(y -> pathsEqual(y.getPath(), x.getPath())).findFirst()
-							.orElseGet( () -> {
-								if (rootNode.getPath().equals(x.getPath()))
-									return null;
-								else
-									return rootNode.addPath(x.getPath());
-							});
+					N5SwingTreeNode node = null;
+					if (!pathsEqual(rootNode.getPath(), x.getPath())) {
+						node = rootNode.find(x.getPath());
+						if (node == null) {
+							rootNode.addPaths(Collections.singletonList(x.getPath()), order);
+							node = rootNode.find(x.getPath());
+						}
+					}
 
 					// update the node's metadata
 					if (node != null) {
 						// set metadata, update ui
 						node.setMetadata(x.getMetadata());
-
-						// sort children, update ui
-						final N5SwingTreeNode parent = (N5SwingTreeNode)node.getParent();
-						sortRecursive(parent);
-
 						treeModel.nodeChanged(node);
 					}
 				} else {
@@ -723,72 +1107,111 @@ public class DatasetSelectorDialog {
 			});
 		};
 
-		parseExec = Executors.newSingleThreadExecutor();
-		parseExec.submit(() -> {
-			try {
-				String[] datasetPaths;
-				try {
-
-					if (ijProgressBar != null)
-						ijProgressBar.show(0.3);
-
-
-					SwingUtilities.invokeLater(() -> {
-						messageLabel.setText("Listing...");
-						messageLabel.repaint();
-					});
-
-					// build a temporary tree
-					datasetPaths = n5.deepList(rootPath, loaderExecutor);
-					N5SwingTreeNode.fromFlatList(tmpRootNode, datasetPaths, "/");
-					for (final String p : datasetPaths)
-						rootNode.addPath(rootPath + "/" + p);
-
-
-					sortRecursive(rootNode);
-					containerTree.expandRow(0);
-
-					if (ijProgressBar != null)
-						ijProgressBar.show(0.5);
-
-
-					SwingUtilities.invokeLater(() -> {
-						messageLabel.setText("Parsing...");
-						messageLabel.repaint();
-					});
-
-					// callback copies values from temporary tree into the ui
-					// when metadata is parsed
-					datasetDiscoverer.parseMetadataRecursive(tmpRootNode, callback);
-
-					if (ijProgressBar != null)
-						ijProgressBar.show(0.8);
+		// stop loading the previous container
+		stopParsing();
 
-					SwingUtilities.invokeLater(() -> {
-						messageLabel.setText("Done");
-						messageLabel.repaint();
-					});
-
-					if (ijProgressBar != null)
-						ijProgressBar.show(1.1);
+		parseExec = Executors.newFixedThreadPool(PARSE_THREADS, r -> {
+			final Thread t = new Thread(r, "n5-metadata-parser");
+			t.setDaemon(true);
+			return t;
+		});
+		treeLoader = null;
+		if (incrementalDiscovery) {
+			// show the tree recorded the last time this container was opened,
+			// then list and parse it again in the background
+			final String indexKey = isTranslated ? null : n5.getURI().toString() + "?" + rootPath;
+			final boolean restored = indexKey != null &&
+					DiscoveryIndex.getInstance().restore(indexKey, rootNode, treeModel, order);
+
+			final N5SwingTreeNode loaderRoot = rootNode;
+			final IncrementalTreeLoader loader = new IncrementalTreeLoader(n5, datasetDiscoverer, treeModel, order, loaderExecutor);
+			treeLoader = loader;
+			treeLoader.setFlatListing(flatListingDiscovery && !isTranslated);
+			treeLoader.setOnIdle(() -> {
+				if (ijProgressBar != null)
+					ijProgressBar.show(1.1);
+
+				messageLabel.setText("");
+				messageLabel.setVisible(false);
+				messageLabel.repaint();
+
+				// a tree with groups that failed to load is not recorded
+				if (indexKey != null && treeModel.getRoot() == loaderRoot && loader.isComplete())
+					DiscoveryIndex.getInstance().saveLater(indexKey, loaderRoot);
+			});
 
-					Thread.sleep(1000);
-					SwingUtilities.invokeLater(() -> {
-						messageLabel.setText("");
-						messageLabel.setVisible(false);
-						messageLabel.repaint();
-					});
-				} catch (final InterruptedException e) {
-					// can ignore
-				} catch (final ExecutionException e) {
-					// can ignore
+			messageLabel.setText(restored ? "Updating..." : "Loading...");
+			messageLabel.repaint();
+			rootNode.setChildrenListed(false);
+			treeLoader.start(parseExec, PARSE_THREADS);
+			containerTree.expandRow(0);
+		} else {
+			parseExec.submit(() -> {
+				try {
+					String[] datasetPaths;
+					try {
+
+						if (ijProgressBar != null)
+							ijProgressBar.show(0.3);
+
+
+						SwingUtilities.invokeLater(() -> {
+							messageLabel.setText("Listing...");
+							messageLabel.repaint();
+						});
+
+						// build a temporary tree
+						datasetPaths = n5.deepList(rootPath, loaderExecutor);
+						N5SwingTreeNode.fromFlatList(tmpRootNode, datasetPaths, "/");
+						final List<String> fullPaths = new ArrayList<>(datasetPaths.length);
+						for (final String p : datasetPaths)
+							fullPaths.add(rootPath + "/" + p);
+
+						rootNode.addPaths(fullPaths, order);
+						containerTree.expandRow(0);
+
+						if (ijProgressBar != null)
+							ijProgressBar.show(0.5);
+
+
+						SwingUtilities.invokeLater(() -> {
+							messageLabel.setText("Parsing...");
+							messageLabel.repaint();
+						});
+
+						// callback copies values from temporary tree into the ui
+						// when metadata is parsed
+						datasetDiscoverer.parseMetadataRecursive(tmpRootNode, callback);
+
+						if (ijProgressBar != null)
+							ijProgressBar.show(0.8);
+
+						SwingUtilities.invokeLater(() -> {
+							messageLabel.setText("Done");
+							messageLabel.repaint();
+						});
+
+						if (ijProgressBar != null)
+							ijProgressBar.show(1.1);
+
+						Thread.sleep(1000);
+						SwingUtilities.invokeLater(() -> {
+							messageLabel.setText("");
+							messageLabel.setVisible(false);
+							messageLabel.repaint();
+						});
+					} catch (final InterruptedException e) {
+						// can ignore
+					} catch (final ExecutionException e) {
+						// can ignore
+					}
+				} catch (final N5Exception e) {
+					e.printStackTrace();
 				}
-			} catch (final N5Exception e) {
-				e.printStackTrace();
-			}
-		});
+			});
+		}
 
-		if (isTranslated) {
+		if (n5 instanceof TranslatedN5Reader) {
 			final TranslatedN5Reader xlatedN5 = (TranslatedN5Reader)n5;
 			translationResultPanel.set(
 					xlatedN5.getGson(),
@@ -802,8 +1225,7 @@ public class DatasetSelectorDialog {
 	public void ok() {
 
 		// stop parsing things
-		if (parseExec != null)
-			parseExec.shutdownNow();
+		stopParsing();
 
 		// validate and update input
 		containerPathText.validateAndUpdate();
@@ -825,7 +1247,7 @@ public class DatasetSelectorDialog {
 			final String dataset = pathFun.apply(n5Path);
 			try {
 
-				final N5TreeNode root = datasetDiscoverer.discoverAndParseRecursive("");
+				final N5TreeNode root = TargetedMetadataDiscovery.discoverAndParse(n5, datasetDiscoverer, dataset);
 				final Predicate<N5Metadata> filter = selectionFilter != null ? selectionFilter : x -> { return x != null; };
 				root.getDescendant(dataset)
 					.filter(x -> {
@@ -849,19 +1271,46 @@ public class DatasetSelectorDialog {
 			}
 
 			// datasets were selected by the user
-			for (final TreePath path : containerTree.getSelectionPaths())
-				selectedMetadata.add(((N5SwingTreeNode)path.getLastPathComponent()).getMetadata());
+			for (final TreePath path : containerTree.getSelectionPaths()) {
+				final N5SwingTreeNode node = (N5SwingTreeNode)path.getLastPathComponent();
+				if (node.getMetadata() instanceof DiscoveryIndex.IndexedMetadata) {
+					// restored from the index and not parsed again yet
+					final N5Metadata meta = parseNow(node.getPath());
+					if (meta != null)
+						selectedMetadata.add(meta);
+				} else
+					selectedMetadata.add(node.getMetadata());
+			}
+
+			if (selectedMetadata.isEmpty()) {
+				JOptionPane.showMessageDialog(null, "Could not find a dataset / metadata at the selected path.");
+				return;
+			}
 		}
 		okCallback.accept(new DataSelection(n5, selectedMetadata));
+		stopBackgroundTasks();
+
 		dialog.setVisible(false);
 		dialog.dispose();
 	}
 
+	private N5Metadata parseNow(final String path) {
+
+		try {
+			return TargetedMetadataDiscovery.discoverAndParse(n5, datasetDiscoverer, path)
+					.getDescendant(path)
+					.map(N5TreeNode::getMetadata)
+					.orElse(null);
+		} catch (final Exception e) {
+			return null;
+		}
+	}
+
 	public void cancel() {
 
 		// stop parsing things
-		if (parseExec != null)
-			parseExec.shutdownNow();
+		stopParsing();
+		stopBackgroundTasks();
 
 		dialog.setVisible(false);
 		dialog.dispose();
@@ -877,6 +1326,30 @@ public class DatasetSelectorDialog {
 			cancelCallback.accept(null);
 	}
 
+	private void stopParsing() {
+
+		if (treeLoader != null)
+			treeLoader.cancel();
+
+		if (parseExec != null)
+			parseExec.shutdownNow();
+	}
+
+	private void stopBackgroundTasks() {
+
+		// containers that are still being opened are not shown
+		openRequests++;
+
+		if (searchExec != null)
+			searchExec.shutdownNow();
+
+		if (readerExec != null)
+			readerExec.shutdownNow();
+
+		if (pathValidator != null)
+			pathValidator.shutdown();
+	}
+
 	public void detectDatasets() {
 
 		openContainer(n5Fun, () -> getN5RootPath(), pathFun);
@@ -925,22 +1398,25 @@ public class DatasetSelectorDialog {
 		}
 	}
 
-	private void sortRecursive(final N5SwingTreeNode node) {
+	private static String normalDatasetName(final String fullPath, final String groupSeparator) {
 
-		if (node != null) {
-			final List<N5TreeNode> children = node.childrenList();
-			if (!children.isEmpty()) {
-				children.sort(Comparator.comparing(N5TreeNode::toString, comp));
-			}
-			treeModel.nodeStructureChanged(node);
-			for (final N5TreeNode child : children)
-				sortRecursive((N5SwingTreeNode)child);
-		}
+		return fullPath.replaceAll("(^" + groupSeparator + "*)|(" + groupSeparator + "*$)", "");
 	}
 
-	private static String normalDatasetName(final String fullPath, final String groupSeparator) {
+	/**
+	 * The path as it is shown in the path field once it was validated.
+	 */
+	private static String normalizedPath(final String path) {
 
-		return fullPath.replaceAll("(^" + groupSeparator + "*)|(" + groupSeparator + "*$)", "");
+		if (path == null)
+			return null;
+
+		try {
+			final Object uri = new UriValidator().stringToValue(path.trim());
+			return uri == null ? "" : uri.toString();
+		} catch (final ParseException e) {
+			return path.trim();
+		}
 	}
 
 	private static boolean pathsEqual(final String a, final String b) {
@@ -0,0 +1,417 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ui;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.imageio.ImageIO;
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCellLoader;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5MetadataGroup;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.v04.OmeNgffMultiScaleMetadata;
+
+import ij.Prefs;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * Small previews of datasets for the dataset tree.
+ * <p>
+ * A thumbnail shows a strided sample of the whole center slice of the
+ * coarsest level of the multiscale group that contains the dataset, or of
+ * the dataset itself. The stride is at least one block, so that every block
+ * that is read contributes one sample.
+ * <p>
+ * Thumbnails are computed by a small pool of background threads, most
+ * recently requested first, so that the rows that are currently shown are
+ * computed before rows that were scrolled past. Computed thumbnails are
+ * kept in memory and in the directory {@value #DIRECTORY} of the ImageJ
+ * preferences directory. Files older than a week are computed again, in case
+ * the data changed, and the directory is pruned to the most recent
+ * {@value #MAX_FILES} thumbnails once per session. Thumbnails that fail to
+ * compute are not kept, so that they are tried again the next time they are
+ * shown.
+ */
+public class DatasetThumbnails {
+
+	public static final String ENABLED_KEY = "n5.thumbnails.enabled";
+
+	public static final String DIRECTORY = "n5-thumbnails";
+
+	public static final int SIZE = 24;
+
+	private static final int NUM_THREADS = 2;
+
+	private static final int MAX_PENDING = 128;
+
+	private static final int MAX_CACHED = 2048;
+
+	private static final int MAX_FILES = 4096;
+
+	private static final long MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+	private static final AtomicBoolean pruned = new AtomicBoolean();
+
+	// no block is sampled twice, so few need to be kept
+	private static final int MAX_CELLS = 4;
+
+	private static final Icon NONE = new ImageIcon(new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY));
+
+	private static final ExecutorService exec = Executors.newFixedThreadPool(NUM_THREADS, r -> {
+		final Thread t = new Thread(r, "n5-thumbnails");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	private static final Map<String, Icon> cache = new LinkedHashMap<String, Icon>(64, 0.75f, true) {
+
+		private static final long serialVersionUID = 6139384958104436452L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<String, Icon> eldest) {
+
+			return size() > MAX_CACHED;
+		}
+	};
+
+	private final N5Reader n5;
+
+	private final File directory;
+
+	private final LinkedBlockingDeque<Request> pending = new LinkedBlockingDeque<>();
+
+	private final Set<String> requested = new HashSet<>();
+
+	public DatasetThumbnails(final N5Reader n5) {
+
+		this(n5, new File(Prefs.getPrefsDir(), DIRECTORY));
+	}
+
+	public DatasetThumbnails(final N5Reader n5, final File directory) {
+
+		this.n5 = n5;
+		this.directory = directory;
+	}
+
+	/**
+	 * Returns the thumbnail of a dataset node if it is available, and
+	 * otherwise requests it. Does not block.
+	 *
+	 * @param node
+	 *            the dataset node
+	 * @param onLoaded
+	 *            run on the event dispatch thread once the requested
+	 *            thumbnail is available
+	 * @return the thumbnail, or null
+	 */
+	public Icon get(final N5SwingTreeNode node, final Runnable onLoaded) {
+
+		final N5Metadata meta = node.getMetadata();
+		if (!(meta instanceof N5DatasetMetadata))
+			return null;
+
+		final String key = key((N5DatasetMetadata)meta);
+		synchronized (cache) {
+			final Icon icon = cache.get(key);
+			if (icon != null)
+				return icon == NONE ? null : icon;
+		}
+
+		synchronized (requested) {
+			if (!requested.add(key))
+				return null;
+		}
+
+		// the parent tells which levels there are, if any
+		final N5Metadata parentMeta = node.getParent() == null ? null : ((N5TreeNode)node.getParent()).getMetadata();
+		pending.offerFirst(new Request(key, (N5DatasetMetadata)meta, parentMeta, onLoaded));
+		while (pending.size() > MAX_PENDING) {
+			final Request dropped = pending.pollLast();
+			if (dropped != null)
+				synchronized (requested) {
+					requested.remove(dropped.key);
+				}
+		}
+
+		exec.submit(this::next);
+		return null;
+	}
+
+	private void next() {
+
+		final Request request = pending.pollFirst();
+		if (request == null)
+			return;
+
+		Icon icon;
+		try {
+			BufferedImage image = read(request.key);
+			if (image == null) {
+				image = compute(request.meta, request.parentMeta);
+				if (image != null)
+					write(request.key, image);
+			}
+			icon = image == null ? NONE : new ImageIcon(image);
+		} catch (final Exception e) {
+			// for example a reader that was closed, tried again when shown
+			icon = null;
+		}
+
+		if (icon != null)
+			synchronized (cache) {
+				cache.put(request.key, icon);
+			}
+		synchronized (requested) {
+			requested.remove(request.key);
+		}
+
+		if (icon == null)
+			return;
+
+		if (icon != NONE && request.onLoaded != null)
+			SwingUtilities.invokeLater(request.onLoaded);
+	}
+
+	private String key(final N5DatasetMetadata meta) {
+
+		final DatasetAttributes attributes = meta.getAttributes();
+		return n5.getURI() + "?" + meta.getPath() + "#" +
+				Arrays.toString(attributes.getDimensions()) + attributes.getDataType();
+	}
+
+	/**
+	 * Computes the thumbnail of a dataset.
+	 *
+	 * @param meta
+	 *            the dataset
+	 * @param parentMeta
+	 *            the metadata of its parent, may be null
+	 * @return the thumbnail, or null if the dataset can not be shown
+	 */
+	public BufferedImage compute(final N5DatasetMetadata meta, final N5Metadata parentMeta) {
+
+		// the attributes as the data are read, rather than as they are shown
+		final N5DatasetMetadata source = coarsestLevel(meta, parentMeta);
+		final DatasetAttributes attributes = n5.getDatasetAttributes(source.getPath());
+		if (attributes == null)
+			return null;
+
+		final int n = attributes.getNumDimensions();
+		if (n < 2 || !SharedBlockCellLoader.isSupported(attributes.getDataType()))
+			return null;
+
+		// x and y are the last storage axes of f-order arrays
+		final boolean fOrder = OmeNgffMultiScaleMetadata.fOrder(attributes);
+		final int xd = fOrder ? n - 1 : 0;
+		final int yd = fOrder ? n - 2 : 1;
+
+		final long[] dims = attributes.getDimensions();
+		final int[] blockSize = attributes.getBlockSize();
+
+		// the whole slice, at most SIZE samples and one sample per block across
+		final long stride = Math.max(1, (Math.max(dims[xd], dims[yd]) + SIZE - 1) / SIZE);
+		final long xStride = Math.max(stride, blockSize[xd]);
+		final long yStride = Math.max(stride, blockSize[yd]);
+		final int tw = (int)((dims[xd] + xStride - 1) / xStride);
+		final int th = (int)((dims[yd] + yStride - 1) / yStride);
+
+		final long[] pos = new long[n];
+		for (int d = 0; d < n; d++)
+			pos[d] = dims[d] / 2;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		final RandomAccess<? extends RealType<?>> access = ((RandomAccessibleInterval)SharedBlockCellLoader
+				.open(n5, source.getPath(), SharedBlockCache.getInstance(), MAX_CELLS)).randomAccess();
+
+		final double[] values = new double[tw * th];
+		double min = Double.MAX_VALUE;
+		double max = -Double.MAX_VALUE;
+		for (int y = 0; y < th; y++) {
+			if (Thread.currentThread().isInterrupted())
+				return null;
+
+			// the middle of each stride, the last one may be shorter
+			pos[yd] = (y * yStride + Math.min((y + 1) * yStride, dims[yd]) - 1) / 2;
+			for (int x = 0; x < tw; x++) {
+				pos[xd] = (x * xStride + Math.min((x + 1) * xStride, dims[xd]) - 1) / 2;
+				access.setPosition(pos);
+				final double v = access.get().getRealDouble();
+				values[y * tw + x] = v;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+		}
+
+		final BufferedImage image = new BufferedImage(tw, th, BufferedImage.TYPE_BYTE_GRAY);
+		final byte[] pixels = new byte[tw * th];
+		final double range = max > min ? max - min : 1;
+		for (int i = 0; i < pixels.length; i++)
+			pixels[i] = (byte)Math.round(255 * (values[i] - min) / range);
+
+		image.getRaster().setDataElements(0, 0, tw, th, pixels);
+		return image;
+	}
+
+	/**
+	 * The level of the multiscale group with the fewest elements, if the
+	 * dataset is part of one, and the dataset itself otherwise.
+	 */
+	private static N5DatasetMetadata coarsestLevel(final N5DatasetMetadata meta, final N5Metadata parentMeta) {
+
+		N5DatasetMetadata coarsest = meta;
+		if (!(parentMeta instanceof N5MetadataGroup))
+			return coarsest;
+
+		final int n = meta.getAttributes().getNumDimensions();
+		for (final Object child : ((N5MetadataGroup<?>)parentMeta).getChildrenMetadata()) {
+			if (!(child instanceof N5DatasetMetadata))
+				continue;
+
+			final DatasetAttributes attributes = ((N5DatasetMetadata)child).getAttributes();
+			if (attributes.getNumDimensions() == n && numElements(attributes) < numElements(coarsest.getAttributes()))
+				coarsest = (N5DatasetMetadata)child;
+		}
+		return coarsest;
+	}
+
+	private static long numElements(final DatasetAttributes attributes) {
+
+		long n = 1;
+		for (final long d : attributes.getDimensions())
+			n *= d;
+
+		return n;
+	}
+
+	private BufferedImage read(final String key) {
+
+		final File file = file(key);
+		if (!file.isFile() || System.currentTimeMillis() - file.lastModified() > MAX_AGE_MILLIS)
+			return null;
+
+		try {
+			return ImageIO.read(file);
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	private void write(final String key, final BufferedImage image) {
+
+		try {
+			directory.mkdirs();
+			final File file = file(key);
+			final File tmp = new File(directory, file.getName() + ".tmp");
+			ImageIO.write(image, "png", tmp);
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		} catch (final IOException e) {
+			// computed again next time
+		}
+
+		if (pruned.compareAndSet(false, true))
+			prune(directory, MAX_FILES, MAX_AGE_MILLIS);
+	}
+
+	/**
+	 * Deletes the thumbnails in a directory that are older than the given
+	 * age, and the oldest ones beyond the given number.
+	 *
+	 * @param directory
+	 *            the thumbnail directory
+	 * @param maxFiles
+	 *            the number of thumbnails to keep at most
+	 * @param maxAgeMillis
+	 *            the age after which thumbnails are deleted
+	 */
+	static void prune(final File directory, final int maxFiles, final long maxAgeMillis) {
+
+		final File[] files = directory.listFiles((dir, name) -> name.endsWith(".png") || name.endsWith(".tmp"));
+		if (files == null)
+			return;
+
+		// newest first, with the times read once
+		final long now = System.currentTimeMillis();
+		final Map<File, Long> modified = new HashMap<>();
+		for (final File file : files)
+			modified.put(file, file.lastModified());
+
+		Arrays.sort(files, (a, b) -> Long.compare(modified.get(b), modified.get(a)));
+		for (int i = 0; i < files.length; i++)
+			if (i >= maxFiles || now - modified.get(files[i]) > maxAgeMillis)
+				files[i].delete();
+	}
+
+	private File file(final String key) {
+
+		return new File(directory, DiscoveryIndex.hash(key) + ".png");
+	}
+
+	private static class Request {
+
+		private final String key;
+
+		private final N5DatasetMetadata meta;
+
+		private final N5Metadata parentMeta;
+
+		private final Runnable onLoaded;
+
+		public Request(final String key, final N5DatasetMetadata meta, final N5Metadata parentMeta, final Runnable onLoaded) {
+
+			this.key = key;
+			this.meta = meta;
+			this.parentMeta = parentMeta;
+			this.onLoaded = onLoaded;
+		}
+	}
+
+}
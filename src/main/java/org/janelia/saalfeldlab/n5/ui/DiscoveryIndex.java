@@ -0,0 +1,342 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ui;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.swing.tree.DefaultTreeModel;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.v04.OmeNgffMultiScaleMetadata;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import ij.Prefs;
+
+/**
+ * A local record of the groups and datasets of containers that were opened
+ * before, so that their tree can be shown at once when they are opened
+ * again.
+ * <p>
+ * For every node, the index stores whether it had metadata and, for
+ * datasets, the dimensions and data type shown in the tree. Restored nodes
+ * carry {@link IndexedMetadata} placeholders, which have to be replaced by
+ * parsing the node before it is opened. The index of a container is written
+ * once its tree was listed and parsed completely, and is stored in the
+ * directory {@value #DIRECTORY} of the ImageJ preferences directory.
+ * <p>
+ * {@link #saveLater} records the tree on the calling thread, which has to
+ * own the tree, and writes it in the background.
+ */
+public class DiscoveryIndex {
+
+	public static final String DIRECTORY = "n5-discovery";
+
+	private static DiscoveryIndex instance;
+
+	private final File directory;
+
+	private final Gson gson = new GsonBuilder().create();
+
+	private final ExecutorService writeExec = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "n5-discovery-index");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public DiscoveryIndex(final File directory) {
+
+		this.directory = directory;
+	}
+
+	public static synchronized DiscoveryIndex getInstance() {
+
+		if (instance == null)
+			instance = new DiscoveryIndex(new File(Prefs.getPrefsDir(), DIRECTORY));
+
+		return instance;
+	}
+
+	/**
+	 * Adds the nodes recorded for a container below the given root.
+	 *
+	 * @param key
+	 *            identifies the container and the root path
+	 * @param root
+	 *            the root node, without children
+	 * @param treeModel
+	 *            the tree model of the new nodes
+	 * @param order
+	 *            the order of siblings
+	 * @return true if the container was indexed
+	 */
+	public boolean restore(final String key, final N5SwingTreeNode root, final DefaultTreeModel treeModel,
+			final Comparator<N5TreeNode> order) {
+
+		final File file = file(key);
+		if (!file.isFile())
+			return false;
+
+		final Index index;
+		try (final Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			index = gson.fromJson(reader, Index.class);
+		} catch (final Exception e) {
+			return false;
+		}
+
+		if (index == null || !key.equals(index.key) || index.nodes == null)
+			return false;
+
+		// entries are stored parents first
+		final Map<String, N5SwingTreeNode> nodes = new HashMap<>();
+		nodes.put(root.getPath(), root);
+		for (final Entry entry : index.nodes) {
+			final N5SwingTreeNode node;
+			if (entry.path.equals(root.getPath()))
+				node = root;
+			else {
+				final N5SwingTreeNode parent = nodes.get(parentPath(entry.path));
+				if (parent == null)
+					continue;
+
+				node = new N5SwingTreeNode(entry.path, parent, treeModel);
+				parent.add(node);
+				nodes.put(entry.path, node);
+			}
+			node.setMetadata(entry.metadata());
+		}
+
+		sort(root, order);
+		treeModel.nodeStructureChanged(root);
+		return true;
+	}
+
+	/**
+	 * Records the tree below the given root.
+	 *
+	 * @param key
+	 *            identifies the container and the root path
+	 * @param root
+	 *            the root node
+	 * @throws IOException
+	 *             if the index can not be written
+	 */
+	public void save(final String key, final N5SwingTreeNode root) throws IOException {
+
+		write(index(key, root));
+	}
+
+	/**
+	 * Records the tree below the given root, and writes it in the background.
+	 * Errors are ignored, the container is listed again the next time.
+	 *
+	 * @param key
+	 *            identifies the container and the root path
+	 * @param root
+	 *            the root node
+	 * @return the future of the write
+	 */
+	public Future<?> saveLater(final String key, final N5SwingTreeNode root) {
+
+		final Index index = index(key, root);
+		return writeExec.submit(() -> {
+			try {
+				write(index);
+			} catch (final IOException e) {
+				// the container will be listed again next time
+			}
+		});
+	}
+
+	private static Index index(final String key, final N5SwingTreeNode root) {
+
+		final Index index = new Index();
+		index.key = key;
+		index.nodes = new ArrayList<>();
+		addEntries(root, index.nodes);
+		return index;
+	}
+
+	private synchronized void write(final Index index) throws IOException {
+
+		directory.mkdirs();
+		final File file = file(index.key);
+		final File tmp = new File(directory, file.getName() + ".tmp");
+		try (final Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+			gson.toJson(index, writer);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static void addEntries(final N5TreeNode node, final List<Entry> entries) {
+
+		entries.add(new Entry(node.getPath(), node.getMetadata()));
+		for (final N5TreeNode child : node.childrenList())
+			addEntries(child, entries);
+	}
+
+	private static void sort(final N5TreeNode node, final Comparator<N5TreeNode> order) {
+
+		node.childrenList().sort(order);
+		for (final N5TreeNode child : node.childrenList())
+			sort(child, order);
+	}
+
+	private File file(final String key) {
+
+		return new File(directory, hash(key) + ".json");
+	}
+
+	static String hash(final String key) {
+
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder hex = new StringBuilder();
+			for (final byte b : digest)
+				hex.append(String.format("%02x", b));
+
+			return hex.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			return Integer.toHexString(key.hashCode());
+		}
+	}
+
+	private static String parentPath(final String path) {
+
+		final int i = path.lastIndexOf('/');
+		return i < 0 ? "" : path.substring(0, i);
+	}
+
+	private static class Index {
+
+		private String key;
+
+		private List<Entry> nodes;
+	}
+
+	private static class Entry {
+
+		private String path;
+
+		private boolean metadata;
+
+		private long[] dimensions;
+
+		private int[] blockSize;
+
+		private String dataType;
+
+		public Entry(final String path, final N5Metadata meta) {
+
+			this.path = path;
+			metadata = meta != null;
+			if (meta instanceof N5DatasetMetadata) {
+				final DatasetAttributes attributes = ((N5DatasetMetadata)meta).getAttributes();
+				dimensions = attributes.getDimensions().clone();
+				blockSize = attributes.getBlockSize().clone();
+				dataType = attributes.getDataType().toString();
+
+				// stored in the order they are shown
+				if (OmeNgffMultiScaleMetadata.fOrder(attributes)) {
+					ArrayUtils.reverse(dimensions);
+					ArrayUtils.reverse(blockSize);
+				}
+			}
+		}
+
+		public N5Metadata metadata() {
+
+			if (!metadata)
+				return null;
+			else if (dimensions == null)
+				return new IndexedMetadata(path);
+			else
+				return new IndexedDatasetMetadata(path,
+						new DatasetAttributes(dimensions, blockSize, DataType.fromString(dataType), new RawCompression()));
+		}
+	}
+
+	/**
+	 * Stands in for the metadata of a node restored from the index, until it
+	 * is parsed again.
+	 */
+	public static class IndexedMetadata implements N5Metadata {
+
+		private final String path;
+
+		public IndexedMetadata(final String path) {
+
+			this.path = path;
+		}
+
+		@Override
+		public String getPath() {
+
+			return path;
+		}
+	}
+
+	public static class IndexedDatasetMetadata extends IndexedMetadata implements N5DatasetMetadata {
+
+		private final DatasetAttributes attributes;
+
+		public IndexedDatasetMetadata(final String path, final DatasetAttributes attributes) {
+
+			super(path);
+			this.attributes = attributes;
+		}
+
+		@Override
+		public DatasetAttributes getAttributes() {
+
+			return attributes;
+		}
+	}
+
+}
@@ -34,12 +34,16 @@ public class ImprovedFormattedTextField extends JFormattedTextField {
 
 	private static final Color ERROR_FOREGROUND_COLOR = null;
 
+	private static final Color CHECKING_BACKGROUND_COLOR = new Color(255, 248, 215);
+
 	private Color fBackground, fForeground;
 
 	private Runnable updateCallback;
 
 	private boolean runCallback;
 
+	private ContainerPathValidator.State checkState = ContainerPathValidator.State.NONE;
+
 	public ImprovedFormattedTextField(AbstractFormatter formatter) {
 
 		super(formatter);
@@ -116,15 +120,34 @@ public class ImprovedFormattedTextField extends JFormattedTextField {
 	 */
 	private void updateBackground() {
 
-		final boolean valid = validContent();
+		final boolean valid = validContent() && checkState != ContainerPathValidator.State.INVALID;
 		if (ERROR_BACKGROUND_COLOR != null) {
-			setBackground(valid ? fBackground : ERROR_BACKGROUND_COLOR);
+			if (valid && checkState == ContainerPathValidator.State.CHECKING)
+				setBackground(CHECKING_BACKGROUND_COLOR);
+			else
+				setBackground(valid ? fBackground : ERROR_BACKGROUND_COLOR);
 		}
 		if (ERROR_FOREGROUND_COLOR != null) {
 			setForeground(valid ? fForeground : ERROR_FOREGROUND_COLOR);
 		}
 	}
 
+	/**
+	 * Shows the result of a check of the content that runs in the background,
+	 * in addition to the validation by the formatter.
+	 *
+	 * @param state
+	 *            the state of the check
+	 * @param message
+	 *            shown as the tool tip, may be null
+	 */
+	public void setCheckState(final ContainerPathValidator.State state, final String message) {
+
+		checkState = state;
+		setToolTipText(message);
+		updateBackground();
+	}
+
 	@Override
 	public void updateUI() {
 
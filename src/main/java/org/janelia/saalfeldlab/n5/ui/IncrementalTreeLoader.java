@@ -0,0 +1,587 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultTreeModel;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.metadata.FlatListingDiscovery;
+import org.janelia.saalfeldlab.n5.metadata.FlatListingDiscovery.KeyLister;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+
+/**
+ * Lists and parses a container one level at a time, rather than listing the
+ * whole container before showing anything.
+ * <p>
+ * Loading a group lists its children and their children, and parses the
+ * group together with them, so that the metadata of the rows shown below an
+ * expanded group are known. Groups are loaded in breadth-first order in the
+ * background; groups that the user expands are loaded first. The metadata of
+ * a group is refined when its children are loaded in turn.
+ * <p>
+ * Listing and parsing run on the given executor, up to a given number of
+ * groups at a time. The children of a group are shown as soon as they are
+ * listed, with one event per group whose children changed, and the
+ * metadata of each node as soon as it is parsed. Nodes that are in the tree
+ * already are updated, and removed if they are no longer listed.
+ * <p>
+ * If flat listing is enabled and the container is in an object store, all
+ * keys of the container are listed in the background at the same time, see
+ * {@link FlatListingDiscovery}. Once that listing is done, the remaining
+ * groups are loaded from it without listing them one at a time. If it
+ * fails, groups are listed one at a time until the end.
+ * <p>
+ * {@link #cancel()} stops loading: queued groups are dropped, and the
+ * threads that list and parse are interrupted.
+ */
+public class IncrementalTreeLoader {
+
+	private final N5Reader n5;
+
+	private final N5DatasetDiscoverer discoverer;
+
+	private final DefaultTreeModel treeModel;
+
+	private final Comparator<N5TreeNode> order;
+
+	private final ExecutorService listExecutor;
+
+	private final N5SwingTreeNode root;
+
+	private final LinkedBlockingDeque<String> queue = new LinkedBlockingDeque<>();
+
+	private final Set<String> loaded = ConcurrentHashMap.newKeySet();
+
+	// accessed on the event dispatch thread only
+	private final Map<String, N5SwingTreeNode> nodes = new HashMap<>();
+
+	// parsed nodes whose metadata are not shown yet
+	private final ConcurrentLinkedQueue<N5TreeNode> parsed = new ConcurrentLinkedQueue<>();
+
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	private final Set<Future<?>> workerFutures = ConcurrentHashMap.newKeySet();
+
+	private boolean flatListing;
+
+	// the children of every group, once the flat listing is done
+	private volatile Map<String, List<String>> flatChildren;
+
+	private Future<?> flatListingFuture;
+
+	private ExecutorService exec;
+
+	private int parallelism = 1;
+
+	private int workers;
+
+	private volatile boolean cancelled;
+
+	// a group could not be listed or parsed
+	private volatile boolean failed;
+
+	private Runnable onIdle;
+
+	/**
+	 * @param n5
+	 *            the n5 reader
+	 * @param discoverer
+	 *            parses the metadata
+	 * @param treeModel
+	 *            the model whose root is the node to load from
+	 * @param order
+	 *            the order of siblings
+	 * @param listExecutor
+	 *            lists the children of the children of a group in parallel
+	 */
+	public IncrementalTreeLoader(
+			final N5Reader n5,
+			final N5DatasetDiscoverer discoverer,
+			final DefaultTreeModel treeModel,
+			final Comparator<N5TreeNode> order,
+			final ExecutorService listExecutor) {
+
+		this.n5 = n5;
+		this.discoverer = discoverer;
+		this.treeModel = treeModel;
+		this.order = order;
+		this.listExecutor = listExecutor;
+
+		root = (N5SwingTreeNode)treeModel.getRoot();
+		index(root);
+	}
+
+	/**
+	 * Nodes that are in the tree already, for example restored from a
+	 * {@link DiscoveryIndex}, are updated rather than added again.
+	 */
+	private void index(final N5TreeNode node) {
+
+		nodes.put(node.getPath(), (N5SwingTreeNode)node);
+		for (final N5TreeNode child : node.childrenList())
+			index(child);
+	}
+
+	/**
+	 * Sets a callback that is run on the event dispatch thread whenever there
+	 * is nothing left to load.
+	 *
+	 * @param onIdle
+	 *            the callback
+	 */
+	public void setOnIdle(final Runnable onIdle) {
+
+		this.onIdle = onIdle;
+	}
+
+	/**
+	 * Sets whether the container is also listed flat, if it is in an object
+	 * store. Has to be called before {@link #start}.
+	 *
+	 * @param flatListing
+	 *            the flag
+	 */
+	public void setFlatListing(final boolean flatListing) {
+
+		this.flatListing = flatListing;
+	}
+
+	/**
+	 * Loads the root and then the rest of the container in breadth-first
+	 * order.
+	 *
+	 * @param exec
+	 *            the executor that lists and parses
+	 * @param parallelism
+	 *            the number of groups that are loaded at the same time
+	 */
+	public void start(final ExecutorService exec, final int parallelism) {
+
+		this.exec = exec;
+		this.parallelism = Math.max(1, parallelism);
+		if (flatListing)
+			startFlatListing();
+
+		queue.offerLast(root.getPath());
+		run();
+	}
+
+	private synchronized void startFlatListing() {
+
+		// a thread of its own, the listing can take many requests
+		final FutureTask<Void> task = new FutureTask<>(() -> {
+			final Optional<KeyLister> lister = FlatListingDiscovery.lister(n5.getURI());
+			if (!lister.isPresent())
+				return;
+
+			try (final KeyLister l = lister.get()) {
+				flatChildren = FlatListingDiscovery.listChildren(l, root.getPath());
+			} catch (final Exception e) {
+				// keep listing one group at a time
+			}
+		}, null);
+
+		final Thread t = new Thread(task, "n5-flat-listing");
+		t.setDaemon(true);
+		t.start();
+		flatListingFuture = task;
+	}
+
+	private synchronized void stopFlatListing() {
+
+		if (flatListingFuture != null)
+			flatListingFuture.cancel(true);
+	}
+
+	/**
+	 * Loads the given group before all others, for example because the user
+	 * expanded it.
+	 *
+	 * @param node
+	 *            the group
+	 */
+	public void request(final N5SwingTreeNode node) {
+
+		queue.offerFirst(node.getPath());
+		run();
+	}
+
+	/**
+	 * Stops loading. Groups that are being listed or parsed are interrupted,
+	 * and nothing more is added to the tree.
+	 */
+	public void cancel() {
+
+		cancelled = true;
+		queue.clear();
+		stopFlatListing();
+		for (final Future<?> future : workerFutures)
+			future.cancel(true);
+	}
+
+	public boolean isCancelled() {
+
+		return cancelled;
+	}
+
+	/**
+	 * Whether every group loaded so far was listed and parsed, so that the
+	 * tree is the whole container once the loader is idle.
+	 *
+	 * @return false if any group could not be loaded
+	 */
+	public boolean isComplete() {
+
+		return !failed && !cancelled;
+	}
+
+	private synchronized void run() {
+
+		if (exec == null)
+			return;
+
+		while (!cancelled && workers < parallelism && !queue.isEmpty() && !exec.isShutdown()) {
+			final FutureTask<Void> task = new FutureTask<Void>(this::work, null) {
+
+				@Override
+				protected void done() {
+
+					workerFutures.remove(this);
+				}
+			};
+
+			workers++;
+			workerFutures.add(task);
+			try {
+				exec.execute(task);
+			} catch (final RejectedExecutionException e) {
+				workers--;
+				workerFutures.remove(task);
+				return;
+			}
+		}
+	}
+
+	private void work() {
+
+		try {
+			String path;
+			while (!cancelled && !Thread.currentThread().isInterrupted() && (path = next()) != null)
+				load(path);
+		} finally {
+			synchronized (this) {
+				workers--;
+			}
+		}
+
+		// requests that arrived after the queue was drained start a new worker
+		if (!queue.isEmpty())
+			run();
+		else if (isIdle()) {
+			// everything is loaded, the flat listing is of no use anymore
+			stopFlatListing();
+			if (onIdle != null)
+				SwingUtilities.invokeLater(() -> {
+					if (!cancelled)
+						onIdle.run();
+				});
+		}
+	}
+
+	private synchronized boolean isIdle() {
+
+		return workers == 0 && queue.isEmpty() && !cancelled;
+	}
+
+	private String next() {
+
+		String path;
+		while ((path = queue.pollFirst()) != null) {
+			if (loaded.add(path))
+				return path;
+		}
+		return null;
+	}
+
+	private void load(final String path) {
+
+		final N5TreeNode group = new N5TreeNode(path);
+		final List<String> childGroups = new ArrayList<>();
+		final List<Future<String[]>> grandChildren = new ArrayList<>();
+
+		// children that could not be listed, shown without their children
+		final Set<String> unlisted = new HashSet<>();
+		try {
+			final String[] names = list(path);
+			if (names != null) {
+				// list the children of children in parallel
+				for (final String name : names) {
+					final String childPath = child(path, name);
+					grandChildren.add(listExecutor.submit(() -> list(childPath)));
+				}
+
+				for (int i = 0; i < names.length; i++) {
+					final N5TreeNode child = new N5TreeNode(child(path, names[i]));
+					group.childrenList().add(child);
+
+					final String[] grandChildNames;
+					try {
+						grandChildNames = grandChildren.get(i).get();
+					} catch (final ExecutionException e) {
+						// the siblings are still shown, but the index is not saved
+						failed = true;
+						unlisted.add(child.getPath());
+						if (!(e.getCause() instanceof N5Exception) && !cancelled)
+							e.printStackTrace();
+
+						continue;
+					}
+					if (grandChildNames != null) {
+						childGroups.add(child.getPath());
+						for (final String name : grandChildNames)
+							child.childrenList().add(new N5TreeNode(child(child.getPath(), name)));
+					}
+				}
+			}
+
+			// show the listed nodes before their metadata are parsed
+			if (cancelled)
+				return;
+
+			SwingUtilities.invokeLater(() -> publishChildren(group, unlisted));
+
+			discoverer.parseMetadataRecursive(group, x -> {
+				parsed.add(x);
+				if (flushScheduled.compareAndSet(false, true))
+					SwingUtilities.invokeLater(this::flush);
+			});
+		} catch (final InterruptedException e) {
+			for (final Future<String[]> future : grandChildren)
+				future.cancel(true);
+
+			Thread.currentThread().interrupt();
+			return;
+		} catch (final Exception e) {
+			// keep what is shown for groups that can not be listed
+			failed = true;
+			if (!(e instanceof N5Exception) && !cancelled)
+				e.printStackTrace();
+
+			return;
+		}
+
+		if (cancelled)
+			return;
+
+		SwingUtilities.invokeLater(() -> publish(group, unlisted));
+
+		for (final String childGroup : childGroups)
+			queue.offerLast(childGroup);
+
+		run();
+	}
+
+	/**
+	 * Lists the children of a group, from the flat listing if it is done.
+	 *
+	 * @return the names of the children, or null for datasets
+	 */
+	private String[] list(final String path) {
+
+		final Map<String, List<String>> children = flatChildren;
+		if (children != null) {
+			// nodes without children are datasets, or groups with nothing to open
+			final List<String> names = children.getOrDefault(N5URI.normalizeGroupPath(path), Collections.emptyList());
+			return names.isEmpty() ? null : names.toArray(new String[0]);
+		}
+
+		return n5.datasetExists(path) ? null : n5.list(path);
+	}
+
+	/**
+	 * Adds the listed children of a group and their children to the tree.
+	 * Children that could not be listed are left unlisted.
+	 */
+	private void publishChildren(final N5TreeNode group, final Set<String> unlisted) {
+
+		// the node was removed, or another container was opened
+		final N5SwingTreeNode node = nodes.get(group.getPath());
+		if (node == null || cancelled || treeModel.getRoot() != root)
+			return;
+
+		node.setChildrenListed(true);
+		merge(node, group.childrenList());
+
+		for (final N5TreeNode child : group.childrenList()) {
+			final N5SwingTreeNode childNode = nodes.get(child.getPath());
+			if (childNode == null || unlisted.contains(child.getPath()))
+				continue;
+
+			childNode.setChildrenListed(true);
+			merge(childNode, child.childrenList());
+		}
+	}
+
+	/**
+	 * Shows the metadata of the nodes parsed since the last call.
+	 */
+	private void flush() {
+
+		flushScheduled.set(false);
+		if (cancelled || treeModel.getRoot() != root) {
+			parsed.clear();
+			return;
+		}
+
+		N5TreeNode x;
+		while ((x = parsed.poll()) != null) {
+			final N5SwingTreeNode node = nodes.get(x.getPath());
+			if (node != null && x.getMetadata() != null && node.getMetadata() != x.getMetadata()) {
+				node.setMetadata(x.getMetadata());
+				treeModel.nodeChanged(node);
+			}
+		}
+	}
+
+	/**
+	 * Copies the metadata of a parsed group, its children and their children
+	 * into the tree, and removes children that can not be opened. Children
+	 * that could not be listed are kept.
+	 */
+	private void publish(final N5TreeNode group, final Set<String> unlisted) {
+
+		// the node was removed, or another container was opened
+		final N5SwingTreeNode node = nodes.get(group.getPath());
+		if (node == null || cancelled || treeModel.getRoot() != root)
+			return;
+
+		node.setMetadata(group.getMetadata());
+		for (final N5TreeNode child : group.childrenList()) {
+			final N5SwingTreeNode childNode = nodes.get(child.getPath());
+			if (childNode == null)
+				continue;
+
+			childNode.setMetadata(child.getMetadata());
+			for (final N5TreeNode grandChild : child.childrenList()) {
+				final N5SwingTreeNode grandChildNode = nodes.get(grandChild.getPath());
+				if (grandChildNode != null)
+					grandChildNode.setMetadata(grandChild.getMetadata());
+			}
+
+			// nothing openable here
+			if (childNode.getChildCount() == 0 && childNode.getMetadata() == null && !unlisted.contains(child.getPath()))
+				remove(childNode);
+			else
+				treeModel.nodeChanged(childNode);
+		}
+		treeModel.nodeChanged(node);
+	}
+
+	/**
+	 * Adds the nodes of the given paths that are not children of the given
+	 * node yet, in order, with one event, and removes children that are not
+	 * listed anymore.
+	 */
+	private void merge(final N5SwingTreeNode parent, final List<N5TreeNode> children) {
+
+		final Set<String> listed = new HashSet<>();
+		for (final N5TreeNode child : children)
+			listed.add(child.getPath());
+
+		for (final N5TreeNode child : new ArrayList<>(parent.childrenList()))
+			if (!listed.contains(child.getPath()))
+				remove((N5SwingTreeNode)child);
+
+		final Map<N5TreeNode, Boolean> added = new IdentityHashMap<>();
+		for (final N5TreeNode child : children) {
+			if (nodes.containsKey(child.getPath()))
+				continue;
+
+			final N5SwingTreeNode childNode = new N5SwingTreeNode(child.getPath(), parent, treeModel);
+			childNode.setChildrenListed(false);
+			parent.add(childNode);
+			nodes.put(child.getPath(), childNode);
+			added.put(childNode, true);
+		}
+
+		if (added.isEmpty())
+			return;
+
+		parent.childrenList().sort(order);
+		final int[] indexes = new int[added.size()];
+		int j = 0;
+		final List<N5TreeNode> siblings = parent.childrenList();
+		for (int i = 0; i < siblings.size(); i++)
+			if (added.containsKey(siblings.get(i)))
+				indexes[j++] = i;
+
+		treeModel.nodesWereInserted(parent, indexes);
+	}
+
+	private void remove(final N5SwingTreeNode node) {
+
+		unindex(node);
+		if (node.getParent() != null)
+			treeModel.removeNodeFromParent(node);
+	}
+
+	private void unindex(final N5TreeNode node) {
+
+		nodes.remove(node.getPath());
+		for (final N5TreeNode child : node.childrenList())
+			unindex(child);
+	}
+
+	private static String child(final String parentPath, final String name) {
+
+		return parentPath.isEmpty() ? name : parentPath + "/" + name;
+	}
+
+}
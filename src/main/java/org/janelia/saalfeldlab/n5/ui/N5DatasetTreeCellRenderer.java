@@ -5,6 +5,7 @@ import java.text.CharacterIterator;
 import java.text.StringCharacterIterator;
 import java.util.Arrays;
 
+import javax.swing.Icon;
 import javax.swing.JTree;
 import javax.swing.tree.DefaultTreeCellRenderer;
 
@@ -37,6 +38,8 @@ public class N5DatasetTreeCellRenderer extends DefaultTreeCellRenderer
 
 	protected String rootName;
 
+	protected DatasetThumbnails thumbnails;
+
 	public N5DatasetTreeCellRenderer( final boolean showConversionWarning )
 	{
 		this.showConversionWarning = showConversionWarning;
@@ -46,6 +49,17 @@ public class N5DatasetTreeCellRenderer extends DefaultTreeCellRenderer
 		this.rootName = rootName;
 	}
 
+	/**
+	 * Shows thumbnails next to dataset nodes. Thumbnails that are not
+	 * available yet are computed in the background, and the tree is repainted
+	 * when they are.
+	 *
+	 * @param thumbnails the thumbnails, or null to show none
+	 */
+	public void setThumbnails( final DatasetThumbnails thumbnails ) {
+		this.thumbnails = thumbnails;
+	}
+
 	@Override
 	public Component getTreeCellRendererComponent( final JTree tree, final Object value,
 			final boolean sel, final boolean exp, final boolean leaf, final int row, final boolean hasFocus )
@@ -80,6 +94,13 @@ public class N5DatasetTreeCellRenderer extends DefaultTreeCellRenderer
 						memSizeString,
 						"</html>"
 				}));
+
+				if ( thumbnails != null )
+				{
+					final Icon thumbnail = thumbnails.get( node, tree::repaint );
+					if ( thumbnail != null )
+						setIcon( thumbnail );
+				}
 			}
 			else
 			{
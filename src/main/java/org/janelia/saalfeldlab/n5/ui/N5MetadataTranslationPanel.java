@@ -26,16 +26,20 @@
 package org.janelia.saalfeldlab.n5.ui;
 
 import java.awt.BorderLayout;
+import java.io.IOException;
 import java.util.Optional;
 import java.util.function.Predicate;
 
 import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 
 import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.metadata.NodeTranslatedN5Reader;
+import org.janelia.saalfeldlab.n5.metadata.NodeTranslation;
 import org.janelia.saalfeldlab.n5.universe.metadata.canonical.CanonicalMetadata;
 import org.janelia.saalfeldlab.n5.universe.translation.TranslatedN5Reader;
 
@@ -49,6 +53,8 @@ public class N5MetadataTranslationPanel {
 	
 	private JTextArea textArea;
 
+	private JCheckBox perNodeCheckbox;
+
 	private Predicate<CanonicalMetadata> filter;
 
 	public N5MetadataTranslationPanel() {
@@ -86,6 +92,40 @@ public class N5MetadataTranslationPanel {
 			return Optional.empty();
 	}
 
+	/**
+	 * Returns an optional containing a reader that translates the container
+	 * if any fields are non empty. If the translation is applied to each node,
+	 * nodes are translated when they are read, otherwise the whole container
+	 * is translated at once.
+	 *
+	 * @param n5 the {@link N5Reader}
+	 * @param gson the {@link Gson}
+	 * @return the reader optional
+	 */
+	public Optional<N5Reader> getTranslatedReaderOptional( final N5Reader n5, final Gson gson ) {
+
+		if (!isTranslationProvided())
+			return Optional.empty();
+		else if (!isPerNode())
+			return Optional.ofNullable(getTranslatedN5( n5, gson ));
+
+		try {
+			final NodeTranslation translation = new NodeTranslation(textArea.getText());
+			return Optional.of(new NodeTranslatedN5Reader(n5, gson, translation));
+		} catch (final IOException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * @return whether the translation is applied to the attributes of each
+	 *         node separately
+	 */
+	public boolean isPerNode() {
+
+		return perNodeCheckbox != null && perNodeCheckbox.isSelected();
+	}
+
 	public boolean isTranslationProvided() {
 
 		if( textArea == null )
@@ -115,6 +155,12 @@ public class N5MetadataTranslationPanel {
 		final JScrollPane textView = new JScrollPane( textArea );
 		panel.add( textView, BorderLayout.CENTER );
 
+		perNodeCheckbox = new JCheckBox("Translate each node on demand");
+		perNodeCheckbox.setToolTipText("<html>Apply the translation to the attributes of each node when it is read, for large containers.<br>"
+				+ "The input is then the attributes of one node, with its path in $path, rather than the whole tree,<br>"
+				+ "so translations written for the whole tree have to be adapted.</html>");
+		panel.add( perNodeCheckbox );
+
         return panel;
 	}
 
@@ -1,11 +1,18 @@
 package org.janelia.saalfeldlab.n5.ui;
 
+import java.math.BigInteger;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.MutableTreeNode;
@@ -19,6 +26,13 @@ public class N5SwingTreeNode extends N5TreeNode implements MutableTreeNode {
 
 	private DefaultTreeModel treeModel;
 
+	private boolean childrenListed = true;
+
+	// children by node name, kept in sync with childrenList()
+	private final HashMap<String, N5SwingTreeNode> childIndex = new HashMap<>();
+
+	private SortKey sortKey;
+
 	public N5SwingTreeNode( final String path ) {
 		super( path );
 	}
@@ -48,45 +62,205 @@ public class N5SwingTreeNode extends N5TreeNode implements MutableTreeNode {
 	public void add(final N5SwingTreeNode child) {
 
 		childrenList().add(child);
+		childIndex.put(child.getNodeName(), child);
+	}
+
+	/**
+	 * Returns the child with the given name.
+	 *
+	 * @param name the node name
+	 * @return the child, or null
+	 */
+	public N5SwingTreeNode getChild(final String name) {
+
+		// children may have been added to childrenList() directly
+		if (childIndex.size() != childrenList().size()) {
+			childIndex.clear();
+			for (final N5TreeNode child : childrenList())
+				childIndex.put(child.getNodeName(), (N5SwingTreeNode)child);
+		}
+		return childIndex.get(name);
+	}
+
+	/**
+	 * Returns the node at the given path below this node, without adding it.
+	 *
+	 * @param path the path
+	 * @return the node, or null
+	 */
+	public N5SwingTreeNode find(final String path) {
+
+		final String relativePath = relativePath(path);
+		if (relativePath == null)
+			return null;
+
+		N5SwingTreeNode node = this;
+		int start = 0;
+		while (node != null && start < relativePath.length()) {
+			final int end = nextSeparator(relativePath, start);
+			node = node.getChild(relativePath.substring(start, end));
+			start = end + 1;
+		}
+		return node;
 	}
 
 	@Override
 	public N5SwingTreeNode addPath(final String path) {
 
-		String normPath = removeLeadingSlash(path);
-		if (!getPath().isEmpty() && !normPath.startsWith(getPath()))
+		return addPath(path, null);
+	}
+
+	/**
+	 * Adds the nodes of all given paths below this node.
+	 * <p>
+	 * Unlike {@link #addPath(String)}, which notifies the tree model of every
+	 * node it inserts, the nodes are added first, the children of every node
+	 * that changed are sorted, and the tree model is notified with one
+	 * structure change per added subtree.
+	 *
+	 * @param paths the paths
+	 * @param order the order of siblings
+	 */
+	public void addPaths(final Collection<String> paths, final Comparator<N5TreeNode> order) {
+
+		final Set<N5SwingTreeNode> changed = new LinkedHashSet<>();
+		for (final String path : paths)
+			addPath(path, changed);
+
+		for (final N5SwingTreeNode node : changed)
+			node.childrenList().sort(order);
+
+		if (treeModel != null) {
+			for (final N5SwingTreeNode node : changed)
+				if (!hasAncestorIn(node, changed))
+					treeModel.nodeStructureChanged(node);
+		}
+	}
+
+	/**
+	 * @param changed if not null, collects the nodes that children were added
+	 *            to, and the tree model is not notified
+	 */
+	private N5SwingTreeNode addPath(final String path, final Set<N5SwingTreeNode> changed) {
+
+		final String relativePath = relativePath(path);
+		if (relativePath == null)
 			return null;
 
-		if (getPath().equals(normPath))
-			return this;
-
-		final String relativePath = removeLeadingSlash(normPath.replaceAll("^" + getPath(), ""));
-
-		final int sepIdx = relativePath.indexOf("/");
-		final String childName;
-		if (sepIdx < 0)
-			childName = relativePath;
-		else
-			childName = relativePath.substring(0, sepIdx);
-
-		// get the appropriate child along the path if it exists, otherwise add
-		// it
-		N5TreeNode child = null;
-		Stream<N5TreeNode> cs = childrenList().stream().filter(n -> n.getNodeName().equals(childName));;
-		Optional<N5TreeNode> copt = cs.findFirst();
-		if (copt.isPresent())
-			child = copt.get();
-		else {
-			child = new N5SwingTreeNode(
-					getPath().isEmpty() ? childName : getPath() + "/" + childName,
-					this, treeModel);
-
-			add(child);
-
-			if (treeModel != null)
-				treeModel.nodesWereInserted(this, new int[]{childrenList().size() - 1});
+		N5SwingTreeNode node = this;
+		int start = 0;
+		while (start < relativePath.length()) {
+			final int end = nextSeparator(relativePath, start);
+			final String childName = relativePath.substring(start, end);
+
+			// get the appropriate child along the path if it exists, otherwise add it
+			N5SwingTreeNode child = node.getChild(childName);
+			if (child == null) {
+				child = new N5SwingTreeNode(
+						node.getPath().isEmpty() ? childName : node.getPath() + "/" + childName,
+						node, treeModel);
+
+				node.add(child);
+				if (changed != null)
+					changed.add(node);
+				else if (treeModel != null)
+					treeModel.nodesWereInserted(node, new int[]{node.getChildCount() - 1});
+			}
+			node = child;
+			start = end + 1;
 		}
-		return (N5SwingTreeNode)child.addPath(normPath);
+		return node;
+	}
+
+	/**
+	 * The part of the given path below this node, without leading and trailing
+	 * slashes, or null if the path is not below this node.
+	 */
+	private String relativePath(final String path) {
+
+		final String normPath = removeLeadingSlash(path);
+		final String base = getPath();
+		if (!normPath.startsWith(base))
+			return null;
+
+		int start = base.length();
+		if (!base.isEmpty() && start < normPath.length() && normPath.charAt(start) != '/')
+			return null;
+
+		int end = normPath.length();
+		while (start < end && normPath.charAt(start) == '/')
+			start++;
+		while (end > start && normPath.charAt(end - 1) == '/')
+			end--;
+
+		return normPath.substring(start, end);
+	}
+
+	private static int nextSeparator(final String path, final int start) {
+
+		final int i = path.indexOf('/', start);
+		return i < 0 ? path.length() : i;
+	}
+
+	private static boolean hasAncestorIn(final N5SwingTreeNode node, final Set<N5SwingTreeNode> nodes) {
+
+		for (N5SwingTreeNode p = node.parent; p != null; p = p.parent)
+			if (nodes.contains(p))
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Sorts the children of this node and of all its descendants, and notifies
+	 * the tree model once.
+	 *
+	 * @param order the order of siblings
+	 */
+	public void sortRecursive(final Comparator<N5TreeNode> order) {
+
+		sortChildren(this, order);
+		if (treeModel != null)
+			treeModel.nodeStructureChanged(this);
+	}
+
+	private static void sortChildren(final N5TreeNode node, final Comparator<N5TreeNode> order) {
+
+		final List<N5TreeNode> children = node.childrenList();
+		if (children.isEmpty())
+			return;
+
+		children.sort(order);
+		for (final N5TreeNode child : children)
+			sortChildren(child, order);
+	}
+
+	/**
+	 * Orders nodes by name like an alphanumeric comparator over the given
+	 * collator: runs of digits are compared by their value, and all other
+	 * text with the collator. The collation keys of a node are computed once
+	 * and kept with the node.
+	 *
+	 * @param collator the collator
+	 * @return the comparator
+	 */
+	public static Comparator<N5TreeNode> order(final Collator collator) {
+
+		return (a, b) -> sortKey(a, collator).compareTo(sortKey(b, collator));
+	}
+
+	private static SortKey sortKey(final N5TreeNode node, final Collator collator) {
+
+		if (!(node instanceof N5SwingTreeNode))
+			return new SortKey(node.toString(), collator);
+
+		final N5SwingTreeNode swingNode = (N5SwingTreeNode)node;
+		SortKey key = swingNode.sortKey;
+		if (key == null || key.collator != collator) {
+			key = new SortKey(node.toString(), collator);
+			swingNode.sortKey = key;
+		}
+		return key;
 	}
 
 	@Override
@@ -117,7 +291,20 @@ public class N5SwingTreeNode extends N5TreeNode implements MutableTreeNode {
 
 	@Override
 	public boolean isLeaf() {
-		return getChildCount() < 1;
+		return childrenListed && getChildCount() < 1;
+	}
+
+	/**
+	 * Nodes whose children were not listed yet are not shown as leaves.
+	 *
+	 * @param childrenListed whether the children of this node are known
+	 */
+	public void setChildrenListed(final boolean childrenListed) {
+		this.childrenListed = childrenListed;
+	}
+
+	public boolean isChildrenListed() {
+		return childrenListed;
 	}
 
 	public static void fromFlatList(final N5SwingTreeNode root, final String[] pathList, final String groupSeparator) {
@@ -158,24 +345,28 @@ public class N5SwingTreeNode extends N5TreeNode implements MutableTreeNode {
 
 	@Override
 	public void insert(MutableTreeNode child, int index) {
-		if( child instanceof N5SwingTreeNode )
-			childrenList().add(index, (N5SwingTreeNode)child);
+		if( child instanceof N5SwingTreeNode ) {
+			final N5SwingTreeNode node = (N5SwingTreeNode)child;
+			childrenList().add(index, node);
+			childIndex.put(node.getNodeName(), node);
+		}
 	}
 
 	@Override
 	public void remove(int index) {
-		childrenList().remove(index);
+		final N5TreeNode node = childrenList().remove(index);
+		childIndex.remove(node.getNodeName());
 	}
 
-	@SuppressWarnings("unlikely-arg-type")
 	@Override
 	public void remove(MutableTreeNode node) {
-		childrenList().remove(node);
+		if (node instanceof N5SwingTreeNode && childrenList().remove(node))
+			childIndex.remove(((N5SwingTreeNode)node).getNodeName());
 	}
 
 	@Override
 	public void removeFromParent() {
-		parent.childrenList().remove(this);
+		parent.remove(this);
 	}
 
 	@Override
@@ -189,4 +380,56 @@ public class N5SwingTreeNode extends N5TreeNode implements MutableTreeNode {
 		// does nothing
 	}
 
+	/**
+	 * The collation keys of the runs of a node name, where runs of digits
+	 * also keep their value.
+	 */
+	private static class SortKey implements Comparable<SortKey> {
+
+		private final Collator collator;
+
+		private final CollationKey[] runs;
+
+		private final BigInteger[] numbers;
+
+		public SortKey(final String name, final Collator collator) {
+
+			this.collator = collator;
+
+			final List<CollationKey> runList = new ArrayList<>();
+			final List<BigInteger> numberList = new ArrayList<>();
+			int start = 0;
+			while (start < name.length()) {
+				final boolean digits = Character.isDigit(name.charAt(start));
+				int end = start + 1;
+				while (end < name.length() && Character.isDigit(name.charAt(end)) == digits)
+					end++;
+
+				final String run = name.substring(start, end);
+				runList.add(collator.getCollationKey(run));
+				numberList.add(digits ? new BigInteger(run) : null);
+				start = end;
+			}
+			runs = runList.toArray(new CollationKey[0]);
+			numbers = numberList.toArray(new BigInteger[0]);
+		}
+
+		@Override
+		public int compareTo(final SortKey other) {
+
+			final int n = Math.min(runs.length, other.runs.length);
+			for (int i = 0; i < n; i++) {
+				final int c;
+				if (numbers[i] != null && other.numbers[i] != null)
+					c = numbers[i].compareTo(other.numbers[i]);
+				else
+					c = runs[i].compareTo(other.runs[i]);
+
+				if (c != 0)
+					return c;
+			}
+			return Integer.compare(runs.length, other.runs.length);
+		}
+	}
+
 }
@@ -0,0 +1,323 @@
+/**
+ * Copyright (c) 2018--2020, Saalfeld lab
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.janelia.saalfeldlab.n5.ui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreeNode;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5MetadataGroup;
+
+/**
+ * Keeps the names and metadata summaries of all nodes of a tree model, so
+ * that the tree can be searched without walking it on the event dispatch
+ * thread.
+ * <p>
+ * The index follows the events of the tree model it listens to, and is
+ * safe to search from any thread while the tree is updated. Results are
+ * returned in the order of their paths.
+ * <p>
+ * A query is a list of terms separated by spaces, all of which have to
+ * match:
+ * <ul>
+ * <li>{@code type:uint8} matches datasets of the given data type</li>
+ * <li>{@code dims:3} matches datasets with the given number of
+ * dimensions</li>
+ * <li>{@code is:multiscale} matches multiscale groups, {@code is:dataset}
+ * matches datasets</li>
+ * <li>{@code re:<regex>} matches paths that contain a match of the regular
+ * expression</li>
+ * <li>terms with {@code *} or {@code ?} are globs matched against node
+ * names</li>
+ * <li>all other terms match paths that contain them, ignoring case</li>
+ * </ul>
+ */
+public class TreeSearchIndex implements TreeModelListener {
+
+	private final DefaultTreeModel treeModel;
+
+	// sorted by path, so that the first results are the same for every search
+	private final ConcurrentSkipListMap<String, Entry> entries = new ConcurrentSkipListMap<>();
+
+	private Runnable onUpdate;
+
+	public TreeSearchIndex(final DefaultTreeModel treeModel) {
+
+		this.treeModel = treeModel;
+		treeModel.addTreeModelListener(this);
+		if (treeModel.getRoot() != null)
+			addRecursive((N5TreeNode)treeModel.getRoot());
+	}
+
+	/**
+	 * Sets a callback that is run whenever the index changed.
+	 *
+	 * @param onUpdate
+	 *            the callback
+	 */
+	public void setOnUpdate(final Runnable onUpdate) {
+
+		this.onUpdate = onUpdate;
+	}
+
+	public int size() {
+
+		return entries.size();
+	}
+
+	/**
+	 * Returns the nodes matching the given query that are part of the tree,
+	 * in the order of their paths.
+	 *
+	 * @param query
+	 *            the query
+	 * @param maxResults
+	 *            the maximum number of results
+	 * @return the matching nodes
+	 * @throws IllegalArgumentException
+	 *             if the query contains an invalid regular expression
+	 */
+	public List<N5TreeNode> search(final String query, final int maxResults) {
+
+		final Predicate<Entry> predicate = parse(query);
+		final Object root = treeModel.getRoot();
+		final List<N5TreeNode> results = new ArrayList<>();
+		for (final Entry entry : entries.values()) {
+			if (results.size() >= maxResults || Thread.currentThread().isInterrupted())
+				break;
+
+			if (entry.node != root && predicate.test(entry) && isAttached(entry.node, root))
+				results.add(entry.node);
+		}
+		return results;
+	}
+
+	private static boolean isAttached(final N5TreeNode node, final Object root) {
+
+		TreeNode n = (TreeNode)node;
+		while (n.getParent() != null)
+			n = n.getParent();
+
+		return n == root;
+	}
+
+	static Predicate<Entry> parse(final String query) {
+
+		Predicate<Entry> predicate = x -> true;
+		for (final String term : query.trim().split("\\s+")) {
+			if (term.isEmpty())
+				continue;
+
+			predicate = predicate.and(parseTerm(term));
+		}
+		return predicate;
+	}
+
+	private static Predicate<Entry> parseTerm(final String term) {
+
+		final String lower = term.toLowerCase(Locale.ROOT);
+		if (lower.startsWith("type:")) {
+			final String type = lower.substring(5);
+			return x -> x.dataType != null && x.dataType.toString().equals(type);
+		} else if (lower.startsWith("dims:")) {
+			try {
+				final int nd = Integer.parseInt(lower.substring(5));
+				return x -> x.numDimensions == nd;
+			} catch (final NumberFormatException e) {
+				throw new IllegalArgumentException("Not a number of dimensions: " + term);
+			}
+		} else if (lower.equals("is:multiscale"))
+			return x -> x.multiscale;
+		else if (lower.equals("is:dataset"))
+			return x -> x.dataType != null;
+		else if (lower.startsWith("re:")) {
+			try {
+				final Pattern pattern = Pattern.compile(term.substring(3));
+				return x -> pattern.matcher(x.node.getPath()).find();
+			} catch (final PatternSyntaxException e) {
+				throw new IllegalArgumentException("Invalid regular expression: " + term.substring(3), e);
+			}
+		} else if (term.indexOf('*') >= 0 || term.indexOf('?') >= 0) {
+			final Pattern pattern = glob(lower);
+			return x -> pattern.matcher(x.name).matches();
+		} else
+			return x -> x.path.contains(lower);
+	}
+
+	private static Pattern glob(final String glob) {
+
+		final StringBuilder regex = new StringBuilder();
+		int start = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			final char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (i > start)
+					regex.append(Pattern.quote(glob.substring(start, i)));
+
+				regex.append(c == '*' ? ".*" : ".");
+				start = i + 1;
+			}
+		}
+		if (start < glob.length())
+			regex.append(Pattern.quote(glob.substring(start)));
+
+		return Pattern.compile(regex.toString());
+	}
+
+	private void add(final N5TreeNode node) {
+
+		entries.put(node.getPath(), new Entry(node));
+	}
+
+	private void addRecursive(final N5TreeNode node) {
+
+		add(node);
+		for (final N5TreeNode child : node.childrenList())
+			addRecursive(child);
+	}
+
+	private void removeRecursive(final N5TreeNode node) {
+
+		// a node with the same path may have been added since
+		final Entry entry = entries.get(node.getPath());
+		if (entry != null && entry.node == node)
+			entries.remove(node.getPath(), entry);
+		for (final N5TreeNode child : node.childrenList())
+			removeRecursive(child);
+	}
+
+	private void updated() {
+
+		if (onUpdate != null)
+			onUpdate.run();
+	}
+
+	private static N5TreeNode last(final TreeModelEvent e) {
+
+		return e.getTreePath() == null ? null : (N5TreeNode)e.getTreePath().getLastPathComponent();
+	}
+
+	@Override
+	public void treeNodesChanged(final TreeModelEvent e) {
+
+		if (e.getChildren() == null) {
+			final N5TreeNode node = last(e);
+			if (node != null)
+				add(node);
+		} else {
+			for (final Object child : e.getChildren())
+				add((N5TreeNode)child);
+		}
+		updated();
+	}
+
+	@Override
+	public void treeNodesInserted(final TreeModelEvent e) {
+
+		for (final Object child : e.getChildren())
+			addRecursive((N5TreeNode)child);
+
+		updated();
+	}
+
+	@Override
+	public void treeNodesRemoved(final TreeModelEvent e) {
+
+		for (final Object child : e.getChildren())
+			removeRecursive((N5TreeNode)child);
+
+		updated();
+	}
+
+	@Override
+	public void treeStructureChanged(final TreeModelEvent e) {
+
+		final N5TreeNode node = last(e);
+		if (node == null || node == treeModel.getRoot())
+			entries.clear();
+		else {
+			// the nodes below may have been replaced or dropped
+			final String prefix = node.getPath() + "/";
+			entries.subMap(prefix, prefix + Character.MAX_VALUE).clear();
+		}
+
+		if (node != null)
+			addRecursive(node);
+
+		updated();
+	}
+
+	/**
+	 * The properties of a node that can be searched for.
+	 */
+	static class Entry {
+
+		final N5TreeNode node;
+
+		final String name;
+
+		final String path;
+
+		final DataType dataType;
+
+		final int numDimensions;
+
+		final boolean multiscale;
+
+		Entry(final N5TreeNode node) {
+
+			this.node = node;
+			name = node.getNodeName().toLowerCase(Locale.ROOT);
+			path = node.getPath().toLowerCase(Locale.ROOT);
+
+			final N5Metadata meta = node.getMetadata();
+			if (meta instanceof N5DatasetMetadata) {
+				final DatasetAttributes attributes = ((N5DatasetMetadata)meta).getAttributes();
+				dataType = attributes.getDataType();
+				numDimensions = attributes.getNumDimensions();
+			} else {
+				dataType = null;
+				numDimensions = -1;
+			}
+			multiscale = meta instanceof N5MetadataGroup;
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package org.janelia.saalfeldlab.n5.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class N5SessionPoolTest {
+
+	private String root;
+
+	private AtomicInteger opened;
+
+	private N5SessionPool pool;
+
+	@Before
+	public void before() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-session-pool").toFile();
+		dir.deleteOnExit();
+		root = new File(dir, "test.n5").getAbsolutePath();
+
+		opened = new AtomicInteger();
+		pool = new N5SessionPool(
+				uri -> {
+					opened.incrementAndGet();
+					return new N5FSWriter(uri);
+				},
+				uri -> {
+					opened.incrementAndGet();
+					return new N5FSWriter(uri);
+				},
+				1000);
+	}
+
+	@Test
+	public void testReuse() {
+
+		final N5Reader first = pool.acquireReader(root);
+		pool.release(first);
+		final N5Reader second = pool.acquireReader(root + "/");
+		pool.release(second);
+
+		assertSame("reader reused", first, second);
+		assertEquals("opened once", 1, opened.get());
+	}
+
+	@Test
+	public void testWriterServesReaders() {
+
+		final N5Writer writer = pool.acquireWriter(root);
+		final N5Reader reader = pool.acquireReader(root);
+		assertSame("writer serves readers", writer, reader);
+
+		pool.release(reader);
+		pool.release(writer);
+	}
+
+	@Test
+	public void testWriterReplacesReader() {
+
+		final N5Reader reader = pool.acquireReader(root);
+		final N5Writer writer = pool.acquireWriter(root);
+		assertNotSame("new writer", reader, writer);
+		assertEquals("one pooled container", 1, pool.size());
+
+		pool.release(reader);
+		pool.release(writer);
+		assertSame("writer pooled", writer, pool.acquireReader(root));
+	}
+
+	@Test
+	public void testIdleEviction() {
+
+		final N5Reader reader = pool.acquireReader(root);
+		pool.evictIdle(Long.MAX_VALUE);
+		assertEquals("acquired readers are kept", 1, pool.size());
+
+		pool.release(reader);
+		pool.evictIdle(System.currentTimeMillis());
+		assertEquals("recently released readers are kept", 1, pool.size());
+
+		pool.evictIdle(System.currentTimeMillis() + 1000);
+		assertEquals("idle readers are evicted", 0, pool.size());
+	}
+
+	@Test
+	public void testInvalidate() {
+
+		final N5Reader reader = pool.acquireReader(root);
+		pool.invalidate(root + "/");
+		assertEquals("invalidated container removed", 0, pool.size());
+
+		final N5Reader reopened = pool.acquireReader(root);
+		assertNotSame("reopened after invalidation", reader, reopened);
+		assertEquals("opened twice", 2, opened.get());
+
+		pool.release(reader);
+		pool.release(reopened);
+		assertSame("new reader pooled", reopened, pool.acquireReader(root));
+	}
+
+}
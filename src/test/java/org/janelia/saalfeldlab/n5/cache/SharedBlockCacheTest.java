@@ -0,0 +1,130 @@
+package org.janelia.saalfeldlab.n5.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.cache.SharedBlockCache.BlockKey;
+import org.junit.Test;
+
+public class SharedBlockCacheTest {
+
+	private static BlockKey key(final long i) {
+
+		return new BlockKey("container", "dataset", DataType.UINT8, new long[]{i, 0});
+	}
+
+	private static DataBlock<?> block(final long i) {
+
+		final byte[] data = new byte[16];
+		data[0] = (byte)i;
+		return new ByteArrayDataBlock(new int[]{4, 4}, new long[]{i, 0}, data);
+	}
+
+	@Test
+	public void testHitsAndMisses() throws Exception {
+
+		final SharedBlockCache cache = new SharedBlockCache(1024, 0);
+
+		final DataBlock<?> first = cache.get(key(0), () -> block(0));
+		final DataBlock<?> second = cache.get(key(0), () -> block(0));
+
+		assertSame("cached block returned", first, second);
+		assertEquals("one miss", 1, cache.getMissCount());
+		assertEquals("one hit", 1, cache.getHitCount());
+		assertEquals("bytes", 16, cache.getBytes());
+	}
+
+	@Test
+	public void testLruEviction() throws Exception {
+
+		// room for two blocks
+		final SharedBlockCache cache = new SharedBlockCache(32, 0);
+		cache.get(key(0), () -> block(0));
+		cache.get(key(1), () -> block(1));
+
+		// touch 0 so that 1 is the least recently used
+		cache.get(key(0), () -> block(0));
+		cache.get(key(2), () -> block(2));
+
+		assertEquals("one eviction", 1, cache.getEvictionCount());
+		assertEquals("bytes within budget", 32, cache.getBytes());
+
+		cache.get(key(0), () -> block(0));
+		assertEquals("block 0 kept", 2, cache.getHitCount());
+
+		cache.get(key(1), () -> block(1));
+		assertEquals("block 1 evicted", 4, cache.getMissCount());
+	}
+
+	@Test
+	public void testOffHeapTier() throws Exception {
+
+		final SharedBlockCache cache = new SharedBlockCache(16, 1024);
+		cache.get(key(0), () -> block(0));
+		cache.get(key(1), () -> block(1));
+
+		assertEquals("off heap bytes", 16, cache.getOffHeapBytes());
+
+		final DataBlock<?> restored = cache.get(key(0), () -> {
+			throw new IllegalStateException("should be restored from off heap");
+		});
+
+		assertEquals("off heap hit", 1, cache.getOffHeapHitCount());
+		assertArrayEquals("restored data", (byte[])block(0).getData(), (byte[])restored.getData());
+		assertArrayEquals("restored position", new long[]{0, 0}, restored.getGridPosition());
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+
+		final SharedBlockCache cache = new SharedBlockCache(1024, 1024);
+		cache.get(key(0), () -> block(0));
+		cache.get(new BlockKey("container", "dataset2", DataType.UINT8, new long[]{0, 0}), () -> block(0));
+		cache.get(new BlockKey("other", "dataset", DataType.UINT8, new long[]{0, 0}), () -> block(0));
+
+		cache.invalidate("container", "/dataset/");
+		assertEquals("dataset dropped", 32, cache.getBytes());
+
+		cache.get(key(0), () -> block(0));
+		assertEquals("read again", 4, cache.getMissCount());
+
+		cache.invalidate("container", "");
+		assertEquals("other container kept", 16, cache.getBytes());
+	}
+
+	@Test
+	public void testLoadDuringInvalidate() throws Exception {
+
+		final SharedBlockCache cache = new SharedBlockCache(1024, 0);
+
+		// the dataset is rewritten while the old block is being read
+		final DataBlock<?> stale = cache.get(key(0), () -> {
+			cache.invalidate("container", "dataset");
+			return block(0);
+		});
+
+		assertEquals("returned to the caller", 16, stale.getNumElements());
+		assertEquals("not cached", 0, cache.getBytes());
+
+		cache.get(key(0), () -> block(0));
+		assertEquals("read again", 2, cache.getMissCount());
+		assertEquals("cached", 16, cache.getBytes());
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+
+		final SharedBlockCache cache = new SharedBlockCache(1024, 0);
+		cache.setEnabled(false);
+		cache.get(key(0), () -> block(0));
+		cache.get(key(0), () -> block(0));
+
+		assertEquals("nothing cached", 0, cache.getBytes());
+		assertEquals("no hits", 0, cache.getHitCount());
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.janelia.saalfeldlab.n5.converters;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class ArrayConvertersTest
+{
+
+	@Test
+	public void testDoubleToFloat()
+	{
+		final double[] src = new double[] { 0.5, -1.25, 1e40, 3 };
+		final float[] dst = new float[ 2 ];
+		ArrayConverters.doubleToFloat( src, 0, 2, dst, 1, -1, 2 );
+
+		Assert.assertEquals( "strided first", 0.5f, dst[ 1 ], 0 );
+		Assert.assertEquals( "strided second", Float.POSITIVE_INFINITY, dst[ 0 ], 0 );
+	}
+
+	@Test
+	public void testInt32LUT()
+	{
+		final int[] src = new int[] { 70000, -5, 12, -5 };
+		final UnsignedShortLUTConverter< IntType > conv = new UnsignedShortLUTConverter<>( ArrayImgs.ints( src, 4 ) );
+		final long[] lut = conv.values();
+		Assert.assertArrayEquals( "sorted values", new long[] { -5, 12, 70000 }, lut );
+
+		final short[] dst = new short[ 4 ];
+		ArrayConverters.int32ToUShortLUT( src, 0, 1, dst, 0, 1, 4, lut, false );
+
+		// same as the per pixel converter
+		final IntType in = new IntType();
+		final UnsignedShortType out = new UnsignedShortType();
+		for ( int i = 0; i < src.length; i++ )
+		{
+			in.set( src[ i ] );
+			conv.convert( in, out );
+			Assert.assertEquals( "value " + src[ i ], out.get(), dst[ i ] & 0xffff );
+		}
+	}
+
+	@Test
+	public void testUint32LUT()
+	{
+		// 0xfffffffe is 4294967294 as uint32
+		final int[] src = new int[] { 0xfffffffe, 7 };
+		final long[] lut = new UnsignedShortLUTConverter< UnsignedIntType >( ArrayImgs.unsignedInts( src, 2 ) ).values();
+		Assert.assertArrayEquals( "sorted unsigned", new long[] { 7, 4294967294L }, lut );
+
+		final short[] dst = new short[ 2 ];
+		ArrayConverters.int32ToUShortLUT( src, 1, -1, dst, 0, 1, 2, lut, true );
+		Assert.assertArrayEquals( "strided", new short[] { 0, 1 }, dst );
+	}
+
+	@Test
+	public void testInt64LUT()
+	{
+		final long[] src = new long[] { Long.MAX_VALUE, 3, Long.MIN_VALUE };
+		final long[] lut = new long[] { Long.MIN_VALUE, 3, Long.MAX_VALUE };
+
+		final short[] dst = new short[ 3 ];
+		ArrayConverters.int64ToUShortLUT( src, 0, 1, dst, 0, 1, 3, lut );
+		Assert.assertArrayEquals( new short[] { 2, 1, 0 }, dst );
+	}
+
+}
@@ -10,6 +10,7 @@ import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.array.ArrayRandomAccess;
 import net.imglib2.img.basictypeaccess.array.LongArray;
 import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 
 public class UshortConverterTests
@@ -90,4 +91,25 @@ public class UshortConverterTests
 
 	}
 
+	@Test
+	public void testWindowNarrowing()
+	{
+		final RealWindowConverter< UnsignedShortType, UnsignedByteType > conv = new RealWindowConverter<>( 1000, 2020, 255 );
+
+		final UnsignedShortType in = new UnsignedShortType();
+		final UnsignedByteType out = new UnsignedByteType();
+
+		in.set( 500 );
+		conv.convert( in, out );
+		Assert.assertEquals( "below window clamps to zero", 0, out.get() );
+
+		in.set( 1510 );
+		conv.convert( in, out );
+		Assert.assertEquals( "middle of window", 128, out.get() );
+
+		in.set( 4095 );
+		conv.convert( in, out );
+		Assert.assertEquals( "above window clamps to max", 255, out.get() );
+	}
+
 }
@@ -20,6 +20,7 @@ import org.junit.Test;
 
 import ij.IJ;
 import ij.ImagePlus;
+import ij.Macro;
 import ij.gui.NewImage;
 import net.imglib2.img.display.imagej.ImageJFunctions;
 import net.imglib2.img.display.imagej.ImageJVirtualStack;
@@ -168,4 +169,23 @@ public class MacroTests {
 		assertEquals("crop d",  71, img.getNSlices() );
 	}
 
+	@Test
+	public void testRecordedOptions() {
+
+		final String options = N5Importer.generateAndStoreOptions("/data.n5?s0", true, null, false, true,
+				new PyramidLevelSelector(2048L * 1024 * 1024, new long[]{1920, 1080}), 8,
+				new Subsampling(new long[]{4, 4, 1}, true), Reslice.XZ, true);
+
+		// every option the macro path parses is recorded
+		assertEquals("8", Macro.getValue(options, N5Importer.narrowKey, ""));
+		assertEquals("2048", Macro.getValue(options, N5Importer.budgetKey, ""));
+		assertEquals("1920,1080", Macro.getValue(options, N5Importer.screenKey, ""));
+		assertEquals("4,4,1", Macro.getValue(options, N5Importer.subsampleKey, ""));
+		assertEquals("xz", Macro.getValue(options, N5Importer.resliceKey, ""));
+		assertTrue("virtual", options.contains(N5Importer.virtualKey));
+		assertTrue("background", options.contains(N5Importer.backgroundKey));
+		assertTrue("average", options.contains(N5Importer.averageKey));
+		assertTrue("multiresolution", options.contains(N5Importer.multiResolutionKey));
+	}
+
 }
@@ -0,0 +1,110 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ij.CompositeImage;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.process.ByteProcessor;
+
+public class N5ConcatenatedVirtualStackTest {
+
+	/**
+	 * An image with two slices and two frames, where every pixel of a plane
+	 * holds base + its stack index.
+	 */
+	private static ImagePlus image(final int base, final int max) {
+
+		final ImageStack stack = new ImageStack(4, 3);
+		for (int i = 1; i <= 4; i++) {
+			final ByteProcessor ip = new ByteProcessor(4, 3);
+			ip.setValue(base + i);
+			ip.fill();
+			stack.addSlice(ip);
+		}
+
+		final ImagePlus imp = new ImagePlus("image" + base, stack);
+		imp.setDimensions(1, 2, 2);
+		imp.setDisplayRange(0, max);
+		return imp;
+	}
+
+	@Test
+	public void testCompatible() {
+
+		assertTrue(N5ConcatenatedVirtualStack.areCompatible(Arrays.asList(image(0, 10), image(10, 20))));
+
+		final ImagePlus other = image(0, 10);
+		other.setDimensions(1, 4, 1);
+		assertFalse("different dimensions", N5ConcatenatedVirtualStack.areCompatible(Arrays.asList(image(0, 10), other)));
+	}
+
+	@Test
+	public void testChannels() {
+
+		final ImagePlus combined = N5ConcatenatedVirtualStack.concatenate("combined",
+				Arrays.asList(image(0, 10), image(10, 20), image(20, 30)), N5ConcatenatedVirtualStack.Axis.CHANNEL);
+
+		assertTrue("composite", combined instanceof CompositeImage);
+		assertArrayEquals(new int[]{4, 3, 3, 2, 2}, combined.getDimensions());
+
+		// the plane at c, z, t is plane (z, t) of source c
+		for (int t = 1; t <= 2; t++)
+			for (int z = 1; z <= 2; z++)
+				for (int c = 1; c <= 3; c++) {
+					final int index = combined.getStackIndex(c, z, t);
+					final int expected = (c - 1) * 10 + (t - 1) * 2 + z;
+					assertEquals(expected, combined.getStack().getProcessor(index).get(1, 1));
+				}
+
+		// channels keep the display range of their source
+		final CompositeImage composite = (CompositeImage)combined;
+		for (int c = 1; c <= 3; c++) {
+			composite.setPosition(c, 1, 1);
+			assertEquals(c * 10, composite.getDisplayRangeMax(), 0);
+		}
+	}
+
+	@Test
+	public void testTime() {
+
+		final ImagePlus combined = N5ConcatenatedVirtualStack.concatenate("combined",
+				Arrays.asList(image(0, 10), image(10, 20)), N5ConcatenatedVirtualStack.Axis.TIME);
+
+		assertArrayEquals(new int[]{4, 3, 1, 2, 4}, combined.getDimensions());
+
+		// frames 1 and 2 come from the first source, frames 3 and 4 from the second
+		for (int t = 1; t <= 4; t++)
+			for (int z = 1; z <= 2; z++) {
+				final int index = combined.getStackIndex(1, z, t);
+				final int expected = ((t - 1) / 2) * 10 + ((t - 1) % 2) * 2 + z;
+				assertEquals(expected, combined.getStack().getProcessor(index).get(1, 1));
+			}
+	}
+
+	@Test
+	public void testEdits() {
+
+		final ImagePlus first = image(0, 10);
+		final ImagePlus combined = N5ConcatenatedVirtualStack.concatenate("combined",
+				Arrays.asList(first, image(10, 20)), N5ConcatenatedVirtualStack.Axis.TIME);
+
+		final ImageStack stack = combined.getStack();
+		final ByteProcessor edit = new ByteProcessor(4, 3);
+		edit.setValue(99);
+		edit.fill();
+		stack.setPixels(edit.getPixels(), 3);
+
+		assertEquals("edited plane", 99, stack.getProcessor(3).get(1, 1));
+		assertEquals("other planes", 4, stack.getProcessor(4).get(1, 1));
+		assertEquals("source unchanged", 3, first.getStack().getProcessor(3).get(1, 1));
+	}
+
+}
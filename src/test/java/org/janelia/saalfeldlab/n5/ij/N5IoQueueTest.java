@@ -0,0 +1,41 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class N5IoQueueTest {
+
+	@Test
+	public void testPriorityOrder() throws Exception {
+
+		final N5IoQueue queue = new N5IoQueue(1);
+		final List<String> order = new CopyOnWriteArrayList<>();
+
+		// occupy the only thread so that the following tasks are queued
+		final CountDownLatch latch = new CountDownLatch(1);
+		queue.submit(() -> {
+			try {
+				latch.await();
+			} catch (final InterruptedException e) {}
+		}, N5IoQueue.VISIBLE);
+
+		queue.submit(() -> order.add("background"), N5IoQueue.BACKGROUND);
+		queue.submit(() -> order.add("prefetch"), N5IoQueue.PREFETCH);
+		queue.submit(() -> order.add("visible-old"), N5IoQueue.VISIBLE);
+		final Future<Void> last = queue.submit(() -> order.add("visible-new"), N5IoQueue.VISIBLE);
+
+		latch.countDown();
+		last.get();
+		queue.submit(() -> {}, N5IoQueue.BACKGROUND).get();
+
+		assertEquals(Arrays.asList("visible-new", "visible-old", "prefetch", "background"), order);
+	}
+
+}
@@ -0,0 +1,58 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.junit.Test;
+
+public class PyramidLevelSelectorTest {
+
+	private static DatasetAttributes level(final long size, final DataType type) {
+
+		return new DatasetAttributes(new long[]{size, size, size}, new int[]{64, 64, 64}, type, new RawCompression());
+	}
+
+	@Test
+	public void testMemoryBudget() {
+
+		final DatasetAttributes[] levels = new DatasetAttributes[]{
+				level(1024, DataType.UINT8),
+				level(512, DataType.UINT8),
+				level(256, DataType.UINT8)
+		};
+
+		assertEquals("everything fits", 0, new PyramidLevelSelector(1024l * 1024 * 1024).select(levels));
+		assertEquals("s1 fits", 1, new PyramidLevelSelector(512l * 512 * 512).select(levels));
+		assertEquals("only s2 fits", 2, new PyramidLevelSelector(512l * 512 * 512 - 1).select(levels));
+		assertEquals("nothing fits", 2, new PyramidLevelSelector(1).select(levels));
+	}
+
+	@Test
+	public void testConvertedTypeSize() {
+
+		// float64 is opened as float32
+		final DatasetAttributes[] levels = new DatasetAttributes[]{
+				level(512, DataType.FLOAT64),
+				level(256, DataType.FLOAT64)
+		};
+
+		assertEquals("float32 size", 0, new PyramidLevelSelector(4l * 512 * 512 * 512).select(levels));
+	}
+
+	@Test
+	public void testScreenSize() {
+
+		// levels in arbitrary order
+		final DatasetAttributes[] levels = new DatasetAttributes[]{
+				level(256, DataType.UINT16),
+				level(1024, DataType.UINT16),
+				level(512, DataType.UINT16)
+		};
+
+		assertEquals("fits screen", 2, new PyramidLevelSelector(-1, new long[]{800, 600}).select(levels));
+		assertEquals("budget and screen", 0, new PyramidLevelSelector(1024, new long[]{800, 600}).select(levels));
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.util.Intervals;
+
+public class ResliceTest {
+
+	private static ArrayImg<IntType, IntArray> img(final long... dims) {
+
+		final ArrayImg<IntType, IntArray> img = ArrayImgs.ints(dims);
+		int i = 0;
+		for (final IntType t : img)
+			t.set(i++);
+
+		return img;
+	}
+
+	private static int get(final RandomAccessibleInterval<IntType> img, final long... pos) {
+
+		final RandomAccess<IntType> ra = img.randomAccess();
+		ra.setPosition(pos);
+		return ra.get().get();
+	}
+
+	@Test
+	public void testParse() {
+
+		assertNull(Reslice.parse(null));
+		assertNull(Reslice.parse(""));
+		assertNull(Reslice.parse("xy"));
+		assertEquals(Reslice.XZ, Reslice.parse("xz"));
+		assertEquals(Reslice.YZ, Reslice.parse("YZ"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalid() {
+
+		Reslice.parse("zx");
+	}
+
+	@Test
+	public void testStackAxis() {
+
+		assertEquals("XZ planes are stacked along Y", 1, Reslice.XZ.stackAxis());
+		assertEquals("YZ planes are stacked along X", 0, Reslice.YZ.stackAxis());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReslice4d() {
+
+		// the third axis of a 4D image may be C or Z
+		Reslice.XZ.apply(img(4, 5, 2, 6));
+	}
+
+	@Test
+	public void testReslice3d() {
+
+		final ArrayImg<IntType, IntArray> img = img(4, 5, 6);
+
+		final RandomAccessibleInterval<IntType> xz = Reslice.XZ.apply(img);
+		assertArrayEquals(new long[]{4, 6, 5}, Intervals.dimensionsAsLongArray(xz));
+		assertEquals(get(img, 1, 2, 3), get(xz, 1, 3, 2));
+
+		final RandomAccessibleInterval<IntType> yz = Reslice.YZ.apply(img);
+		assertArrayEquals(new long[]{5, 6, 4}, Intervals.dimensionsAsLongArray(yz));
+		assertEquals(get(img, 1, 2, 3), get(yz, 2, 3, 1));
+	}
+
+	@Test
+	public void testReslice5d() {
+
+		final ArrayImg<IntType, IntArray> img = img(4, 5, 2, 6, 3);
+
+		final RandomAccessibleInterval<IntType> xz = Reslice.XZ.apply(img);
+		assertArrayEquals(new long[]{4, 6, 2, 5, 3}, Intervals.dimensionsAsLongArray(xz));
+		assertEquals(get(img, 1, 2, 1, 3, 2), get(xz, 1, 3, 1, 2, 2));
+
+		final RandomAccessibleInterval<IntType> yz = Reslice.YZ.apply(img);
+		assertArrayEquals(new long[]{5, 6, 2, 4, 3}, Intervals.dimensionsAsLongArray(yz));
+		assertEquals(get(img, 1, 2, 1, 3, 2), get(yz, 2, 3, 1, 1, 2));
+	}
+
+}
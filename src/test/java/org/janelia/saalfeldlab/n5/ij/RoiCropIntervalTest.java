@@ -0,0 +1,61 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class RoiCropIntervalTest {
+
+	// a triangle with corners (0,0), (20,0) and (0,20)
+	private static Roi triangle() {
+
+		return new PolygonRoi(new int[]{0, 20, 0}, new int[]{0, 0, 20}, 3, Roi.POLYGON);
+	}
+
+	@Test
+	public void testBounds() {
+
+		final RoiCropInterval crop = RoiCropInterval.create(triangle(), null, 3);
+		final RoiCropInterval limited = crop.intersect(Intervals.createMinMax(0, 0, 5, 99, 99, 9));
+
+		assertArrayEquals(new long[]{0, 0, 5}, Intervals.minAsLongArray(limited));
+		assertArrayEquals(new long[]{19, 19, 9}, Intervals.maxAsLongArray(limited));
+	}
+
+	@Test
+	public void testIntersects() {
+
+		final RoiCropInterval crop = RoiCropInterval.create(triangle(), null, 2);
+		assertTrue("corner block", crop.intersects(0, 0, 7, 7));
+		assertFalse("block beyond the diagonal", crop.intersects(16, 16, 23, 23));
+	}
+
+	@Test
+	public void testMask() {
+
+		final RandomAccessibleInterval<UnsignedByteType> img = ArrayImgs.unsignedBytes(32, 32);
+		Views.iterable(img).forEach(x -> x.set(7));
+
+		final RoiCropInterval crop = RoiCropInterval.create(triangle(), null, 2).intersect(img);
+		final RandomAccess<UnsignedByteType> ra = crop.mask(Views.interval(img, crop)).randomAccess();
+
+		ra.setPosition(new long[]{2, 2});
+		assertEquals("inside", 7, ra.get().get());
+
+		ra.setPosition(new long[]{18, 18});
+		assertEquals("outside", 0, ra.get().get());
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+public class SubsamplingTest {
+
+	private static RandomAccessibleInterval<FloatType> ramp() {
+
+		// value = x + 10 * y
+		final float[] data = new float[5 * 4];
+		for (int y = 0; y < 4; y++)
+			for (int x = 0; x < 5; x++)
+				data[x + 5 * y] = x + 10 * y;
+
+		return ArrayImgs.floats(data, 5, 4);
+	}
+
+	@Test
+	public void testParse() {
+
+		assertNull("all ones", Subsampling.parse("1,1,1", false));
+		assertNull("empty", Subsampling.parse("", false));
+		assertArrayEquals(new long[]{4, 4, 16}, Subsampling.parse("4, 4, 16", false).getFactors());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseInvalid() {
+
+		Subsampling.parse("4,x", false);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseZero() {
+
+		Subsampling.parse("4,0", false);
+	}
+
+	@Test
+	public void testSample() {
+
+		final RandomAccessibleInterval<FloatType> sub = new Subsampling(new long[]{2, 2}, false).apply(ramp());
+		assertArrayEquals(new long[]{3, 2}, Intervals.dimensionsAsLongArray(sub));
+
+		final RandomAccess<FloatType> ra = sub.randomAccess();
+		ra.setPosition(new long[]{2, 1});
+		assertEquals(4 + 10 * 2, ra.get().get(), 0);
+	}
+
+	@Test
+	public void testAverage() {
+
+		final RandomAccessibleInterval<FloatType> sub = new Subsampling(new long[]{2, 2}, true).apply(ramp());
+		assertArrayEquals(new long[]{3, 2}, Intervals.dimensionsAsLongArray(sub));
+
+		final RandomAccess<FloatType> ra = sub.randomAccess();
+		ra.setPosition(new long[]{0, 0});
+		assertEquals("mean of 0, 1, 10, 11", 5.5, ra.get().get(), 1e-6);
+
+		// the last column only has one voxel along x
+		ra.setPosition(new long[]{2, 1});
+		assertEquals("mean of 24, 34", 29, ra.get().get(), 1e-6);
+	}
+
+}
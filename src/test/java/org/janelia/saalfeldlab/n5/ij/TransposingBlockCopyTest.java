@@ -0,0 +1,128 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+import org.janelia.saalfeldlab.n5.converters.UnsignedShortLUTConverter;
+import org.janelia.saalfeldlab.n5.universe.metadata.axes.AxisUtils;
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgFactory;
+import net.imglib2.cache.img.ReadOnlyCachedCellImgOptions;
+import net.imglib2.img.imageplus.ImagePlusImg;
+import net.imglib2.img.imageplus.ImagePlusImgFactory;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+public class TransposingBlockCopyTest {
+
+	private static CachedCellImg<UnsignedShortType, ?> source() {
+
+		return new ReadOnlyCachedCellImgFactory().create(
+				new long[]{7, 5, 4},
+				new UnsignedShortType(),
+				cell -> {
+					final Cursor<UnsignedShortType> c = cell.localizingCursor();
+					while (c.hasNext()) {
+						c.fwd();
+						c.get().set(c.getIntPosition(0) + 10 * c.getIntPosition(1) + 100 * c.getIntPosition(2));
+					}
+				},
+				ReadOnlyCachedCellImgOptions.options().cellDimensions(3, 2, 3));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void assertCopy(final UnaryOperator<RandomAccessibleInterval<?>> toTarget) {
+
+		final CachedCellImg<UnsignedShortType, ?> img = source();
+		final RandomAccessibleInterval<UnsignedShortType> expected = (RandomAccessibleInterval<UnsignedShortType>)toTarget.apply(img);
+		final ImagePlusImg<UnsignedShortType, ?> target = new ImagePlusImgFactory<>(new UnsignedShortType()).create(expected);
+
+		final TransposingBlockCopy copy = new TransposingBlockCopy(img, toTarget, target);
+		assertTrue("supported", copy.isSupported());
+
+		final ExecutorService exec = Executors.newFixedThreadPool(2);
+		copy.copy(exec);
+		exec.shutdown();
+
+		final Cursor<UnsignedShortType> c = Views.flatIterable(expected).localizingCursor();
+		final RandomAccess<UnsignedShortType> ra = target.randomAccess();
+		final long[] pos = new long[expected.numDimensions()];
+		while (c.hasNext()) {
+			c.fwd();
+			for (int d = 0; d < pos.length; d++)
+				pos[d] = c.getLongPosition(d) - expected.min(d);
+
+			ra.setPosition(pos);
+			assertEquals(c.get().get(), ra.get().get());
+		}
+	}
+
+	@Test
+	public void testCrop() {
+
+		assertCopy(x -> Views.interval(x, new FinalInterval(new long[]{1, 1, 1}, new long[]{5, 3, 2})));
+	}
+
+	@Test
+	public void testReversed() {
+
+		assertCopy(x -> AxisUtils.reverseDimensions(x));
+	}
+
+	@Test
+	public void testPermutedAndInverted() {
+
+		assertCopy(x -> Views.zeroMin(Views.invertAxis(Views.permute(x, 0, 2), 1)));
+	}
+
+	@Test
+	public void testLookUpTable() {
+
+		final CachedCellImg<LongType, ?> img = new ReadOnlyCachedCellImgFactory().create(
+				new long[]{7, 5, 4},
+				new LongType(),
+				cell -> {
+					final Cursor<LongType> c = cell.localizingCursor();
+					while (c.hasNext()) {
+						c.fwd();
+						c.get().set(-1000 * c.getLongPosition(0) + 10 * c.getLongPosition(1) + c.getLongPosition(2));
+					}
+				},
+				ReadOnlyCachedCellImgOptions.options().cellDimensions(3, 2, 3));
+
+		final UnaryOperator<RandomAccessibleInterval<?>> toTarget = x -> AxisUtils.reverseDimensions(x);
+		@SuppressWarnings("unchecked")
+		final RandomAccessibleInterval<LongType> view = (RandomAccessibleInterval<LongType>)toTarget.apply(img);
+		final UnsignedShortLUTConverter<LongType> lut = new UnsignedShortLUTConverter<>(Views.flatIterable(view));
+		final ImagePlusImg<UnsignedShortType, ?> target = new ImagePlusImgFactory<>(new UnsignedShortType()).create(view);
+
+		final TransposingBlockCopy copy = new TransposingBlockCopy(img, toTarget, target, lut.values());
+		assertTrue("supported", copy.isSupported());
+
+		final ExecutorService exec = Executors.newFixedThreadPool(2);
+		copy.copy(exec);
+		exec.shutdown();
+
+		final Cursor<LongType> c = Views.flatIterable(view).localizingCursor();
+		final RandomAccess<UnsignedShortType> ra = target.randomAccess();
+		final UnsignedShortType expected = new UnsignedShortType();
+		while (c.hasNext()) {
+			c.fwd();
+			ra.setPosition(c);
+			lut.convert(c.get(), expected);
+			assertEquals(expected.get(), ra.get().get());
+		}
+	}
+
+}
@@ -0,0 +1,200 @@
+package org.janelia.saalfeldlab.n5.metadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.metadata.FlatListingDiscovery.KeyLister;
+import org.janelia.saalfeldlab.n5.metadata.FlatListingDiscovery.Location;
+import org.janelia.saalfeldlab.n5.metadata.FlatListingDiscovery.S3KeyLister;
+import org.junit.Test;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+public class FlatListingDiscoveryTest {
+
+	private static final List<String> KEYS = Arrays.asList(
+			"attributes.json",
+			"labels/cells/c/0/0",
+			"labels/cells/zarr.json",
+			"other/data.bin",
+			"raw/.zgroup",
+			"raw/s0/.zarray",
+			"raw/s0/0.0");
+
+	/**
+	 * Stands in for an object store by listing the files of a directory.
+	 */
+	private static KeyLister directoryLister(final Path root, final int[] requests) {
+
+		return (prefix, keys) -> {
+			requests[0]++;
+			try (Stream<Path> files = Files.walk(root)) {
+				files.filter(Files::isRegularFile)
+						.map(p -> root.relativize(p).toString().replace(File.separatorChar, '/'))
+						.filter(k -> k.startsWith(prefix))
+						.forEach(keys);
+			}
+		};
+	}
+
+	/**
+	 * Stands in for an S3 compatible store that lists the given keys of a
+	 * bucket, the given number of keys per page, and records the prefix and
+	 * continuation token of each request.
+	 */
+	private static AmazonS3 s3(final String bucket, final List<String> keys, final int pageSize, final List<String[]> requests) {
+
+		return (AmazonS3)Proxy.newProxyInstance(AmazonS3.class.getClassLoader(), new Class<?>[]{AmazonS3.class}, (proxy, method, args) -> {
+			if (!method.getName().equals("listObjectsV2") || !(args[0] instanceof ListObjectsV2Request))
+				throw new UnsupportedOperationException(method.getName());
+
+			final ListObjectsV2Request request = (ListObjectsV2Request)args[0];
+			requests.add(new String[]{request.getPrefix(), request.getContinuationToken()});
+			assertEquals(bucket, request.getBucketName());
+
+			final List<String> matching = keys.stream().filter(k -> k.startsWith(request.getPrefix())).sorted().collect(Collectors.toList());
+			final int start = request.getContinuationToken() == null ? 0 : Integer.parseInt(request.getContinuationToken());
+			final int end = Math.min(matching.size(), start + pageSize);
+
+			final ListObjectsV2Result result = new ListObjectsV2Result();
+			for (final String key : matching.subList(start, end)) {
+				final S3ObjectSummary summary = new S3ObjectSummary();
+				summary.setBucketName(bucket);
+				summary.setKey(key);
+				result.getObjectSummaries().add(summary);
+			}
+			result.setTruncated(end < matching.size());
+			result.setNextContinuationToken(end < matching.size() ? Integer.toString(end) : null);
+			return result;
+		});
+	}
+
+	@Test
+	public void testKeys() throws IOException {
+
+		final KeyLister lister = (prefix, out) -> KEYS.stream().filter(k -> k.startsWith(prefix)).forEach(out);
+		assertArrayEquals("nodes and their ancestors",
+				new String[]{"labels", "labels/cells", "raw", "raw/s0"},
+				FlatListingDiscovery.deepList(lister, ""));
+		assertArrayEquals("below a root path",
+				new String[]{"s0"},
+				FlatListingDiscovery.deepList(lister, "/raw/"));
+
+		final Map<String, List<String>> children = FlatListingDiscovery.listChildren(lister, "raw");
+		assertEquals(Arrays.asList("s0"), children.get("raw"));
+		assertNull("datasets have no children", children.get("raw/s0"));
+	}
+
+	@Test
+	public void testS3Pagination() throws IOException {
+
+		final List<String> keys = KEYS.stream().map(k -> "data/container.zarr/" + k).collect(Collectors.toList());
+		keys.add("data/other.zarr/.zgroup");
+
+		final List<String[]> requests = new ArrayList<>();
+		final KeyLister lister = new S3KeyLister(s3("bucket", keys, 2, requests), "bucket", "data/container.zarr", false);
+
+		assertArrayEquals("nodes across pages",
+				new String[]{"labels", "labels/cells", "raw", "raw/s0"},
+				FlatListingDiscovery.deepList(lister, ""));
+		assertEquals("pages of two keys", 4, requests.size());
+		assertEquals("container prefix", "data/container.zarr/", requests.get(0)[0]);
+		assertNull("first page", requests.get(0)[1]);
+		assertEquals("continued", "2", requests.get(1)[1]);
+
+		requests.clear();
+		assertArrayEquals(new String[]{"s0"}, FlatListingDiscovery.deepList(lister, "raw"));
+		assertEquals("root path prefix", "data/container.zarr/raw/", requests.get(0)[0]);
+	}
+
+	@Test
+	public void testMatchesDeepList() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-flat-listing").toFile();
+		dir.deleteOnExit();
+
+		final File container = new File(dir, "test.n5");
+		final N5FSWriter n5 = new N5FSWriter(container.getAbsolutePath());
+		final DatasetAttributes attrs = new DatasetAttributes(new long[]{8, 8}, new int[]{4, 4}, DataType.UINT8, new RawCompression());
+		n5.createDataset("a/b/img", attrs);
+		n5.createDataset("a/c", attrs);
+		n5.createDataset("d", attrs);
+		n5.setAttribute("a/b", "name", "b");
+
+		final ExecutorService exec = Executors.newFixedThreadPool(2);
+		final String[] expected = n5.deepList("", exec);
+		exec.shutdown();
+		Arrays.sort(expected);
+
+		final int[] requests = new int[1];
+		final String[] listed = FlatListingDiscovery.deepList(directoryLister(container.toPath(), requests), "");
+		assertArrayEquals("same nodes as listing group by group", expected, listed);
+		assertEquals("one listing", 1, requests[0]);
+
+		n5.remove();
+	}
+
+	@Test
+	public void testLocation() {
+
+		final Location s3 = FlatListingDiscovery.location(URI.create("s3://bucket/data/container.zarr")).get();
+		assertEquals(Location.Store.S3, s3.store);
+		assertNull("default endpoint", s3.endpoint);
+		assertEquals("bucket", s3.bucket);
+		assertEquals("data/container.zarr", s3.key);
+
+		final URI localUri = URI.create("http://localhost:9000/bucket/container.n5");
+		assertFalse("endpoint not configured", FlatListingDiscovery.location(localUri, "").isPresent());
+		assertFalse("other endpoint", FlatListingDiscovery.location(localUri, "http://localhost:9001").isPresent());
+		final Location local = FlatListingDiscovery.location(localUri, "http://localhost:9000/").get();
+		assertEquals(Location.Store.S3, local.store);
+		assertEquals("S3 compatible endpoint", "http://localhost:9000", local.endpoint);
+		assertEquals("bucket", local.bucket);
+		assertEquals("container.n5", local.key);
+
+		final Location virtual = FlatListingDiscovery.location(URI.create("https://bucket.s3.us-east-1.amazonaws.com/a/b.zarr")).get();
+		assertNull(virtual.endpoint);
+		assertEquals("bucket", virtual.bucket);
+		assertEquals("a/b.zarr", virtual.key);
+
+		final Location pathStyle = FlatListingDiscovery.location(URI.create("https://s3.amazonaws.com/bucket/a.n5")).get();
+		assertEquals("bucket", pathStyle.bucket);
+		assertEquals("a.n5", pathStyle.key);
+
+		final Location gcs = FlatListingDiscovery.location(URI.create("https://storage.googleapis.com/bucket/a.zarr")).get();
+		assertEquals(Location.Store.GOOGLE_CLOUD, gcs.store);
+		assertEquals("bucket", gcs.bucket);
+
+		assertTrue(FlatListingDiscovery.isSupported(URI.create("gs://bucket/container.zarr")));
+		assertFalse("local containers", FlatListingDiscovery.isSupported(URI.create("file:///tmp/container.n5")));
+		assertFalse("no bucket", FlatListingDiscovery.location(URI.create("http://localhost:9000/"), "http://localhost:9000").isPresent());
+		assertFalse("unknown host", FlatListingDiscovery.location(URI.create("https://example.com/bucket/a.n5"), null).isPresent());
+		assertFalse("plain http", FlatListingDiscovery.location(URI.create("http://s3.amazonaws.com/bucket/a.n5"), null).isPresent());
+	}
+
+}
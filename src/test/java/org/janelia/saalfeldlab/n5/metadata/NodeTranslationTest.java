@@ -0,0 +1,100 @@
+package org.janelia.saalfeldlab.n5.metadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.metadata.imagej.MetadataTemplateMapper;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+public class NodeTranslationTest {
+
+	@Test
+	public void testCompiledQueryCache() throws Exception {
+
+		final String query = "{ \"cached\": . }";
+		assertSame("compiled once", MetadataTemplateMapper.compile(query), MetadataTemplateMapper.compile(query));
+		assertSame("shared scope", MetadataTemplateMapper.rootScope(), MetadataTemplateMapper.rootScope());
+	}
+
+	@Test
+	public void testTranslateTree() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-node-translation").toFile();
+		dir.deleteOnExit();
+
+		final N5FSWriter n5 = new N5FSWriter(new File(dir, "test.n5").getAbsolutePath());
+		final DatasetAttributes attrs = new DatasetAttributes(new long[]{8, 8}, new int[]{4, 4}, DataType.UINT8, new RawCompression());
+		n5.createDataset("a/img", attrs);
+		n5.createDataset("b/img", attrs);
+		n5.setAttribute("a", "resolution", new double[]{2, 3});
+
+		final NodeTranslation translation = new NodeTranslation("if .resolution then { \"scale\": .resolution, \"path\": $path } else . end");
+		final ExecutorService exec = Executors.newFixedThreadPool(2);
+		final JsonObject tree = translation.translateTree(n5, "/", exec);
+
+		final JsonObject children = tree.getAsJsonObject(NodeTranslation.CHILDREN);
+		final JsonObject a = children.getAsJsonObject("a").getAsJsonObject(NodeTranslation.ATTRIBUTES);
+		assertEquals("translated", 3.0, a.getAsJsonArray("scale").get(1).getAsDouble(), 0);
+		assertEquals("path variable", "a", a.get("path").getAsString());
+
+		final JsonObject img = children.getAsJsonObject("b").getAsJsonObject(NodeTranslation.CHILDREN).getAsJsonObject("img");
+		assertEquals("dataset attributes kept", DataType.UINT8.toString(),
+				img.getAsJsonObject(NodeTranslation.ATTRIBUTES).get("dataType").getAsString());
+		assertFalse("datasets have no children", img.has(NodeTranslation.CHILDREN));
+
+		assertNull("no output", translation.translate("x", null));
+
+		// streamed output matches the tree translated in memory
+		final Gson gson = new Gson();
+		final StringWriter out = new StringWriter();
+		translation.writeTree(n5, "", gson, new JsonWriter(out), exec);
+		exec.shutdown();
+		assertEquals("streamed", tree, new JsonParser().parse(out.toString()));
+
+		n5.remove();
+	}
+
+	@Test
+	public void testTranslatedReader() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-node-translation").toFile();
+		dir.deleteOnExit();
+
+		final N5FSWriter n5 = new N5FSWriter(new File(dir, "test.n5").getAbsolutePath());
+		n5.createGroup("a/b");
+		n5.setAttribute("a/b", "resolution", new double[]{2, 3});
+
+		final NodeTranslation translation = new NodeTranslation("if .resolution then { \"scale\": .resolution } else . end");
+		final NodeTranslatedN5Reader translated = new NodeTranslatedN5Reader(n5, new Gson(), translation, 1);
+
+		assertArrayEquals("translated attribute", new double[]{2, 3}, translated.getAttribute("a/b", "scale", double[].class), 0);
+		assertNull("original attribute gone", translated.getAttribute("a/b", "resolution", double[].class));
+		assertArrayEquals("listing", new String[]{"b"}, translated.list("a"));
+
+		// evicted translations are computed again
+		translated.getAttributes("a");
+		n5.setAttribute("a/b", "resolution", new double[]{4, 5});
+		assertArrayEquals("retranslated", new double[]{4, 5}, translated.getAttribute("a/b", "scale", double[].class), 0);
+
+		n5.remove();
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.janelia.saalfeldlab.n5.metadata;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.junit.Test;
+
+public class TargetedMetadataDiscoveryTest {
+
+	@Test
+	public void testOnlyTargetBranchParsed() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-targeted").toFile();
+		dir.deleteOnExit();
+
+		final N5FSWriter n5 = new N5FSWriter(new File(dir, "test.n5").getAbsolutePath());
+		final DatasetAttributes attrs = new DatasetAttributes(new long[]{8, 8}, new int[]{4, 4}, DataType.UINT8, new RawCompression());
+		n5.createDataset("a/b/img", attrs);
+		n5.createDataset("a/b/other", attrs);
+		n5.createDataset("c/img", attrs);
+
+		final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(n5,
+				N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+				Arrays.asList(N5Importer.GROUP_PARSERS));
+
+		final N5TreeNode root = TargetedMetadataDiscovery.discoverAndParse(n5, discoverer, "/a/b/img");
+
+		assertTrue("target parsed", root.getDescendant("a/b/img").map(x -> x.getMetadata() != null).orElse(false));
+		assertTrue("sibling listed", root.getDescendant("a/b/other").isPresent());
+		assertFalse("other branch not listed", root.getDescendant("c/img").isPresent());
+		assertFalse("missing path", TargetedMetadataDiscovery.discoverAndParse(n5, discoverer, "x").getDescendant("x").isPresent());
+
+		// a plain group is not described, but the container is not scanned for it
+		final N5TreeNode group = TargetedMetadataDiscovery.discoverAndParse(n5, discoverer, "c");
+		assertTrue("group listed", group.getDescendant("c/img").isPresent());
+		assertFalse("no full discovery", group.getDescendant("a/b/img").isPresent());
+
+		n5.remove();
+	}
+
+}
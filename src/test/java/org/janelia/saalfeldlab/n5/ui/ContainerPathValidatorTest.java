@@ -0,0 +1,112 @@
+package org.janelia.saalfeldlab.n5.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.ui.ContainerPathValidator.State;
+import org.junit.Test;
+
+public class ContainerPathValidatorTest {
+
+	@Test
+	public void testDebounceAndCache() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-validator").toFile();
+		dir.deleteOnExit();
+
+		final AtomicInteger opened = new AtomicInteger();
+		final List<State> states = new CopyOnWriteArrayList<>();
+		final CountDownLatch[] done = new CountDownLatch[]{new CountDownLatch(1)};
+
+		final ContainerPathValidator validator = new ContainerPathValidator(
+				path -> {
+					opened.incrementAndGet();
+					if (!path.equals(dir.getAbsolutePath()))
+						throw new IllegalArgumentException("no container at " + path);
+					return new N5FSReader(path);
+				},
+				(state, message) -> {
+					states.add(state);
+					if (state == State.VALID || state == State.INVALID)
+						done[0].countDown();
+				},
+				20);
+
+		// only the last of several quick requests is checked
+		SwingUtilities.invokeAndWait(() -> {
+			validator.request("/does/not");
+			validator.request("/does/not/exist");
+			validator.request(dir.getAbsolutePath());
+		});
+		assertTrue(done[0].await(10, TimeUnit.SECONDS));
+		assertEquals("one check", 1, opened.get());
+		assertEquals(State.VALID, states.get(states.size() - 1));
+
+		assertNotNull("checked reader", validator.takeReader(dir.getAbsolutePath()));
+		assertNull("taken once", validator.takeReader(dir.getAbsolutePath()));
+
+		// recent results are reused
+		SwingUtilities.invokeAndWait(() -> validator.request(dir.getAbsolutePath()));
+		assertEquals("no second check", 1, opened.get());
+
+		done[0] = new CountDownLatch(1);
+		SwingUtilities.invokeAndWait(() -> validator.request("/does/not/exist"));
+		assertTrue(done[0].await(10, TimeUnit.SECONDS));
+		assertEquals(State.INVALID, states.get(states.size() - 1));
+
+		validator.shutdown();
+	}
+
+	@Test
+	public void testUntakenReadersAreClosed() throws Exception {
+
+		final File first = Files.createTempDirectory("n5-validator").toFile();
+		final File second = Files.createTempDirectory("n5-validator").toFile();
+		first.deleteOnExit();
+		second.deleteOnExit();
+
+		final AtomicInteger closed = new AtomicInteger();
+		final CountDownLatch[] done = new CountDownLatch[]{new CountDownLatch(1)};
+
+		final ContainerPathValidator validator = new ContainerPathValidator(
+				path -> new N5FSReader(path) {
+
+					@Override
+					public void close() {
+
+						closed.incrementAndGet();
+					}
+				},
+				(state, message) -> {
+					if (state == State.VALID)
+						done[0].countDown();
+				},
+				20);
+
+		SwingUtilities.invokeAndWait(() -> validator.request(first.getAbsolutePath()));
+		assertTrue(done[0].await(10, TimeUnit.SECONDS));
+		assertEquals("kept until replaced", 0, closed.get());
+
+		done[0] = new CountDownLatch(1);
+		SwingUtilities.invokeAndWait(() -> validator.request(second.getAbsolutePath()));
+		assertTrue(done[0].await(10, TimeUnit.SECONDS));
+		assertEquals("replaced reader closed", 1, closed.get());
+
+		validator.shutdown();
+		assertEquals("reader closed on shutdown", 2, closed.get());
+	}
+
+}
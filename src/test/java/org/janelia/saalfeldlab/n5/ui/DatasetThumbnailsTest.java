@@ -0,0 +1,133 @@
+package org.janelia.saalfeldlab.n5.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Files;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.N5Factory.StorageFormat;
+import org.janelia.saalfeldlab.n5.ui.DiscoveryIndex.IndexedDatasetMetadata;
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class DatasetThumbnailsTest {
+
+	@Test
+	public void testCenterSample() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-thumbnails").toFile();
+		dir.deleteOnExit();
+
+		final N5FSWriter n5 = new N5FSWriter(new File(dir, "test.n5").getAbsolutePath());
+
+		// a horizontal ramp
+		final ArrayImg<UnsignedByteType, ByteArray> img = ArrayImgs.unsignedBytes(96, 48, 3);
+		final Cursor<UnsignedByteType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().set(c.getIntPosition(0));
+		}
+		N5Utils.save(img, n5, "ramp", new int[]{4, 4, 1}, new RawCompression());
+
+		final DatasetThumbnails thumbnails = new DatasetThumbnails(n5, new File(dir, "cache"));
+		final BufferedImage thumbnail = thumbnails.compute(
+				new IndexedDatasetMetadata("ramp", n5.getDatasetAttributes("ramp")), null);
+
+		assertEquals("width", DatasetThumbnails.SIZE, thumbnail.getWidth());
+		assertEquals("height", DatasetThumbnails.SIZE / 2, thumbnail.getHeight());
+		assertEquals("darkest on the left", 0, thumbnail.getRaster().getSample(0, 0, 0));
+		assertEquals("brightest on the right", 255, thumbnail.getRaster().getSample(DatasetThumbnails.SIZE - 1, 0, 0));
+
+		// one sample per block across the whole slice
+		N5Utils.save(img, n5, "blocks", new int[]{32, 32, 1}, new RawCompression());
+		final BufferedImage coarse = thumbnails.compute(
+				new IndexedDatasetMetadata("blocks", n5.getDatasetAttributes("blocks")), null);
+
+		assertEquals("width", 3, coarse.getWidth());
+		assertEquals("height", 2, coarse.getHeight());
+		assertEquals("middle block", 128, coarse.getRaster().getSample(1, 0, 0), 1);
+
+		final DatasetAttributes attrs = new DatasetAttributes(new long[]{8}, new int[]{8}, DataType.UINT8, new RawCompression());
+		n5.createDataset("line", attrs);
+		assertNull("one dimensional", thumbnails.compute(new IndexedDatasetMetadata("line", attrs), null));
+
+		n5.remove();
+	}
+
+	@Test
+	public void testFOrder() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-thumbnails").toFile();
+		dir.deleteOnExit();
+
+		final N5Writer zarr = new N5Factory().openWriter(StorageFormat.ZARR, new File(dir, "test.zarr").getAbsolutePath());
+
+		// a horizontal ramp with the storage axes z, y, x
+		final ArrayImg<UnsignedByteType, ByteArray> img = ArrayImgs.unsignedBytes(3, 48, 96);
+		final Cursor<UnsignedByteType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().set(c.getIntPosition(2));
+		}
+
+		// every block has a single value, whatever the order of its elements
+		N5Utils.save(img, zarr, "ramp", new int[]{1, 48, 1}, new RawCompression());
+		zarr.setAttribute("ramp", "order", "F");
+
+		final DatasetThumbnails thumbnails = new DatasetThumbnails(zarr, new File(dir, "cache"));
+		final BufferedImage thumbnail = thumbnails.compute(
+				new IndexedDatasetMetadata("ramp", zarr.getDatasetAttributes("ramp")), null);
+
+		assertEquals("width", DatasetThumbnails.SIZE, thumbnail.getWidth());
+		assertEquals("height", 1, thumbnail.getHeight());
+		assertEquals("darkest on the left", 0, thumbnail.getRaster().getSample(0, 0, 0));
+		assertEquals("brightest on the right", 255, thumbnail.getRaster().getSample(DatasetThumbnails.SIZE - 1, 0, 0));
+
+		zarr.remove();
+	}
+
+	@Test
+	public void testPrune() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-thumbnails").toFile();
+		dir.deleteOnExit();
+
+		final long now = System.currentTimeMillis();
+		final File[] files = new File[4];
+		for (int i = 0; i < files.length; i++) {
+			files[i] = new File(dir, i + ".png");
+			Files.write(files[i].toPath(), new byte[]{(byte)i});
+			files[i].setLastModified(now - i * 60000);
+		}
+		final File other = new File(dir, "other.txt");
+		Files.write(other.toPath(), new byte[]{0});
+
+		// the newest two, if not older than two and a half minutes
+		DatasetThumbnails.prune(dir, 2, 150000);
+		assertTrue("newest kept", files[0].exists() && files[1].exists());
+		assertFalse("beyond the count", files[2].exists());
+		assertFalse("expired", files[3].exists());
+		assertTrue("other files kept", other.exists());
+
+		DatasetThumbnails.prune(dir, 2, 30000);
+		assertTrue("recent", files[0].exists());
+		assertFalse("expired", files[1].exists());
+	}
+
+}
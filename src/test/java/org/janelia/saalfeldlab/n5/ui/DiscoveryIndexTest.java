@@ -0,0 +1,170 @@
+package org.janelia.saalfeldlab.n5.ui;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultTreeModel;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.junit.Test;
+
+public class DiscoveryIndexTest {
+
+	private static final Comparator<N5TreeNode> ORDER = N5SwingTreeNode.order(Collator.getInstance());
+
+	private static File container() throws Exception {
+
+		final File dir = Files.createTempDirectory("n5-discovery").toFile();
+		dir.deleteOnExit();
+
+		final File file = new File(dir, "test.n5");
+		final N5FSWriter n5 = new N5FSWriter(file.getAbsolutePath());
+		final DatasetAttributes attrs = new DatasetAttributes(new long[]{8, 6}, new int[]{4, 3}, DataType.UINT8, new RawCompression());
+		n5.createDataset("a/img", attrs);
+		n5.createDataset("a/b/img", attrs);
+		n5.createDataset("c", attrs);
+		n5.close();
+		return file;
+	}
+
+	/**
+	 * Loads the whole container and returns the loader once it is idle.
+	 */
+	private static IncrementalTreeLoader load(final N5Reader n5, final N5SwingTreeNode root, final DefaultTreeModel model)
+			throws Exception {
+
+		final ExecutorService exec = Executors.newFixedThreadPool(2);
+		try {
+			final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(n5,
+					N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+					Arrays.asList(N5Importer.GROUP_PARSERS));
+
+			final IncrementalTreeLoader loader = new IncrementalTreeLoader(n5, discoverer, model, ORDER, exec);
+			final CountDownLatch idle = new CountDownLatch(1);
+			loader.setOnIdle(idle::countDown);
+			loader.start(exec, 2);
+			assertTrue("loaded", idle.await(20, TimeUnit.SECONDS));
+
+			// let the updates queued before the callback run
+			SwingUtilities.invokeAndWait(() -> {});
+			return loader;
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+	private static TreeMap<String, N5TreeNode> nodes(final N5TreeNode node, final TreeMap<String, N5TreeNode> nodes) {
+
+		nodes.put(node.getPath(), node);
+		for (final N5TreeNode child : node.childrenList())
+			nodes(child, nodes);
+
+		return nodes;
+	}
+
+	@Test
+	public void testSaveRestore() throws Exception {
+
+		final File file = container();
+		final File indexDir = Files.createTempDirectory("n5-discovery-index").toFile();
+		indexDir.deleteOnExit();
+
+		final DiscoveryIndex index = new DiscoveryIndex(indexDir);
+		final String key = file.toURI() + "?";
+
+		try (final N5FSReader n5 = new N5FSReader(file.getAbsolutePath())) {
+			final DefaultTreeModel model = new DefaultTreeModel(null);
+			final N5SwingTreeNode root = new N5SwingTreeNode("", model);
+			model.setRoot(root);
+
+			final IncrementalTreeLoader loader = load(n5, root, model);
+			assertTrue("complete", loader.isComplete());
+
+			// the tree is recorded on the event dispatch thread, and written later
+			final List<Future<?>> saved = new ArrayList<>();
+			SwingUtilities.invokeAndWait(() -> saved.add(index.saveLater(key, root)));
+			saved.get(0).get();
+
+			final DefaultTreeModel restoredModel = new DefaultTreeModel(null);
+			final N5SwingTreeNode restored = new N5SwingTreeNode("", restoredModel);
+			restoredModel.setRoot(restored);
+			assertFalse("other key", index.restore(key + "x", restored, restoredModel, ORDER));
+			assertTrue("restored", index.restore(key, restored, restoredModel, ORDER));
+
+			final TreeMap<String, N5TreeNode> expected = nodes(root, new TreeMap<>());
+			final TreeMap<String, N5TreeNode> actual = nodes(restored, new TreeMap<>());
+			assertEquals(expected.keySet(), actual.keySet());
+			assertTrue("datasets listed", actual.keySet().containsAll(Arrays.asList("a/img", "a/b/img", "c")));
+
+			for (final String path : expected.keySet()) {
+				final boolean dataset = expected.get(path).getMetadata() instanceof N5DatasetMetadata;
+				assertEquals(path, dataset, actual.get(path).getMetadata() instanceof DiscoveryIndex.IndexedDatasetMetadata);
+				if (dataset) {
+					final DatasetAttributes attrs = ((N5DatasetMetadata)actual.get(path).getMetadata()).getAttributes();
+					assertArrayEquals(path, new long[]{8, 6}, attrs.getDimensions());
+					assertArrayEquals(path, new int[]{4, 3}, attrs.getBlockSize());
+					assertEquals(path, DataType.UINT8, attrs.getDataType());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFailedGroupIsIncomplete() throws Exception {
+
+		final File file = container();
+		final N5FSReader n5 = new N5FSReader(file.getAbsolutePath()) {
+
+			@Override
+			public String[] list(final String pathName) throws N5Exception {
+
+				if (pathName.replaceAll("^/|/$", "").equals("a/b"))
+					throw new N5Exception("can not list " + pathName);
+
+				return super.list(pathName);
+			}
+		};
+
+		try {
+			final DefaultTreeModel model = new DefaultTreeModel(null);
+			final N5SwingTreeNode root = new N5SwingTreeNode("", model);
+			model.setRoot(root);
+
+			assertFalse("incomplete", load(n5, root, model).isComplete());
+
+			// the group that can not be listed hides neither itself nor its siblings
+			final TreeMap<String, N5TreeNode> listed = nodes(root, new TreeMap<>());
+			assertTrue("siblings listed", listed.keySet().containsAll(Arrays.asList("a/img", "a/b", "c")));
+		} finally {
+			n5.close();
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+package org.janelia.saalfeldlab.n5.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.DefaultTreeModel;
+
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.junit.Test;
+
+public class N5SwingTreeNodeTest {
+
+	private static final Comparator<N5TreeNode> ORDER = N5SwingTreeNode.order(Collator.getInstance());
+
+	private static List<String> names(final N5TreeNode node) {
+
+		return node.childrenList().stream().map(N5TreeNode::getNodeName).collect(Collectors.toList());
+	}
+
+	@Test
+	public void testAddPaths() {
+
+		final DefaultTreeModel model = new DefaultTreeModel(null);
+		final N5SwingTreeNode root = new N5SwingTreeNode("", model);
+		model.setRoot(root);
+
+		final int[] events = new int[2];
+		model.addTreeModelListener(new TreeModelListener() {
+
+			@Override
+			public void treeStructureChanged(final TreeModelEvent e) {
+
+				events[0]++;
+			}
+
+			@Override
+			public void treeNodesInserted(final TreeModelEvent e) {
+
+				events[1]++;
+			}
+
+			@Override
+			public void treeNodesRemoved(final TreeModelEvent e) {}
+
+			@Override
+			public void treeNodesChanged(final TreeModelEvent e) {}
+		});
+
+		root.addPaths(Arrays.asList("/a/s10", "/a/s2", "a/s1", "b", "a/s2/c0"), ORDER);
+		assertEquals("one structure change", 1, events[0]);
+		assertEquals("no insertions", 0, events[1]);
+
+		assertEquals(Arrays.asList("a", "b"), names(root));
+		assertEquals("numeric order", Arrays.asList("s1", "s2", "s10"), names(root.find("a")));
+		assertEquals("a/s2/c0", root.find("/a/s2/c0/").getPath());
+		assertNull(root.find("a/s3"));
+
+		// existing nodes are reused
+		final N5SwingTreeNode s2 = root.find("a/s2");
+		assertSame(s2, root.addPath("a/s2"));
+		assertEquals("no insertion", 0, events[1]);
+
+		root.addPath("a/s2/c1");
+		assertEquals("one insertion", 1, events[1]);
+		assertEquals(Arrays.asList("c0", "c1"), names(s2));
+	}
+
+	@Test
+	public void testPrefix() {
+
+		final N5SwingTreeNode node = new N5SwingTreeNode("a");
+		node.addPath("a/b");
+
+		assertNull("sibling with the same prefix", node.addPath("ab/c"));
+		assertNull(node.find("ab"));
+		assertEquals("a/b", node.find("a/b").getPath());
+
+		final N5SwingTreeNode b = node.getChild("b");
+		node.remove(b);
+		assertNull(node.getChild("b"));
+	}
+
+}
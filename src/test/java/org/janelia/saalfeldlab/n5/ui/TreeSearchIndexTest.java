@@ -0,0 +1,116 @@
+package org.janelia.saalfeldlab.n5.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.swing.tree.DefaultTreeModel;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.ui.DiscoveryIndex.IndexedDatasetMetadata;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TreeSearchIndexTest {
+
+	private DefaultTreeModel model;
+
+	private N5SwingTreeNode root;
+
+	private TreeSearchIndex index;
+
+	@Before
+	public void before() {
+
+		model = new DefaultTreeModel(null);
+		index = new TreeSearchIndex(model);
+
+		root = new N5SwingTreeNode("", model);
+		model.setRoot(root);
+		root.addPaths(Arrays.asList("raw/s0", "raw/s1", "labels/cells/s0", "notes"),
+				N5SwingTreeNode.order(Collator.getInstance()));
+
+		setDataset("raw/s0", DataType.UINT8, 3);
+		setDataset("raw/s1", DataType.UINT8, 3);
+		setDataset("labels/cells/s0", DataType.UINT64, 2);
+	}
+
+	private void setDataset(final String path, final DataType type, final int nd) {
+
+		final long[] dims = new long[nd];
+		final int[] blockSize = new int[nd];
+		Arrays.fill(dims, 64);
+		Arrays.fill(blockSize, 32);
+
+		final N5SwingTreeNode node = root.find(path);
+		node.setMetadata(new IndexedDatasetMetadata(path, new DatasetAttributes(dims, blockSize, type, new RawCompression())));
+		model.nodeChanged(node);
+	}
+
+	private List<String> search(final String query) {
+
+		return index.search(query, 100).stream().map(N5TreeNode::getPath).sorted().collect(Collectors.toList());
+	}
+
+	@Test
+	public void testNames() {
+
+		assertEquals(Arrays.asList("raw", "raw/s0", "raw/s1"), search("RAW"));
+		assertEquals(Arrays.asList("labels/cells/s0", "raw/s0"), search("s0"));
+		assertEquals(Arrays.asList("labels/cells/s0", "raw/s0", "raw/s1"), search("s?"));
+		assertEquals(Arrays.asList("labels/cells/s0"), search("re:^lab.*s\\d$"));
+		assertThrows(IllegalArgumentException.class, () -> search("re:("));
+	}
+
+	@Test
+	public void testMetadata() {
+
+		assertEquals(Arrays.asList("raw/s0", "raw/s1"), search("type:uint8"));
+		assertEquals(Arrays.asList("labels/cells/s0"), search("dims:2"));
+		assertEquals(Arrays.asList("labels/cells/s0", "raw/s0", "raw/s1"), search("is:dataset"));
+		assertEquals(Arrays.asList("raw/s1"), search("s1 type:uint8 dims:3"));
+	}
+
+	@Test
+	public void testUpdates() {
+
+		model.removeNodeFromParent(root.find("raw"));
+		assertEquals(Arrays.asList("labels/cells/s0"), search("s0"));
+
+		root.addPath("raw/s0");
+		assertEquals(Arrays.asList("labels/cells/s0", "raw/s0"), search("s0"));
+		assertEquals(Arrays.asList("labels/cells/s0"), search("is:dataset"));
+
+		model.setRoot(new N5SwingTreeNode("", model));
+		assertEquals("only the root", 1, index.size());
+	}
+
+	@Test
+	public void testStructureChanged() {
+
+		// the children of a group are replaced without removal events
+		final N5SwingTreeNode labels = root.find("labels");
+		labels.childrenList().clear();
+		labels.addPath("labels/nuclei");
+		model.nodeStructureChanged(labels);
+
+		assertEquals(Arrays.asList("labels/nuclei"), search("labels/"));
+		assertEquals("dropped nodes unindexed", 7, index.size());
+	}
+
+	@Test
+	public void testOrder() {
+
+		final List<N5TreeNode> first = index.search("s?", 2);
+		assertEquals(Arrays.asList("labels/cells/s0", "raw/s0"),
+				first.stream().map(N5TreeNode::getPath).collect(Collectors.toList()));
+	}
+
+}